@@ -0,0 +1,15 @@
+package com.androthink.server.callback;
+
+import com.androthink.server.model.Request;
+import com.androthink.server.model.UploadedFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface UploadCallBack {
+    /**
+     * @return stream receiving the bytes of the file part , closed when the part ends ,
+     * or null to store the part in a temp file .
+     */
+    OutputStream onFileUpload(Request request, UploadedFile file) throws IOException;
+}
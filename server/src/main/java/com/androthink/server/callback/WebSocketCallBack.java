@@ -0,0 +1,13 @@
+package com.androthink.server.callback;
+
+import com.androthink.server.handler.WebSocket;
+
+public interface WebSocketCallBack {
+    void onOpen(WebSocket webSocket);
+
+    void onMessage(WebSocket webSocket, String text);
+
+    void onMessage(WebSocket webSocket, byte[] data);
+
+    void onClose(WebSocket webSocket, int code, String reason);
+}
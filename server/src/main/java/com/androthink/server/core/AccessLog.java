@@ -0,0 +1,456 @@
+package com.androthink.server.core;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log written off the request threads . A request thread only copies a few fields into a preallocated
+ * record of a bounded ring buffer ( no lock , no allocation , no string building ) , a background thread drains
+ * the records in batches to the Writer . Records are dropped and counted when the ring is full instead of
+ * slowing requests down .
+ */
+public class AccessLog {
+
+    public class LEVEL {
+        // Nothing is recorded , log() returns before touching the ring ..
+        public static final int OFF = 0;
+        // Responses with status 400 and above , and requests closed without a response ..
+        public static final int ERRORS = 1;
+        // Every request , successful ones subject to the sampling ..
+        public static final int ALL = 2;
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    // Longest wait of the writer thread when the ring is not filling up ..
+    private static final long DRAIN_INTERVAL_MILLIS = 200;
+
+    /**
+     * Receives the drained records on the writer thread , flush() ends every batch .
+     */
+    public interface Writer {
+        /**
+         * @param record reused once the call returns , copy what must be kept .
+         */
+        void write(@NonNull Record record) throws IOException;
+
+        void flush() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static AccessLog accessLog = null;
+
+    private volatile int level = LEVEL.ERRORS;
+    private volatile int sampling = 1;
+    private volatile Writer writer = new LogcatWriter();
+
+    private Ring ring = new Ring(DEFAULT_BUFFER_SIZE);
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private volatile Thread writerThread;
+
+    public static synchronized AccessLog getInstance() {
+        if (accessLog == null)
+            accessLog = new AccessLog();
+
+        return accessLog;
+    }
+
+    AccessLog() {
+    }
+
+    /**
+     * @param level one of AccessLog.LEVEL .
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @param sampling only one of every sampling successful requests is logged at LEVEL.ALL , errors always are .
+     */
+    public void setSampling(int sampling) {
+        this.sampling = Math.max(1, sampling);
+    }
+
+    public int getSampling() {
+        return sampling;
+    }
+
+    /**
+     * @param writer destination of the records , the previous writer is closed by the writer thread .
+     */
+    public void setWriter(@NonNull Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @param bufferSize records the ring can hold , rounded up to a power of two , applied on the next start .
+     */
+    public synchronized void setBufferSize(int bufferSize) {
+        if (writerThread == null && bufferSize != ring.capacity())
+            ring = new Ring(bufferSize);
+    }
+
+    /**
+     * @return records lost because the ring was full .
+     */
+    public long getDroppedRecords() {
+        return ring.getDropped();
+    }
+
+    /**
+     * Records one answered request , a no-op unless the level and sampling select it .
+     *
+     * @param status        status code sent , 0 when the connection was closed without a response .
+     * @param durationMicros time spent answering , negative when not measured .
+     */
+    public void log(@Nullable String requestId, @Nullable String clientAddress, @Nullable String method, @Nullable String path,
+                    int status, long receivedBytes, long sentBytes, long durationMicros) {
+        int level = this.level;
+        if (level == LEVEL.OFF)
+            return;
+
+        boolean error = status >= 400 || status == 0;
+        if (!error) {
+            if (level != LEVEL.ALL)
+                return;
+
+            int sampling = this.sampling;
+            if (sampling > 1 && sampleCounter.getAndIncrement() % sampling != 0)
+                return;
+        }
+
+        Thread writerThread = this.writerThread;
+        if (writerThread == null)
+            return;
+
+        if (ring.offer(System.currentTimeMillis(), requestId, clientAddress, method, path, status, receivedBytes, sentBytes, durationMicros))
+            LockSupport.unpark(writerThread);
+    }
+
+    synchronized void start() {
+        if (writerThread != null)
+            return;
+
+        final Ring ring = this.ring;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Writer current = writer;
+                while (true) {
+                    boolean stopping = Thread.interrupted();
+
+                    // A replaced writer is closed by this thread so no batch is cut in half ..
+                    if (current != writer) {
+                        close(current);
+                        current = writer;
+                    }
+
+                    drain(ring, current);
+
+                    if (stopping) {
+                        close(current);
+                        return;
+                    }
+
+                    LockSupport.parkNanos(DRAIN_INTERVAL_MILLIS * 1000000);
+                }
+            }
+        }, "AccessLogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Writes what is left in the ring and closes the writer , waits at most timeoutMillis .
+     */
+    synchronized void stop(long timeoutMillis) {
+        Thread thread = writerThread;
+        if (thread == null)
+            return;
+
+        writerThread = null;
+        thread.interrupt();
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Batches of at most one ring so the writer is flushed regularly under a steady load ..
+    private static void drain(@NonNull Ring ring, @NonNull Writer writer) {
+        while (true) {
+            int written = 0;
+            Record record;
+            while (written < ring.capacity() && (record = ring.peek()) != null) {
+                try {
+                    writer.write(record);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    ring.release();
+                }
+                written++;
+            }
+
+            if (written == 0)
+                return;
+
+            try {
+                writer.flush();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void close(@NonNull Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * One logged request , every string is the instance the request already held .
+     */
+    public static class Record {
+        private long timestamp;
+        private String requestId;
+        private String clientAddress;
+        private String method;
+        private String path;
+        private int status;
+        private long receivedBytes;
+        private long sentBytes;
+        private long durationMicros;
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public String getClientAddress() {
+            return clientAddress;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getReceivedBytes() {
+            return receivedBytes;
+        }
+
+        public long getSentBytes() {
+            return sentBytes;
+        }
+
+        /**
+         * @return time spent answering in microseconds , negative when not measured .
+         */
+        public long getDurationMicros() {
+            return durationMicros;
+        }
+
+        /**
+         * Appends the record as one line without its terminator :
+         * time client method path status received sent duration id , - for missing values .
+         *
+         * @param dateFormat ISO 8601 UTC format owned by the calling thread .
+         */
+        public void appendTo(@NonNull StringBuilder line, @NonNull SimpleDateFormat dateFormat) {
+            line.append(dateFormat.format(new Date(timestamp))).append(' ')
+                    .append(clientAddress != null ? clientAddress : "-").append(' ')
+                    .append(method != null ? method.toUpperCase(Locale.US) : "-").append(' ')
+                    .append(path != null ? path : "-").append(' ')
+                    .append(status).append(' ')
+                    .append(receivedBytes).append(' ')
+                    .append(sentBytes).append(' ');
+
+            if (durationMicros >= 0)
+                line.append(durationMicros).append("us");
+            else
+                line.append('-');
+
+            line.append(' ').append(requestId != null ? requestId : "-");
+        }
+
+        void clear() {
+            requestId = null;
+            clientAddress = null;
+            method = null;
+            path = null;
+        }
+    }
+
+    /**
+     * @return a format for appendTo() , SimpleDateFormat is not thread safe so each writer keeps its own .
+     */
+    @NonNull
+    public static SimpleDateFormat newDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    /**
+     * Writes every record to logcat , one line per record .
+     */
+    public static class LogcatWriter implements Writer {
+        private final String tag;
+        private final SimpleDateFormat dateFormat = newDateFormat();
+        private final StringBuilder line = new StringBuilder(256);
+
+        public LogcatWriter() {
+            this("AccessLog");
+        }
+
+        public LogcatWriter(@NonNull String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(@NonNull Record record) {
+            line.setLength(0);
+            record.appendTo(line, dateFormat);
+
+            if (record.getStatus() >= 500 || record.getStatus() == 0)
+                Log.e(tag, line.toString());
+            else if (record.getStatus() >= 400)
+                Log.w(tag, line.toString());
+            else
+                Log.i(tag, line.toString());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /*
+     * Bounded multi producer , single consumer ring of preallocated records . Every slot carries a sequence :
+     * equal to the position when free for a producer , position + 1 once written for the consumer .
+     * A producer claims a position with one CAS , fills the record and publishes it by setting the sequence ,
+     * which also orders the plain field writes before the consumer reads them .
+     */
+    static class Ring {
+        private final Record[] records;
+        private final AtomicLongArray sequences;
+        private final int mask;
+
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        // Only moved by the consumer thread ..
+        private long head = 0;
+
+        Ring(int size) {
+            int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+            records = new Record[capacity];
+            sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                records[i] = new Record();
+                sequences.set(i, i);
+            }
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return records.length;
+        }
+
+        long getDropped() {
+            return dropped.get();
+        }
+
+        /**
+         * @return true when the consumer should be woken , once per half of the ring so producers rarely unpark .
+         */
+        boolean offer(long timestamp, String requestId, String clientAddress, String method, String path,
+                      int status, long receivedBytes, long sentBytes, long durationMicros) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - position;
+
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1))
+                        break;
+                    position = tail.get();
+                } else if (difference < 0) {
+                    // Slot not yet drained , the ring is full ..
+                    dropped.incrementAndGet();
+                    return false;
+                } else
+                    position = tail.get();
+            }
+
+            Record record = records[(int) position & mask];
+            record.timestamp = timestamp;
+            record.requestId = requestId;
+            record.clientAddress = clientAddress;
+            record.method = method;
+            record.path = path;
+            record.status = status;
+            record.receivedBytes = receivedBytes;
+            record.sentBytes = sentBytes;
+            record.durationMicros = durationMicros;
+            sequences.set((int) position & mask, position + 1);
+
+            return (position & (mask >> 1)) == (mask >> 1);
+        }
+
+        /**
+         * @return the oldest published record , null when there is none , release() must follow .
+         */
+        @Nullable
+        Record peek() {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1)
+                return null;
+
+            return records[index];
+        }
+
+        void release() {
+            int index = (int) head & mask;
+            records[index].clear();
+            sequences.set(index, head + records.length);
+            head++;
+        }
+    }
+}
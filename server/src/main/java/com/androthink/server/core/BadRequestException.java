@@ -0,0 +1,11 @@
+package com.androthink.server.core;
+
+import java.io.IOException;
+
+// Thrown for request or header lines that can not be parsed and for malformed or truncated bodies , answered with 400 ..
+class BadRequestException extends IOException {
+
+    BadRequestException(String message) {
+        super(message);
+    }
+}
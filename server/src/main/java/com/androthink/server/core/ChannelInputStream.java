@@ -0,0 +1,89 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+// Blocking InputStream view over a non-blocking SocketChannel , lets a worker stream a large body off the NIO transport ..
+// The body read limits of ServerConfig apply as with the blocking transport .
+class ChannelInputStream extends InputStream {
+
+    private final SocketChannel channel;
+    private final ServerConfig config;
+    private final TimeoutCounters counters;
+
+    private final long start;
+    private long received;
+
+    // Private selector used only to wait for bytes ..
+    private Selector readSelector;
+
+    /**
+     * @param received body bytes already buffered by the selector , counted for the transfer rate .
+     */
+    ChannelInputStream(@NonNull SocketChannel channel, @NonNull ServerConfig config, @NonNull TimeoutCounters counters,
+                       long start, long received) {
+        this.channel = channel;
+        this.config = config;
+        this.counters = counters;
+        this.start = start;
+        this.received = received;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (true) {
+            int read = channel.read(buffer);
+            if (read > 0) {
+                received += read;
+                if (TimedInputStream.isTooSlow(received, System.currentTimeMillis() - start, config.getMinBodyTransferRate())) {
+                    counters.increment(TimeoutCounters.KIND.SLOW_BODY);
+                    throw new RequestTimeoutException(TimeoutCounters.KIND.SLOW_BODY,
+                            "Body sent slower than " + config.getMinBodyTransferRate() + " bytes/s");
+                }
+            }
+
+            if (read != 0)
+                return read;
+
+            awaitReadable();
+        }
+    }
+
+    private void awaitReadable() throws IOException {
+        if (readSelector == null) {
+            readSelector = Selector.open();
+            channel.register(readSelector, SelectionKey.OP_READ);
+        }
+
+        if (readSelector.select(config.getBodyReadTimeoutMillis()) == 0) {
+            counters.increment(TimeoutCounters.KIND.BODY);
+            throw new RequestTimeoutException(TimeoutCounters.KIND.BODY, "Body not received in time");
+        }
+
+        readSelector.selectedKeys().clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (readSelector != null) {
+            readSelector.close();
+            readSelector = null;
+        }
+    }
+}
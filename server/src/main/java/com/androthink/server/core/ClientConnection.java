@@ -0,0 +1,127 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.PushStream;
+import com.androthink.server.handler.ResponseOutputStream;
+import com.androthink.server.model.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Transport independent view of an accepted client used by ServerRequestTask ..
+abstract class ClientConnection {
+
+    // Requests served on this connection so far , including the one being handled ..
+    private int requestCount = 0;
+
+    // Buffered output shared by every response of the connection ..
+    private ResponseOutputStream responseStream;
+
+    abstract String getClientAddress();
+
+    abstract InputStream getInputStream() throws IOException;
+
+    abstract OutputStream getOutputStream() throws IOException;
+
+    /**
+     * @return true when requests following a kept-alive one are read from the same stream by the same task ,
+     * false when the transport reads them itself and dispatches a new task per request .
+     */
+    abstract boolean isPersistentStream();
+
+    /**
+     * @return false when the request body was read past what the transport can resume from ,
+     * the connection is then closed after the response .
+     */
+    boolean isReusable() {
+        return true;
+    }
+
+    /**
+     * Read limits of the next request start , transports reading requests themselves enforce them on their side .
+     *
+     * @param requestNumber 1 for the first request of the connection .
+     */
+    void onAwaitingRequest(int requestNumber) {
+    }
+
+    // Request headers read , what follows is the body ..
+    void onReadingBody() {
+    }
+
+    // Request fully read , the route may now take its time ..
+    void onRequestRead() {
+    }
+
+    /**
+     * Checked after every kept-alive response of a persistent stream .
+     *
+     * @return true when the task waits for the next request itself , false when the connection is
+     * handed to keepAlive() instead so the worker is free while the client is idle .
+     */
+    boolean waitsForNextRequest(@NonNull RequestStream requestStream) throws IOException {
+        return true;
+    }
+
+    /**
+     * Hands a kept-alive connection back to its transport to wait for the next request .
+     *
+     * @param task task that answered the last request , transports reading from the same stream run it again .
+     */
+    abstract void keepAlive(@NonNull ServerRequestTask task);
+
+    abstract void close();
+
+    /**
+     * Writes a complete response without waiting long for a client that does not read , then closes .
+     *
+     * @return bytes written , 0 when the write failed .
+     */
+    abstract int rejectWith(@NonNull byte[] response);
+
+    /**
+     * Serves the connection as a WebSocket once the upgrade handshake is sent .
+     *
+     * @param requestStream stream the upgrade request was read from , may already hold the first frames .
+     * @return true when the transport now owns the connection , false when it ended and must be closed .
+     */
+    abstract boolean startWebSocket(@NonNull RequestStream requestStream, @NonNull ResponseOutputStream outputStream,
+                                    @NonNull Request request, @NonNull WebSocketCallBack callBack, @NonNull ServerConfig config);
+
+    /**
+     * Keeps writing a pushed response body once its head is sent , without holding the calling worker .
+     *
+     * @param task task that answered the request , closed by the transport once the stream ends .
+     * @return true when the transport now owns the connection , false when it must be closed .
+     */
+    abstract boolean startPush(@NonNull PushStream stream, @NonNull ResponseOutputStream outputStream, @NonNull ServerRequestTask task);
+
+    ResponseOutputStream getResponseStream(int bufferSize) throws IOException {
+        if (responseStream == null)
+            responseStream = new ResponseOutputStream(getOutputStream(), bufferSize);
+
+        return responseStream;
+    }
+
+    int nextRequest() {
+        return ++requestCount;
+    }
+
+    /**
+     * @param status       status line without the protocol , e.g. "503 Service Unavailable" .
+     * @param extraHeaders header lines each ending with CRLF , empty for none .
+     * @return a complete JSON error response that closes the connection .
+     */
+    @NonNull
+    static byte[] buildErrorResponse(@NonNull String status, @NonNull String extraHeaders) {
+        String body = "{\"status\":false,\"error\":\"Error " + status + " !\"}";
+        return ("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + extraHeaders
+                + "Connection: close\r\n\r\n" + body).getBytes();
+    }
+}
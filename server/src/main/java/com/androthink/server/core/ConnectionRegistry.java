@@ -0,0 +1,87 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Live connections of the blocking transport keyed by request id , register , get and unregister do not lock ..
+class ConnectionRegistry {
+
+    // Threads closing sockets on shutdown , a close can block on a lingering socket ..
+    private static final int MAX_CLOSE_THREADS = 8;
+
+    private final ConcurrentMap<String, ServerRequestTask> tasks = new ConcurrentHashMap<>();
+    // Kept apart from the map , ConcurrentHashMap.size() sums every segment ..
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    void register(@NonNull String requestId, @NonNull ServerRequestTask task) {
+        if (tasks.put(requestId, task) == null)
+            openConnections.incrementAndGet();
+    }
+
+    ServerRequestTask get(@NonNull String requestId) {
+        return tasks.get(requestId);
+    }
+
+    /**
+     * @return false when the connection was already removed .
+     */
+    boolean unregister(@NonNull String requestId) {
+        if (tasks.remove(requestId) == null)
+            return false;
+
+        openConnections.decrementAndGet();
+        return true;
+    }
+
+    int size() {
+        return openConnections.get();
+    }
+
+    /**
+     * Closes every registered connection on a few threads at once .
+     *
+     * @param timeoutMillis how long to wait for the closes to finish .
+     */
+    void closeAll(long timeoutMillis) {
+        List<ServerRequestTask> open = new ArrayList<>(tasks.values());
+        if (open.isEmpty())
+            return;
+
+        ExecutorService closer = Executors.newFixedThreadPool(Math.min(open.size(), MAX_CLOSE_THREADS), new CloserThreadFactory());
+        for (final ServerRequestTask task : open) {
+            closer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    task.close();
+                }
+            });
+        }
+
+        closer.shutdown();
+        try {
+            closer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CloserThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "ConnectionCloser-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Request;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Parses request and header lines in place from the RequestStream buffer , no regex and no Scanner ..
+class HttpRequestParser {
+
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    private static final String[] KNOWN_METHODS = {
+            ServerHelper.METHOD.GET, ServerHelper.METHOD.POST, ServerHelper.METHOD.PUT, ServerHelper.METHOD.DELETE,
+            "head", "options", "patch"
+    };
+
+    // Returned as constants so the most frequent header names cost no allocation ..
+    private static final String[] KNOWN_HEADERS = {
+            "host", ServerHelper.MAIN_HEADERS.CONNECTION, ServerHelper.MAIN_HEADERS.CONTENT_TYPE,
+            ServerHelper.MAIN_HEADERS.CONTENT_LENGTH, ServerHelper.MAIN_HEADERS.TRANSFER_ENCODING,
+            ServerHelper.MAIN_HEADERS.AUTHORIZATION, ServerHelper.MAIN_HEADERS.SEC_WEB_SOCKET_KEY,
+            "accept", "accept-encoding", "accept-language", "user-agent", "cookie", "cache-control",
+            "pragma", "referer", "origin", "upgrade", "range", "if-range", "if-none-match",
+            "if-modified-since", "sec-websocket-version", "last-event-id", "expect", "x-requested-with"
+    };
+
+    private static final byte[][] KNOWN_METHOD_BYTES = toBytes(KNOWN_METHODS);
+    private static final byte[][] KNOWN_HEADER_BYTES = toBytes(KNOWN_HEADERS);
+
+    private char[] scratch = new char[128];
+
+    /**
+     * Parses "METHOD SP path SP HTTP/x.y" , method and path are lowercased as the routes expect .
+     *
+     * @throws BadRequestException if the line is not a valid request line .
+     */
+    void parseRequestLine(@NonNull byte[] data, int start, int end, @NonNull Request request) throws BadRequestException {
+        int methodEnd = indexOf(data, start, end, (byte) ' ');
+        if (methodEnd <= start)
+            throw new BadRequestException("Malformed request line");
+
+        int pathStart = skipSpaces(data, methodEnd, end);
+        int pathEnd = indexOf(data, pathStart, end, (byte) ' ');
+        if (pathEnd < 0 || pathEnd == pathStart)
+            throw new BadRequestException("Malformed request line");
+
+        int protocolStart = skipSpaces(data, pathEnd, end);
+        int protocolEnd = trimEnd(data, protocolStart, end);
+        if (protocolEnd - protocolStart < 8 || indexOf(data, protocolStart, protocolEnd, (byte) ' ') >= 0
+                || !regionEquals(data, protocolStart, "HTTP/"))
+            throw new BadRequestException("Malformed request line");
+
+        request.setMethod(known(data, start, methodEnd, KNOWN_METHODS, KNOWN_METHOD_BYTES));
+        request.setRoutePath(toLowerCaseString(data, pathStart, pathEnd));
+        request.setRequestTarget(toString(data, pathStart, pathEnd));
+
+        if (protocolEnd - protocolStart == 8 && regionEquals(data, protocolStart, HTTP_1_1))
+            request.setProtocol(HTTP_1_1);
+        else if (protocolEnd - protocolStart == 8 && regionEquals(data, protocolStart, HTTP_1_0))
+            request.setProtocol(HTTP_1_0);
+        else
+            request.setProtocol(toString(data, protocolStart, protocolEnd));
+    }
+
+    /**
+     * Parses "Name: value" into headers with a lowercase name and a trimmed value ,
+     * repeated headers are joined with a comma ( a semicolon for cookies ) .
+     *
+     * @throws BadRequestException if the line is not a valid header line .
+     */
+    void parseHeaderLine(@NonNull byte[] data, int start, int end, @NonNull Map<String, String> headers) throws BadRequestException {
+        if (start >= end)
+            throw new BadRequestException("Empty header line");
+
+        // Obsolete line folding is rejected as RFC 7230 allows ..
+        if (isWhitespace(data[start]))
+            throw new BadRequestException("Folded header line");
+
+        int colon = indexOf(data, start, end, (byte) ':');
+        if (colon <= start)
+            throw new BadRequestException("Malformed header line");
+
+        // No whitespace allowed between the name and the colon ..
+        if (isWhitespace(data[colon - 1]))
+            throw new BadRequestException("Malformed header name");
+
+        for (int i = start; i < colon; i++) {
+            if (data[i] <= ' ' || data[i] == 127)
+                throw new BadRequestException("Malformed header name");
+        }
+
+        String name = known(data, start, colon, KNOWN_HEADERS, KNOWN_HEADER_BYTES);
+
+        int valueStart = skipWhitespace(data, colon + 1, end);
+        int valueEnd = trimEnd(data, valueStart, end);
+        String value = toString(data, valueStart, valueEnd);
+
+        String previous = headers.get(name);
+        if (previous == null)
+            headers.put(name, value);
+        else
+            headers.put(name, previous + ("cookie".equals(name) ? "; " : ", ") + value);
+    }
+
+    /**
+     * Splits a Cookie header into names and values , both trimmed . Values are split on the first '=' only
+     * so base64 values keep their padding , pairs without '=' or without a name are ignored .
+     */
+    @NonNull
+    static Map<String, String> parseCookies(@NonNull String header) {
+        Map<String, String> cookies = new HashMap<>();
+
+        int start = 0;
+        while (start < header.length()) {
+            int end = header.indexOf(';', start);
+            if (end < 0)
+                end = header.length();
+
+            int equals = header.indexOf('=', start);
+            if (equals >= 0 && equals < end) {
+                String name = header.substring(start, equals).trim();
+                if (!name.isEmpty())
+                    cookies.put(name, header.substring(equals + 1, end).trim());
+            }
+
+            start = end + 1;
+        }
+
+        return cookies;
+    }
+
+    // Returns the constant for a known token ( matched case insensitively ) or a new lowercase string ..
+    private String known(byte[] data, int start, int end, String[] names, byte[][] nameBytes) {
+        int length = end - start;
+        for (int i = 0; i < nameBytes.length; i++) {
+            if (nameBytes[i].length == length && regionEqualsIgnoreCase(data, start, nameBytes[i]))
+                return names[i];
+        }
+
+        return toLowerCaseString(data, start, end);
+    }
+
+    private String toString(byte[] data, int start, int end) {
+        char[] chars = scratch(end - start);
+        for (int i = start; i < end; i++)
+            chars[i - start] = (char) (data[i] & 0xff);
+
+        return new String(chars, 0, end - start);
+    }
+
+    private String toLowerCaseString(byte[] data, int start, int end) {
+        char[] chars = scratch(end - start);
+        for (int i = start; i < end; i++)
+            chars[i - start] = (char) (toLowerCase(data[i]) & 0xff);
+
+        return new String(chars, 0, end - start);
+    }
+
+    private char[] scratch(int length) {
+        if (scratch.length < length)
+            scratch = new char[Math.max(length, scratch.length * 2)];
+
+        return scratch;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static int indexOf(byte[] data, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == value)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static int skipSpaces(byte[] data, int start, int end) {
+        while (start < end && data[start] == ' ')
+            start++;
+
+        return start;
+    }
+
+    private static int skipWhitespace(byte[] data, int start, int end) {
+        while (start < end && isWhitespace(data[start]))
+            start++;
+
+        return start;
+    }
+
+    private static int trimEnd(byte[] data, int start, int end) {
+        while (end > start && isWhitespace(data[end - 1]))
+            end--;
+
+        return end;
+    }
+
+    private static boolean regionEquals(byte[] data, int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (data[start + i] != value.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean regionEqualsIgnoreCase(byte[] data, int start, byte[] lowerCaseValue) {
+        for (int i = 0; i < lowerCaseValue.length; i++) {
+            if (toLowerCase(data[start + i]) != lowerCaseValue[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static byte[][] toBytes(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = new byte[values[i].length()];
+            for (int j = 0; j < values[i].length(); j++)
+                bytes[i][j] = (byte) values[i].charAt(j);
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,149 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Kept-alive connections of the blocking transport waiting for their next request without a worker ,
+// a blocking socket can not be selected so a single thread polls how many bytes each one has received ..
+class IdleConnectionWatcher {
+
+    // A follow-up request usually comes right behind the response , connections idle for longer are polled less often ..
+    private static final long MIN_POLL_NANOS = 100 * 1000;
+    private static final long MAX_POLL_NANOS = 50 * 1000 * 1000;
+
+    private final WorkerPool workerPool;
+
+    // Parked by workers , moved to the watcher's own list on its next round ..
+    private final Queue<Idle> parked = new ConcurrentLinkedQueue<>();
+
+    private volatile Thread watcherThread;
+
+    IdleConnectionWatcher(@NonNull WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Waits for the next request of connection , task is handed to the worker pool again once it arrives
+     * and closed if none does within the connection's idle timeout .
+     */
+    void park(@NonNull SocketConnection connection, @NonNull ServerRequestTask task) {
+        Thread thread = watcherThread;
+        if (thread == null) {
+            task.close();
+            return;
+        }
+
+        parked.add(new Idle(connection, task, System.nanoTime()));
+        LockSupport.unpark(thread);
+    }
+
+    synchronized void start() {
+        if (watcherThread != null)
+            return;
+
+        watcherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "IdleConnectionWatcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * Closes every waiting connection .
+     */
+    synchronized void stop() {
+        Thread thread = watcherThread;
+        if (thread == null)
+            return;
+
+        watcherThread = null;
+        thread.interrupt();
+    }
+
+    private void watch() {
+        List<Idle> idle = new ArrayList<>();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Idle added;
+            while ((added = parked.poll()) != null)
+                idle.add(added);
+
+            long now = System.nanoTime();
+            // Nanos until the earliest poll , compared as differences since nanoTime may wrap ..
+            long wait = Long.MAX_VALUE;
+
+            Iterator<Idle> iterator = idle.iterator();
+            while (iterator.hasNext()) {
+                Idle connection = iterator.next();
+                if (connection.nextPoll - now > 0) {
+                    wait = Math.min(wait, connection.nextPoll - now);
+                    continue;
+                }
+
+                int state = connection.poll(now);
+                if (state == Idle.WAITING) {
+                    wait = Math.min(wait, connection.nextPoll - now);
+                    continue;
+                }
+
+                iterator.remove();
+                if (state == Idle.READABLE)
+                    workerPool.execute(connection.task);
+                else
+                    connection.task.close();
+            }
+
+            if (wait == Long.MAX_VALUE)
+                LockSupport.park(this);
+            else
+                LockSupport.parkNanos(this, wait);
+        }
+
+        // Stopped , nothing may stay open behind the server ..
+        Idle added;
+        while ((added = parked.poll()) != null)
+            idle.add(added);
+        for (Idle connection : idle)
+            connection.task.close();
+    }
+
+    private static class Idle {
+        static final int WAITING = 0;
+        static final int READABLE = 1;
+        static final int EXPIRED = 2;
+
+        private final SocketConnection connection;
+        private final ServerRequestTask task;
+        private final long parkedAt;
+        private long nextPoll;
+
+        Idle(SocketConnection connection, ServerRequestTask task, long parkedAt) {
+            this.connection = connection;
+            this.task = task;
+            this.parkedAt = parkedAt;
+            this.nextPoll = parkedAt;
+        }
+
+        int poll(long now) {
+            if (connection.available() != 0)
+                return READABLE;
+
+            long idleFor = now - parkedAt;
+            int timeout = connection.getIdleTimeoutMillis();
+            if (timeout > 0 && idleFor >= timeout * 1000000L)
+                return EXPIRED;
+
+            nextPoll = now + Math.max(MIN_POLL_NANOS, Math.min(MAX_POLL_NANOS, idleFor / 8));
+            return WAITING;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.androthink.server.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in microseconds , every power of two is split in 32 buckets
+ * so values are kept within about 3 % ( as HdrHistogram with 2 significant digits ) .
+ * Recording is a few atomic increments , never a lock , and the memory is fixed ( about 9 KB ) .
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values above about 76 hours are counted in the last bucket ..
+    private static final int MAX_EXPONENT = 32;
+    private static final long MAX_TRACKABLE = (1L << (MAX_EXPONENT + SUB_BUCKET_BITS + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param micros duration of one event , negative values are ignored .
+     */
+    public void record(long micros) {
+        if (micros < 0)
+            return;
+
+        counts.incrementAndGet(indexOf(Math.min(micros, MAX_TRACKABLE)));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+
+        long current;
+        while (micros > (current = max.get())) {
+            if (max.compareAndSet(current, micros))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return total of the recorded durations in microseconds .
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100 .
+     * @return highest value of the bucket holding the percentile , 0 when nothing was recorded .
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highestValueAt(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * @return number of recorded values not above micros , bucket precision .
+     */
+    public long getCountAtOrBelow(long micros) {
+        if (micros < 0)
+            return 0;
+
+        int last = indexOf(Math.min(micros, MAX_TRACKABLE));
+        // The bucket holding micros may also hold larger values , it is only counted when entirely below ..
+        if (highestValueAt(last) > micros)
+            last--;
+
+        long seen = 0;
+        for (int i = 0; i <= last; i++)
+            seen += counts.get(i);
+
+        return seen;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS * 2)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS * 2)
+            return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
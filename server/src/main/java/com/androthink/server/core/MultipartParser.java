@@ -0,0 +1,312 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.callback.UploadCallBack;
+import com.androthink.server.model.Request;
+import com.androthink.server.model.UploadedFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Streaming multipart/form-data reader , parts are cut at the boundary as bytes arrive without holding the body ..
+class MultipartParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PART_HEADER_SIZE = 8 * 1024;
+    private static final int MAX_PART_HEADERS = 16;
+
+    private final InputStream inputStream;
+    private final ServerConfig config;
+    private final Request request;
+
+    // CRLF -- boundary , the body is read as if it started with CRLF so the first boundary matches too ..
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean ended = false;
+
+    private final Map<String, String> fields = new LinkedHashMap<>();
+    private final List<UploadedFile> files = new ArrayList<>();
+
+    MultipartParser(@NonNull InputStream inputStream, @NonNull String boundary, @NonNull ServerConfig config, @NonNull Request request) throws IOException {
+        this.inputStream = inputStream;
+        this.config = config;
+        this.request = request;
+
+        this.delimiter = ("\r\n--" + boundary).getBytes("ISO-8859-1");
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    Map<String, String> getFields() {
+        return fields;
+    }
+
+    List<UploadedFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * Reads every part up to the closing boundary , temp files already written are deleted on failure .
+     *
+     * @throws PayloadTooLargeException when a part or the number of parts exceeds the configured limits .
+     * @throws BadRequestException      when the body is not valid multipart .
+     */
+    void parse() throws IOException {
+        try {
+            // Preamble ..
+            readPart(null, Long.MAX_VALUE);
+
+            int parts = 0;
+            while (!isLastBoundary()) {
+                if (++parts > config.getMultipartMaxParts())
+                    throw new PayloadTooLargeException(parts, config.getMultipartMaxParts());
+
+                readPartHeadersAndBody();
+            }
+
+            // Epilogue , read so the connection can serve the next request ..
+            byte[] skip = new byte[4 * 1024];
+            while (inputStream.read(skip) > 0) {
+                // Discarded ..
+            }
+        } catch (IOException | RuntimeException e) {
+            for (UploadedFile file : files)
+                file.deleteTempFile();
+            throw e;
+        }
+    }
+
+    private void readPartHeadersAndBody() throws IOException {
+        String name = null;
+        String fileName = null;
+        String contentType = null;
+
+        int headers = 0;
+        String line;
+        while ((line = readHeaderLine()).length() != 0) {
+            if (++headers > MAX_PART_HEADERS)
+                throw new BadRequestException("Too many part headers");
+
+            int colon = line.indexOf(':');
+            if (colon <= 0)
+                continue;
+
+            String header = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+
+            if (header.equals("content-disposition")) {
+                name = getParameter(value, "name");
+                fileName = getParameter(value, "filename");
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+
+        if (name == null)
+            throw new BadRequestException("Multipart part without a name");
+
+        if (fileName == null) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            readPart(value, config.getMultipartMaxFieldSize());
+            fields.put(name, value.toString("UTF-8"));
+            return;
+        }
+
+        UploadedFile file = new UploadedFile(name, fileName, contentType);
+        files.add(file);
+
+        UploadCallBack uploadCallBack = config.getUploadCallBack();
+        OutputStream outputStream = uploadCallBack != null ? uploadCallBack.onFileUpload(request, file) : null;
+        if (outputStream == null) {
+            File temp = File.createTempFile("upload", ".tmp", config.getUploadDirectory());
+            file.setFile(temp, true);
+            outputStream = new FileOutputStream(temp);
+        }
+
+        try {
+            file.setSize(readPart(outputStream, config.getMultipartMaxFileSize()));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Copies part bytes to outputStream until the next delimiter , which is consumed .
+     *
+     * @param outputStream null to discard the bytes .
+     * @return bytes of the part .
+     */
+    private long readPart(@Nullable OutputStream outputStream, long maxSize) throws IOException {
+        long size = 0;
+
+        while (true) {
+            int match = indexOfDelimiter();
+            int end = match >= 0 ? match : Math.max(position, limit - delimiter.length + 1);
+
+            int count = end - position;
+            if (count > 0) {
+                size += count;
+                if (size > maxSize)
+                    throw new PayloadTooLargeException(size, maxSize);
+
+                if (outputStream != null)
+                    outputStream.write(buffer, position, count);
+                position = end;
+            }
+
+            if (match >= 0) {
+                position += delimiter.length;
+                return size;
+            }
+
+            if (!fill())
+                throw new BadRequestException("Unexpected end of multipart body");
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+
+        for (int i = position; i <= last; i++) {
+            if (buffer[i] != first)
+                continue;
+
+            int j = 1;
+            while (j < delimiter.length && buffer[i + j] == delimiter[j])
+                j++;
+
+            if (j == delimiter.length)
+                return i;
+        }
+
+        return -1;
+    }
+
+    // After a delimiter , -- marks the end of the body , otherwise the line ends before the next part headers ..
+    private boolean isLastBoundary() throws IOException {
+        if (!ensure(2))
+            throw new BadRequestException("Unexpected end of multipart body");
+
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            position += 2;
+            return true;
+        }
+
+        readHeaderLine();
+        return false;
+    }
+
+    private String readHeaderLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        while (true) {
+            if (position >= limit && !fill())
+                throw new BadRequestException("Unexpected end of multipart headers");
+
+            byte b = buffer[position++];
+            if (b == '\n')
+                break;
+
+            if (line.length() >= MAX_PART_HEADER_SIZE)
+                throw new BadRequestException("Multipart header too long");
+
+            line.append((char) (b & 0xff));
+        }
+
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r')
+            line.setLength(length - 1);
+
+        // Header values are UTF-8 in browsers ( e.g. file names ) ..
+        return new String(line.toString().getBytes("ISO-8859-1"), "UTF-8");
+    }
+
+    private boolean ensure(int count) throws IOException {
+        while (limit - position < count) {
+            if (!fill())
+                return false;
+        }
+
+        return true;
+    }
+
+    // Keeps the unread bytes and reads more after them ..
+    private boolean fill() throws IOException {
+        if (ended)
+            return false;
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) {
+            ended = true;
+            return false;
+        }
+
+        limit += read;
+        return true;
+    }
+
+    // Value of name="value" or name=value in a Content-Disposition header , quoted values may hold ; ..
+    @Nullable
+    static String getParameter(@NonNull String header, @NonNull String name) {
+        int length = header.length();
+        int index = header.indexOf(';');
+
+        while (index >= 0 && index < length) {
+            int keyStart = index + 1;
+            int equals = header.indexOf('=', keyStart);
+            if (equals < 0)
+                return null;
+
+            String key = header.substring(keyStart, equals).trim();
+
+            int valueStart = equals + 1;
+            while (valueStart < length && header.charAt(valueStart) == ' ')
+                valueStart++;
+
+            String value;
+            if (valueStart < length && header.charAt(valueStart) == '"') {
+                StringBuilder quoted = new StringBuilder();
+                int i = valueStart + 1;
+                for (; i < length && header.charAt(i) != '"'; i++) {
+                    char c = header.charAt(i);
+                    if (c == '\\' && i + 1 < length)
+                        c = header.charAt(++i);
+                    quoted.append(c);
+                }
+                value = quoted.toString();
+                index = header.indexOf(';', i);
+            } else {
+                int separator = header.indexOf(';', valueStart);
+                value = header.substring(valueStart, separator < 0 ? length : separator).trim();
+                index = separator;
+            }
+
+            if (key.equalsIgnoreCase(name))
+                return value;
+        }
+
+        return null;
+    }
+}
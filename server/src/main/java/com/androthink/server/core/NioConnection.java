@@ -0,0 +1,529 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.ChannelOutputStream;
+import com.androthink.server.handler.PushStream;
+import com.androthink.server.handler.ResponseOutputStream;
+import com.androthink.server.helper.NetworkHelper;
+import com.androthink.server.model.Request;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Buffers one request from a non-blocking channel until request line , headers and body are complete ..
+class NioConnection extends ClientConnection {
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+    // Multipart bodies above this are read by the worker straight from the channel instead of buffered ..
+    private static final int STREAMED_BODY_THRESHOLD = 64 * 1024;
+
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes();
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding:".getBytes();
+    private static final byte[] CHUNKED = "chunked".getBytes();
+
+    private static final byte[] REQUEST_TIMEOUT_RESPONSE = buildErrorResponse("408 Request Timeout", "");
+    private static final byte[] BAD_REQUEST_RESPONSE = buildErrorResponse("400 Bad Request", "");
+    private static final byte[] CONTENT_TYPE = "content-type:".getBytes();
+    private static final byte[] MULTIPART = "multipart/form-data".getBytes();
+
+    // Chunked body framing states ..
+    private static final int CHUNK_SIZE = 0;
+    private static final int CHUNK_DATA = 1;
+    private static final int CHUNK_DATA_END = 2;
+    private static final int CHUNK_TRAILER = 3;
+
+    private final NioServerRunnable server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ChannelOutputStream outputStream;
+    private final ServerConfig config;
+    private final long maxBodySize;
+
+    // Last time bytes were received or a request was completed , used to drop idle connections ..
+    private volatile long lastActivity;
+
+    private ByteBuffer buffer;
+
+    // Close can come from a worker and from the selector thread ..
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // Set once the connection is upgraded , the selector then reads frames instead of requests ..
+    private volatile NioWebSocket webSocket;
+    // Set once a pushed response is handed over , the selector then writes it ..
+    private volatile NioPush push;
+
+    // Where to continue looking for the end of headers ..
+    private int scanIndex = 0;
+    private int headerEnd = -1;
+    private long requestEnd = -1;
+
+    // When the first byte of the request in progress arrived , 0 while idle between requests ..
+    private volatile long requestStart;
+    // When its headers were complete ..
+    private volatile long bodyStart;
+
+    // Set when the body of the request is left in the channel for the worker , the connection is not reused then ..
+    private boolean streamed = false;
+    private ChannelInputStream bodyStream;
+
+    // Chunked bodies are walked chunk by chunk as bytes arrive ..
+    private boolean chunked = false;
+    private int chunkState;
+    private int chunkCursor;
+    private long chunkRemaining;
+    private long chunkedBodySize;
+
+    NioConnection(@NonNull NioServerRunnable server, @NonNull SocketChannel channel, @NonNull SelectionKey key, @NonNull ServerConfig config) {
+        this.server = server;
+        this.config = config;
+        this.maxBodySize = config.getMaxBodySize();
+        this.channel = channel;
+        this.key = key;
+        this.outputStream = new ChannelOutputStream(channel, config.getWriteTimeoutMillis());
+        this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.lastActivity = System.currentTimeMillis();
+        // A new connection is expected to send its request right away ..
+        this.requestStart = lastActivity;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    NioWebSocket getWebSocket() {
+        return webSocket;
+    }
+
+    NioPush getPush() {
+        return push;
+    }
+
+    /**
+     * Reads whatever the channel has available without blocking .
+     *
+     * @return true when a full request is buffered and can be handed to a worker .
+     * @throws IOException when the client closed the connection or sent an invalid request .
+     */
+    boolean read() throws IOException {
+        if (!buffer.hasRemaining())
+            grow();
+
+        if (channel.read(buffer) < 0)
+            throw new EOFException("Connection closed by client");
+
+        lastActivity = System.currentTimeMillis();
+        if (requestStart == 0 && buffer.position() > 0)
+            requestStart = lastActivity;
+
+        return isRequestBuffered();
+    }
+
+    /**
+     * @return true when the buffer already holds a full request , e.g. one pipelined behind the previous request .
+     * @throws IOException when the buffered request is invalid .
+     */
+    boolean isRequestBuffered() throws IOException {
+        if (headerEnd < 0) {
+            headerEnd = findHeaderEnd();
+
+            if (headerEnd < 0) {
+                if (buffer.position() >= MAX_HEADER_SIZE)
+                    throw new BadRequestException("Request header too large");
+
+                return false;
+            }
+
+            bodyStart = System.currentTimeMillis();
+
+            if (headerContains(TRANSFER_ENCODING, CHUNKED)) {
+                chunked = true;
+                chunkState = CHUNK_SIZE;
+                chunkCursor = headerEnd;
+                chunkRemaining = 0;
+                chunkedBodySize = 0;
+            } else {
+                long contentLength = parseContentLength();
+
+                if (contentLength > STREAMED_BODY_THRESHOLD && headerContains(CONTENT_TYPE, MULTIPART)) {
+                    streamed = true;
+                    requestEnd = buffer.position();
+                    return true;
+                }
+
+                // Hand over the headers only , the worker answers 413 without reading the body ..
+                if (contentLength > maxBodySize)
+                    contentLength = 0;
+
+                requestEnd = headerEnd + contentLength;
+            }
+        }
+
+        if (chunked && requestEnd < 0)
+            return scanChunks();
+
+        return buffer.position() >= requestEnd;
+    }
+
+    // Advances over the chunks received so far , sets requestEnd once the last chunk and trailers arrived ..
+    private boolean scanChunks() throws IOException {
+        byte[] data = buffer.array();
+        int limit = buffer.position();
+
+        while (true) {
+            if (chunkState == CHUNK_DATA) {
+                int count = (int) Math.min(chunkRemaining, limit - chunkCursor);
+                chunkCursor += count;
+                chunkRemaining -= count;
+
+                if (chunkRemaining > 0)
+                    return false;
+
+                chunkState = CHUNK_DATA_END;
+                continue;
+            }
+
+            int lineEnd = chunkCursor;
+            while (lineEnd < limit && data[lineEnd] != '\n')
+                lineEnd++;
+
+            if (lineEnd >= limit) {
+                if (limit - chunkCursor > MAX_HEADER_SIZE)
+                    throw new BadRequestException("Chunk line too long");
+
+                return false;
+            }
+
+            int lineStart = chunkCursor;
+            chunkCursor = lineEnd + 1;
+
+            switch (chunkState) {
+                case CHUNK_SIZE: {
+                    long size = parseChunkSize(data, lineStart, lineEnd);
+                    if (size == 0) {
+                        chunkState = CHUNK_TRAILER;
+                    } else if (chunkedBodySize + size > maxBodySize) {
+                        // Let the worker read up to this chunk header and answer 413 ..
+                        requestEnd = chunkCursor;
+                        return true;
+                    } else {
+                        chunkedBodySize += size;
+                        chunkRemaining = size;
+                        chunkState = CHUNK_DATA;
+                    }
+                    break;
+                }
+                case CHUNK_DATA_END:
+                    chunkState = CHUNK_SIZE;
+                    break;
+                case CHUNK_TRAILER:
+                    // Empty line ends the trailers ..
+                    if (lineEnd == lineStart || (lineEnd - lineStart == 1 && data[lineStart] == '\r')) {
+                        requestEnd = chunkCursor;
+                        return true;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static long parseChunkSize(byte[] data, int start, int end) throws IOException {
+        long size = 0;
+        int digits = 0;
+
+        for (int i = start; i < end; i++) {
+            int b = data[i];
+            int digit;
+
+            if (b >= '0' && b <= '9')
+                digit = b - '0';
+            else if (b >= 'a' && b <= 'f')
+                digit = b - 'a' + 10;
+            else if (b >= 'A' && b <= 'F')
+                digit = b - 'A' + 10;
+            else if (b == ';' || b == '\r' || b == ' ')
+                break;
+            else
+                throw new BadRequestException("Invalid chunk size");
+
+            if (++digits > 15)
+                throw new BadRequestException("Invalid chunk size");
+
+            size = (size << 4) | digit;
+        }
+
+        if (digits == 0)
+            throw new BadRequestException("Invalid chunk size");
+
+        return size;
+    }
+
+    // Drops the handled request keeping any pipelined bytes received after it ..
+    void reset() {
+        int received = buffer.position();
+        int pipelined = received - (int) requestEnd;
+
+        if (buffer.capacity() > INITIAL_BUFFER_SIZE * 4 && pipelined <= INITIAL_BUFFER_SIZE) {
+            ByteBuffer shrunk = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            shrunk.put(buffer.array(), (int) requestEnd, pipelined);
+            buffer = shrunk;
+        } else {
+            buffer.position((int) requestEnd);
+            buffer.limit(received);
+            buffer.compact();
+        }
+
+        scanIndex = 0;
+        headerEnd = -1;
+        requestEnd = -1;
+        chunked = false;
+        lastActivity = System.currentTimeMillis();
+        requestStart = buffer.position() > 0 ? lastActivity : 0;
+    }
+
+    /**
+     * Read limits of ServerConfig for the request being received , checked by the selector thread .
+     *
+     * @return the TimeoutCounters.KIND of the broken limit , -1 when none is .
+     */
+    int getExpiredReadLimit(long now) {
+        if (requestStart == 0)
+            return -1;
+
+        if (headerEnd < 0) {
+            int headerTimeout = config.getHeaderReadTimeoutMillis();
+            return headerTimeout > 0 && now - requestStart > headerTimeout ? TimeoutCounters.KIND.HEADER : -1;
+        }
+
+        int bodyTimeout = config.getBodyReadTimeoutMillis();
+        if (bodyTimeout > 0 && now - lastActivity > bodyTimeout)
+            return TimeoutCounters.KIND.BODY;
+
+        if (TimedInputStream.isTooSlow(buffer.position() - headerEnd, now - bodyStart, config.getMinBodyTransferRate()))
+            return TimeoutCounters.KIND.SLOW_BODY;
+
+        return -1;
+    }
+
+    // Best effort 408 without blocking the selector thread , then closes ..
+    void closeWithRequestTimeout() {
+        closeWithResponse(REQUEST_TIMEOUT_RESPONSE);
+    }
+
+    // Same for framing the selector thread already found invalid ..
+    void closeWithBadRequest() {
+        closeWithResponse(BAD_REQUEST_RESPONSE);
+    }
+
+    private int closeWithResponse(byte[] response) {
+        int written = 0;
+        try {
+            written = channel.write(ByteBuffer.wrap(response));
+        } catch (IOException e) {
+            // Closed below anyway ..
+        }
+        close();
+        return written;
+    }
+
+    // The channel stays non-blocking , one write takes what the socket buffer can hold ..
+    @Override
+    int rejectWith(@NonNull byte[] response) {
+        return closeWithResponse(response);
+    }
+
+    private void grow() {
+        int capacity = Math.max(buffer.capacity() * 2, (int) Math.max(requestEnd, 0));
+
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    private int findHeaderEnd() {
+        byte[] data = buffer.array();
+        int limit = buffer.position();
+
+        for (int i = Math.max(0, scanIndex - 3); i + 3 < limit; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n')
+                return i + 4;
+        }
+
+        scanIndex = limit;
+        return -1;
+    }
+
+    // Whether the header is present and its value holds value ..
+    private boolean headerContains(byte[] name, byte[] value) {
+        byte[] data = buffer.array();
+        int lineStart = 0;
+
+        while (lineStart < headerEnd) {
+            int lineEnd = lineStart;
+            while (lineEnd < headerEnd && data[lineEnd] != '\n')
+                lineEnd++;
+
+            if (startsWithIgnoreCase(data, lineStart, lineEnd, name))
+                return containsIgnoreCase(data, lineStart + name.length, lineEnd, value);
+
+            lineStart = lineEnd + 1;
+        }
+
+        return false;
+    }
+
+    private long parseContentLength() throws IOException {
+        byte[] data = buffer.array();
+        int lineStart = 0;
+
+        while (lineStart < headerEnd) {
+            int lineEnd = lineStart;
+            while (lineEnd < headerEnd && data[lineEnd] != '\n')
+                lineEnd++;
+
+            if (startsWithIgnoreCase(data, lineStart, lineEnd, CONTENT_LENGTH)) {
+                long length = 0;
+                for (int i = lineStart + CONTENT_LENGTH.length; i < lineEnd; i++) {
+                    byte b = data[i];
+                    if (b >= '0' && b <= '9')
+                        length = Math.min(length * 10 + (b - '0'), Integer.MAX_VALUE);
+                    else if (b != ' ' && b != '\t' && b != '\r')
+                        throw new BadRequestException("Invalid Content-Length");
+                }
+                return length;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return 0;
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] data, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            byte b = data[start + i];
+            if (b >= 'A' && b <= 'Z')
+                b += 'a' - 'A';
+            if (b != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(byte[] data, int start, int end, byte[] value) {
+        for (int i = start; i + value.length <= end; i++) {
+            if (startsWithIgnoreCase(data, i, end, value))
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    String getClientAddress() {
+        return NetworkHelper.getIp(channel.socket().getInetAddress(), true);
+    }
+
+    @Override
+    InputStream getInputStream() {
+        ByteArrayInputStream received = new ByteArrayInputStream(buffer.array(), 0, (int) requestEnd);
+        if (!streamed)
+            return received;
+
+        if (bodyStream == null)
+            bodyStream = new ChannelInputStream(channel, config, server.getTimeoutCounters(), bodyStart, requestEnd - headerEnd);
+
+        return new SequenceInputStream(received, bodyStream);
+    }
+
+    @Override
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    boolean isReusable() {
+        return !streamed;
+    }
+
+    @Override
+    boolean isPersistentStream() {
+        return false;
+    }
+
+    // The selector reads the next request and dispatches a new task ..
+    @Override
+    void keepAlive(@NonNull ServerRequestTask task) {
+        server.resume(this);
+    }
+
+    @Override
+    boolean startWebSocket(@NonNull RequestStream requestStream, @NonNull ResponseOutputStream outputStream,
+                           @NonNull Request request, @NonNull WebSocketCallBack callBack, @NonNull ServerConfig config) {
+        // Frames the client sent right behind the upgrade request ..
+        int received = buffer.position();
+        byte[] pending = new byte[Math.max(0, received - (int) requestEnd)];
+        System.arraycopy(buffer.array(), (int) requestEnd, pending, 0, pending.length);
+
+        buffer = ByteBuffer.allocate(0);
+        webSocket = new NioWebSocket(server, this, pending, request, callBack, config);
+        server.startWebSocket(webSocket);
+        return true;
+    }
+
+    // The head is already flushed , the selector writes the rest ..
+    @Override
+    boolean startPush(@NonNull PushStream stream, @NonNull ResponseOutputStream outputStream, @NonNull ServerRequestTask task) {
+        buffer = ByteBuffer.allocate(0);
+        push = new NioPush(server, this, stream);
+        server.startPush(push);
+        return true;
+    }
+
+    @Override
+    void close() {
+        key.cancel();
+
+        NioPush current = push;
+        if (current != null)
+            current.getStream().close();
+
+        if (closed.compareAndSet(false, true)) {
+            server.onConnectionClosed();
+            if (outputStream.isTimedOut())
+                server.getTimeoutCounters().increment(TimeoutCounters.KIND.WRITE);
+        }
+
+        try {
+            outputStream.close();
+            if (bodyStream != null)
+                bodyStream.close();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.handler.PushStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Pushed response body over a selector registered channel , written by the selector thread once a worker sent the head ..
+class NioPush implements PushStream.Listener {
+
+    private final NioServerRunnable server;
+    private final NioConnection connection;
+    private final PushStream stream;
+
+    // True while the selector has this stream in its pending writes ..
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+    // Buffer left when the socket send buffer filled up , selector thread only ..
+    private ByteBuffer current;
+    private long lastWrite;
+
+    NioPush(@NonNull NioServerRunnable server, @NonNull NioConnection connection, @NonNull PushStream stream) {
+        this.server = server;
+        this.connection = connection;
+        this.stream = stream;
+    }
+
+    NioConnection getConnection() {
+        return connection;
+    }
+
+    PushStream getStream() {
+        return stream;
+    }
+
+    // On the selector thread , whatever the stream queued meanwhile is written right away ..
+    void start() {
+        lastWrite = System.currentTimeMillis();
+        stream.attach(this);
+    }
+
+    /**
+     * Reads and drops what the client sends , on the selector thread .
+     *
+     * @param buffer read buffer shared by the selector .
+     * @throws IOException when the client closed the connection .
+     */
+    void read(@NonNull ByteBuffer buffer) throws IOException {
+        buffer.clear();
+
+        if (connection.getChannel().read(buffer) < 0)
+            throw new EOFException("Connection closed by client");
+    }
+
+    /**
+     * Writes what the stream has until the channel is full , on the selector thread .
+     *
+     * @return true when nothing is left to write .
+     */
+    boolean write() throws IOException {
+        writeRequested.set(false);
+
+        while (current != null || (current = stream.next()) != null) {
+            connection.getChannel().write(current);
+            if (current.hasRemaining())
+                return false;
+
+            current = null;
+            lastWrite = System.currentTimeMillis();
+        }
+
+        if (stream.isClosed())
+            end();
+
+        return true;
+    }
+
+    /**
+     * @return true when a heartbeat was queued because nothing was written for the stream's heartbeat interval .
+     */
+    boolean queueHeartbeat(long now) {
+        long heartbeatMillis = stream.getHeartbeatMillis();
+        if (heartbeatMillis <= 0 || current != null || now - lastWrite < heartbeatMillis)
+            return false;
+
+        current = stream.heartbeat();
+        return current != null;
+    }
+
+    void end() {
+        connection.close();
+    }
+
+    @Override
+    public void onQueued() {
+        if (writeRequested.compareAndSet(false, true))
+            server.requestWrite(this);
+    }
+}
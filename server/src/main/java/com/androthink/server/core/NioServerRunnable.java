@@ -0,0 +1,454 @@
+package com.androthink.server.core;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.androthink.server.callback.ServerCallBack;
+import com.androthink.server.model.Route;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Single selector thread accepting and reading requests , complete requests are handed to the worker pool ..
+class NioServerRunnable implements ServerTransport {
+
+    private final static String TAG = "NioServerRunnable";
+
+    private final static long IDLE_CHECK_INTERVAL_MILLIS = 1000;
+    private final static int WEB_SOCKET_READ_BUFFER_SIZE = 16 * 1024;
+
+    private final Context context;
+    private final ServerConfig config;
+    private final ServerCallBack serverCallBack;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final WorkerPool workerPool;
+
+    // Kept-alive connections handed back by workers , re-armed on the selector thread ..
+    private final Queue<NioConnection> resumedConnections;
+
+    // Upgraded connections handed over by workers and sockets with frames queued , both served on the selector thread ..
+    private final Queue<NioWebSocket> startedWebSockets;
+    private final Queue<NioWebSocket> pendingWrites;
+    // Pushed responses handed over by workers and the ones with bytes queued , written on the selector thread ..
+    private final Queue<NioPush> startedPushes;
+    private final Queue<NioPush> pendingPushWrites;
+    // Read buffer shared by every WebSocket and pushed response , frames are copied out by their decoders ..
+    private final ByteBuffer webSocketReadBuffer;
+    // WebSocket callbacks run here so a slow one never stalls the selector ..
+    private final ExecutorService webSocketDispatcher;
+
+    private long lastIdleCheck = 0;
+
+    // Accepted connections not closed yet , including upgraded ones ..
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final TimeoutCounters timeoutCounters = new TimeoutCounters();
+
+    // indicator to determine whether the server has isRunning or not
+    private volatile boolean isRunning = true;
+
+    NioServerRunnable(Context context, int port, List<Route> routeList, ServerConfig config, ServerCallBack serverCallBack) throws IOException {
+        this.context = context;
+        this.config = config;
+        this.serverCallBack = serverCallBack;
+        this.resumedConnections = new ConcurrentLinkedQueue<>();
+        this.startedWebSockets = new ConcurrentLinkedQueue<>();
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.startedPushes = new ConcurrentLinkedQueue<>();
+        this.pendingPushWrites = new ConcurrentLinkedQueue<>();
+        this.webSocketReadBuffer = ByteBuffer.allocate(WEB_SOCKET_READ_BUFFER_SIZE);
+        this.webSocketDispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "WebSocketDispatcher");
+            }
+        });
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.socket().bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.workerPool = new WorkerPool(config);
+
+        RoutesHandler.getInstance().applyRoutes(routeList);
+    }
+
+    @Override
+    public void run() {
+
+        Log.d(TAG, "Server Started .");
+
+        while (this.isRunning) {
+            try {
+                selector.select(IDLE_CHECK_INTERVAL_MILLIS);
+
+                resumeConnections();
+                startWebSockets();
+                writeWebSockets();
+                startPushes();
+                writePushes();
+                closeIdleConnections();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    if (key.isWritable())
+                        write(key);
+                    if (key.isValid() && key.isReadable())
+                        read(key);
+                }
+            } catch (IOException e) {
+                if (!this.isRunning)
+                    break;
+
+                e.printStackTrace();
+            }
+        }
+
+        terminate();
+
+        serverCallBack.onServerStopped();
+        Log.d(TAG, "Server Stopped !");
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+
+        channel.configureBlocking(false);
+
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new NioConnection(this, channel, key, config));
+        openConnections.incrementAndGet();
+    }
+
+    private void read(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+
+        NioWebSocket webSocket = connection.getWebSocket();
+        if (webSocket != null) {
+            try {
+                // Close handshake over or protocol error , only the queued frames are left to write ..
+                if (!webSocket.read(webSocketReadBuffer) && key.isValid())
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            } catch (IOException e) {
+                webSocket.end();
+            }
+            return;
+        }
+
+        NioPush push = connection.getPush();
+        if (push != null) {
+            try {
+                push.read(webSocketReadBuffer);
+            } catch (IOException e) {
+                push.end();
+            }
+            return;
+        }
+
+        try {
+            if (connection.read())
+                dispatch(connection);
+        } catch (BadRequestException e) {
+            connection.closeWithBadRequest();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void dispatch(NioConnection connection) {
+        // Stop reading while a worker owns the connection ..
+        connection.getKey().interestOps(0);
+        workerPool.execute(new ServerRequestTask(context, config, connection, config.getRequestIdGenerator().nextId(), null));
+    }
+
+    private void write(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection.getWebSocket() != null)
+            write(connection.getWebSocket());
+        else if (connection.getPush() != null)
+            write(connection.getPush());
+    }
+
+    private void write(NioWebSocket webSocket) {
+        SelectionKey key = webSocket.getConnection().getKey();
+        if (!key.isValid())
+            return;
+
+        try {
+            boolean drained = webSocket.write();
+            if (!key.isValid())
+                return;
+
+            // Wait for room in the socket send buffer only while frames are left ..
+            if (drained)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            else
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            webSocket.end();
+        }
+    }
+
+    private void write(NioPush push) {
+        SelectionKey key = push.getConnection().getKey();
+        if (!key.isValid())
+            return;
+
+        try {
+            boolean drained = push.write();
+            if (!key.isValid())
+                return;
+
+            if (drained)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            else
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            push.end();
+        }
+    }
+
+    // Called from a worker once the WebSocket handshake is written ..
+    void startWebSocket(NioWebSocket webSocket) {
+        startedWebSockets.add(webSocket);
+        selector.wakeup();
+    }
+
+    // Called from any thread when a WebSocket has frames to send ..
+    void requestWrite(NioWebSocket webSocket) {
+        pendingWrites.add(webSocket);
+        selector.wakeup();
+    }
+
+    // Called from a worker once the head of a pushed response is written ..
+    void startPush(NioPush push) {
+        startedPushes.add(push);
+        selector.wakeup();
+    }
+
+    // Called from any thread when a pushed response has bytes queued or ended ..
+    void requestWrite(NioPush push) {
+        pendingPushWrites.add(push);
+        selector.wakeup();
+    }
+
+    void dispatchWebSocket(Runnable runnable) {
+        try {
+            webSocketDispatcher.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            // Server stopped ..
+        }
+    }
+
+    private void startWebSockets() {
+        NioWebSocket webSocket;
+        while ((webSocket = startedWebSockets.poll()) != null) {
+            SelectionKey key = webSocket.getConnection().getKey();
+            if (!key.isValid()) {
+                webSocket.end();
+                continue;
+            }
+
+            boolean reading = webSocket.open();
+            if (reading && key.isValid())
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void writeWebSockets() {
+        NioWebSocket webSocket;
+        while ((webSocket = pendingWrites.poll()) != null)
+            write(webSocket);
+    }
+
+    private void startPushes() {
+        NioPush push;
+        while ((push = startedPushes.poll()) != null) {
+            SelectionKey key = push.getConnection().getKey();
+            if (!key.isValid()) {
+                push.end();
+                continue;
+            }
+
+            // Reading only tells when the client leaves ..
+            key.interestOps(SelectionKey.OP_READ);
+            push.start();
+        }
+    }
+
+    private void writePushes() {
+        NioPush push;
+        while ((push = pendingPushWrites.poll()) != null)
+            write(push);
+    }
+
+    // Called once by every connection when it closes ..
+    void onConnectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    // Called from a worker once a kept-alive response is written ..
+    void resume(NioConnection connection) {
+        resumedConnections.add(connection);
+        selector.wakeup();
+    }
+
+    private void resumeConnections() {
+        NioConnection connection;
+        while ((connection = resumedConnections.poll()) != null) {
+            if (!connection.getKey().isValid())
+                continue;
+
+            try {
+                connection.reset();
+
+                if (connection.isRequestBuffered())
+                    dispatch(connection);
+                else
+                    connection.getKey().interestOps(SelectionKey.OP_READ);
+            } catch (BadRequestException e) {
+                connection.closeWithBadRequest();
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < IDLE_CHECK_INTERVAL_MILLIS)
+            return;
+
+        lastIdleCheck = now;
+        long idleTimeout = config.isKeepAliveEnabled() ? config.getKeepAliveTimeoutMillis() : 0;
+
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof NioConnection))
+                continue;
+
+            // WebSockets stay open while idle , unless the client never answers our close frame ..
+            NioConnection connection = (NioConnection) key.attachment();
+            NioWebSocket webSocket = connection.getWebSocket();
+            if (webSocket != null) {
+                if (webSocket.isCloseExpired(now))
+                    webSocket.end();
+                continue;
+            }
+
+            // Pushed responses stay open while idle , with a heartbeat if their stream has one ..
+            NioPush push = connection.getPush();
+            if (push != null) {
+                if (push.queueHeartbeat(now))
+                    write(push);
+                continue;
+            }
+
+            // Only connections waiting for bytes , not the ones owned by a worker ..
+            if (key.interestOps() != SelectionKey.OP_READ)
+                continue;
+
+            // Partial request held too long , e.g. headers trickled byte by byte ..
+            int expiredLimit = connection.getExpiredReadLimit(now);
+            if (expiredLimit >= 0) {
+                timeoutCounters.increment(expiredLimit);
+                connection.closeWithRequestTimeout();
+            } else if (idleTimeout > 0 && now - connection.getLastActivity() > idleTimeout) {
+                connection.close();
+            }
+        }
+    }
+
+    private void terminate() {
+
+        Log.w(TAG, "Server Terminating ...");
+
+        workerPool.shutdown();
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection) {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (connection.getWebSocket() != null)
+                    connection.getWebSocket().end();
+                else
+                    connection.close();
+            }
+        }
+
+        // onClose callbacks queued above still run ..
+        webSocketDispatcher.shutdown();
+
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+
+            Log.e(TAG, "Server Socket Exception While Terminating !");
+        }
+
+        Log.i(TAG, "Server Terminated !");
+    }
+
+    @Override
+    public void stop() {
+        Log.i(TAG, "Stopping Server ...");
+
+        this.isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return workerPool.getQueueDepth();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return workerPool.getActiveWorkers();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return workerPool.getRejectedConnections();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @Override
+    public TimeoutCounters getTimeoutCounters() {
+        return timeoutCounters;
+    }
+}
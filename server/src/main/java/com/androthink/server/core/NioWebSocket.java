@@ -0,0 +1,103 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.WebSocket;
+import com.androthink.server.model.Request;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// WebSocket over a selector registered channel , frames are read and written by the selector thread without blocking ..
+class NioWebSocket extends WebSocket {
+
+    private final NioServerRunnable server;
+    private final NioConnection connection;
+
+    // Bytes received right behind the upgrade request ..
+    private byte[] pending;
+
+    // True while the selector has this socket in its pending writes ..
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+    NioWebSocket(@NonNull NioServerRunnable server, @NonNull NioConnection connection, @NonNull byte[] pending,
+                 @NonNull Request request, @NonNull WebSocketCallBack callBack, @NonNull ServerConfig config) {
+        super(request, callBack, config.getWebSocketMaxMessageSize(), config.getWebSocketMaxQueuedBytes());
+
+        this.server = server;
+        this.connection = connection;
+        this.pending = pending;
+    }
+
+    NioConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Starts the socket on the selector thread .
+     *
+     * @return false when the bytes received with the upgrade request already ended it .
+     */
+    boolean open() {
+        onOpen();
+
+        byte[] received = pending;
+        pending = null;
+
+        return received.length == 0 || onReceived(received, 0, received.length);
+    }
+
+    /**
+     * Reads and decodes what the channel has , on the selector thread .
+     *
+     * @param buffer read buffer shared by all sockets of the selector .
+     * @return false when nothing more should be read .
+     * @throws IOException when the client closed the connection .
+     */
+    boolean read(@NonNull ByteBuffer buffer) throws IOException {
+        buffer.clear();
+
+        int read = connection.getChannel().read(buffer);
+        if (read < 0)
+            throw new EOFException("Connection closed by client");
+
+        return read == 0 || onReceived(buffer.array(), 0, read);
+    }
+
+    /**
+     * Writes queued frames until the channel is full , on the selector thread .
+     *
+     * @return true when nothing is left to write .
+     */
+    boolean write() throws IOException {
+        writeRequested.set(false);
+        return writeTo(connection.getChannel());
+    }
+
+    boolean isCloseExpired(long now) {
+        return isCloseTimedOut(now);
+    }
+
+    void end() {
+        onConnectionClosed();
+    }
+
+    @Override
+    protected void onQueued() {
+        if (writeRequested.compareAndSet(false, true))
+            server.requestWrite(this);
+    }
+
+    @Override
+    protected void dispatch(@NonNull Runnable runnable) {
+        server.dispatchWebSocket(runnable);
+    }
+
+    @Override
+    protected void closeConnection() {
+        connection.close();
+    }
+}
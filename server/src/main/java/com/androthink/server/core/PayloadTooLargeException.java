@@ -0,0 +1,11 @@
+package com.androthink.server.core;
+
+import java.io.IOException;
+
+// Thrown while reading a request body larger than ServerConfig.getMaxBodySize() , answered with 413 ..
+class PayloadTooLargeException extends IOException {
+
+    PayloadTooLargeException(long size, long maxSize) {
+        super("Request body of " + size + " bytes exceeds the limit of " + maxSize + " bytes");
+    }
+}
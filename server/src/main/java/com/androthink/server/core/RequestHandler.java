@@ -1,169 +1,251 @@
 package com.androthink.server.core;
 
-import android.util.Log;
+import androidx.annotation.NonNull;
 
 import com.androthink.server.helper.ServerHelper;
 import com.androthink.server.model.Request;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Scanner;
 
 class RequestHandler {
 
-    private final BufferedReader requestStream;
+    private static final byte[] EMPTY_BODY = new byte[0];
+    private static final int MAX_HEADERS = 100;
+
+    private final RequestStream requestStream;
+    private final HttpRequestParser parser;
     private final Request request;
+    private final ServerConfig config;
+    private final ClientConnection connection;
+    private final long maxBodySize;
 
-    static RequestHandler getInstance(Request request, BufferedReader requestStream) {
-        return new RequestHandler(request, requestStream);
+    static RequestHandler getInstance(Request request, RequestStream requestStream, HttpRequestParser parser, ServerConfig config,
+                                      ClientConnection connection) {
+        return new RequestHandler(request, requestStream, parser, config, connection);
     }
 
-    private RequestHandler(Request request, BufferedReader requestStream) {
+    private RequestHandler(Request request, RequestStream requestStream, HttpRequestParser parser, ServerConfig config,
+                           ClientConnection connection) {
         this.requestStream = requestStream;
+        this.parser = parser;
         this.request = request;
+        this.config = config;
+        this.connection = connection;
+        this.maxBodySize = config.getMaxBodySize();
     }
 
-    Request extract() throws IOException, JSONException {
-        String headerLine = requestStream.readLine(); // ===> POST / HTTP/1.1
-
-        if (headerLine == null)
-            return request;
+    Request extract() throws IOException {
+        byte[] buffer = requestStream.getBuffer();
 
-        Scanner scanner = new Scanner(headerLine);
+        // Empty lines before the request line are ignored ..
+        do {
+            if (!requestStream.nextLine())
+                return request;
+        } while (requestStream.getLineStart() == requestStream.getLineEnd());
 
-        this.request.setMethod(scanner.next().toLowerCase());     //===> POST
-        this.request.setRoutePath(scanner.next().toLowerCase()); // ===> /
-        this.request.setProtocol(scanner.next());               // ===> HTTP/1.1
-
-        scanner.close();
+        // POST / HTTP/1.1
+        parser.parseRequestLine(buffer, requestStream.getLineStart(), requestStream.getLineEnd(), request);
 
         // Headers ...
         Map<String, String> requestHeaders = new HashMap<>();
 
-        while ((headerLine = requestStream.readLine()).length() != 0) {
-            scanner = new Scanner(headerLine);
-
-            String key = scanner.next().replace(":", "");
-            StringBuilder value = new StringBuilder();
+        while (true) {
+            if (!requestStream.nextLine())
+                throw new BadRequestException("Connection closed while reading headers");
 
-            while (scanner.hasNext()) {
-                value.append(scanner.next());
-            }
+            if (requestStream.getLineStart() == requestStream.getLineEnd())
+                break;
 
-            requestHeaders.put(key.toLowerCase(), value.toString());
+            if (requestHeaders.size() >= MAX_HEADERS)
+                throw new BadRequestException("Too many headers");
 
-            scanner.close();
+            parser.parseHeaderLine(buffer, requestStream.getLineStart(), requestStream.getLineEnd(), requestHeaders);
         }
 
         String cookies = requestHeaders.get("cookie");
         if (cookies != null && !cookies.isEmpty()) {
-            Map<String, String> requestCookies = new HashMap<>();
-            String[] data = cookies.split(";");
-            for (String s : data) {
-                String[] cook = s.split("=");
-                if (cook.length == 2)
-                    requestCookies.put(cook[0], cook[1]);
-            }
-            request.setRequestCookies(requestCookies);
+            request.setRequestCookies(HttpRequestParser.parseCookies(cookies));
             requestHeaders.remove("cookie");
         }
 
         // Review Content Type & if Form-Data ==> get Boundary
         String contentTypeHeader = requestHeaders.get(ServerHelper.MAIN_HEADERS.CONTENT_TYPE);
+        String boundary = null;
         if (contentTypeHeader != null && contentTypeHeader.toLowerCase().contains(ServerHelper.CONTENT_TYPE.FORM_DATA)) {
             // multipart/form-data; boundary=--------------------------809476465016676300543428
-            String[] data = contentTypeHeader.split(";");
-            requestHeaders.put(ServerHelper.MAIN_HEADERS.CONTENT_TYPE, data[0]);
-            requestHeaders.put(ServerHelper.MAIN_HEADERS.CONTENT_FORM_DATA_BOUNDARY, data[1].replace("boundary=", ""));
+            boundary = MultipartParser.getParameter(contentTypeHeader, "boundary");
+            requestHeaders.put(ServerHelper.MAIN_HEADERS.CONTENT_TYPE, ServerHelper.CONTENT_TYPE.FORM_DATA);
+            if (boundary != null)
+                requestHeaders.put(ServerHelper.MAIN_HEADERS.CONTENT_FORM_DATA_BOUNDARY, boundary);
         }
 
         this.request.setHeaders(requestHeaders);
 
-        // Payload
-        extractPayload();
+        // Payload , only read here , decoded by Request when the route asks for it ..
+        connection.onReadingBody();
+        if (boundary != null) {
+            // Parts are streamed as they arrive , file parts never stay in memory ..
+            readMultipart(requestHeaders, boundary);
+        } else {
+            request.setBodyBytes(readBody(requestHeaders));
+        }
 
         return request;
     }
 
-    private void extractPayload() throws IOException, JSONException {
-        StringBuilder payload = new StringBuilder();
-        while (requestStream.ready()) {
-            payload.append((char) requestStream.read());
+    // Reads exactly the body announced by Content-Length or Transfer-Encoding: chunked ..
+    private byte[] readBody(Map<String, String> requestHeaders) throws IOException {
+        String transferEncoding = requestHeaders.get(ServerHelper.MAIN_HEADERS.TRANSFER_ENCODING);
+        if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked"))
+            return readChunkedBody();
+
+        String contentLength = requestHeaders.get(ServerHelper.MAIN_HEADERS.CONTENT_LENGTH);
+        if (contentLength == null)
+            return EMPTY_BODY;
+
+        long length;
+        try {
+            length = Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid Content-Length : " + contentLength);
+        }
+
+        if (length < 0)
+            throw new BadRequestException("Invalid Content-Length : " + contentLength);
+
+        if (length > maxBodySize)
+            throw new PayloadTooLargeException(length, maxBodySize);
+
+        if (length == 0)
+            return EMPTY_BODY;
+
+        byte[] body = new byte[(int) length];
+        requestStream.readFully(body, 0, body.length);
+        return body;
+    }
+
+    private void readMultipart(Map<String, String> requestHeaders, String boundary) throws IOException {
+        InputStream body;
+
+        String transferEncoding = requestHeaders.get(ServerHelper.MAIN_HEADERS.TRANSFER_ENCODING);
+        String contentLength = requestHeaders.get(ServerHelper.MAIN_HEADERS.CONTENT_LENGTH);
+        if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            // Rare for uploads , decoded in memory within maxBodySize ..
+            body = new ByteArrayInputStream(readChunkedBody());
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid Content-Length : " + contentLength);
+            }
+
+            if (length < 0)
+                throw new BadRequestException("Invalid Content-Length : " + contentLength);
+
+            body = new BoundedInputStream(requestStream, length);
+        } else {
+            throw new BadRequestException("Multipart body without a length");
         }
-        String contentType = request.getHeaders().get(ServerHelper.MAIN_HEADERS.CONTENT_TYPE);
-
-        if (contentType != null) {
-            Object requestPayload = null;
-
-            switch (contentType) {
-                case ServerHelper.CONTENT_TYPE.TEXT:
-                    requestPayload = payload.toString();
-                    break;
-                case ServerHelper.CONTENT_TYPE.JSON:
-                    requestPayload = new JSONObject(payload.toString());
-                    break;
-                case ServerHelper.CONTENT_TYPE.FORM_URL_ENCODED_DATA:
-                    String[] formParams = payload.toString().split("&");
-                    if (formParams.length > 0) {
-                        requestPayload = new JSONObject();
-                        for (String formParam : formParams) {
-                            String[] details = formParam.split("=");
-                            if (details.length == 2) {
-                                ((JSONObject) requestPayload).put(details[0], details[1]);
-                            }
-                        }
-                    }
-                    break;
-                case ServerHelper.CONTENT_TYPE.FORM_DATA: {
-                    String boundary = request.getHeaders().get(ServerHelper.MAIN_HEADERS.CONTENT_FORM_DATA_BOUNDARY);
-
-                    if (boundary != null) {
-                        String[] params = payload.toString().split(boundary);
-
-                        if (params.length > 1) {
-
-                            requestPayload = new JSONObject();
-
-                            String param;
-                            for (int i = 0; i < params.length - 1; i++) {
-                                param = params[i];
-                                if (param.isEmpty() || param.equals("--"))
-                                    continue;
-
-                                Scanner scanner = new Scanner(param);
-
-                                String key = scanner.next().replace(":", ""); // Content-Disposition
-                                String content = scanner.next().replace(";", ""); // form-data
-                                Log.e("RequestPayload", "Key : " + key + " , Content : " + content);
-
-                                String name = scanner.next().replace("name=\"", "").replace("\"", "");
-
-                                // Todo -- Handle Files ..
-
-                                StringBuilder value = new StringBuilder();
-                                String tempValue;
-                                while (scanner.hasNext()) {
-                                    tempValue = scanner.next();
-                                    if (!tempValue.equals("--"))
-                                        value.append(tempValue);
-                                }
-
-                                scanner.close();
-
-                                ((JSONObject) requestPayload).put(name, value.toString());
-                            }
-                        }
-                    }
-                }
+
+        MultipartParser multipartParser = new MultipartParser(body, boundary, config, request);
+        multipartParser.parse();
+
+        request.setFormFields(multipartParser.getFields());
+        request.setFiles(multipartParser.getFiles());
+    }
+
+    private byte[] readChunkedBody() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8 * 1024];
+
+        while (true) {
+            String sizeLine = requestStream.readLine();
+            if (sizeLine == null)
+                throw new BadRequestException("Unexpected end of chunked body");
+
+            // Ignore chunk extensions ..
+            int extension = sizeLine.indexOf(';');
+            if (extension >= 0)
+                sizeLine = sizeLine.substring(0, extension);
+
+            long size;
+            try {
+                size = Long.parseLong(sizeLine.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid chunk size : " + sizeLine);
+            }
+
+            if (size == 0)
                 break;
+
+            if (size < 0)
+                throw new BadRequestException("Invalid chunk size : " + sizeLine);
+
+            if (body.size() + size > maxBodySize)
+                throw new PayloadTooLargeException(body.size() + size, maxBodySize);
+
+            while (size > 0) {
+                int count = (int) Math.min(size, chunk.length);
+                requestStream.readFully(chunk, 0, count);
+                body.write(chunk, 0, count);
+                size -= count;
             }
 
-            request.setPayload(requestPayload);
+            // CRLF after chunk data ..
+            String end = requestStream.readLine();
+            if (end == null || !end.isEmpty())
+                throw new BadRequestException("Malformed chunk end");
+        }
+
+        // Trailers end with an empty line ..
+        String trailer;
+        while ((trailer = requestStream.readLine()) != null && trailer.length() != 0) {
+            // Trailers are not exposed ..
+        }
+
+        return body.toByteArray();
+    }
+
+    // Reads at most length bytes , the rest of the connection stays for the next request ..
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream inputStream;
+        private long remaining;
+
+        BoundedInputStream(InputStream inputStream, long length) {
+            this.inputStream = inputStream;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+
+            int b = inputStream.read();
+            if (b < 0)
+                throw new BadRequestException("Unexpected end of request body");
+
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+
+            int read = inputStream.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0)
+                throw new BadRequestException("Unexpected end of request body");
+
+            remaining -= read;
+            return read;
         }
     }
 }
@@ -0,0 +1,191 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Buffered byte stream over the connection input , reads header lines and bodies without any char decoding ..
+class RequestStream extends InputStream {
+
+    // Also the longest accepted request or header line ..
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream inputStream;
+    private final byte[] buffer;
+
+    private int position = 0;
+    private int limit = 0;
+
+    // Bytes received from the connection , buffered ones included ..
+    private long bytesRead = 0;
+
+    // Bounds of the line found by the last nextLine() call inside getBuffer() , terminator excluded ..
+    private int lineStart = 0;
+    private int lineEnd = 0;
+
+    RequestStream(@NonNull InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+
+        int read = inputStream.read(buffer, 0, buffer.length);
+        if (read <= 0)
+            return false;
+
+        bytesRead += read;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= limit && !fill())
+            return -1;
+
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        int available = limit - position;
+        if (available > 0) {
+            int count = Math.min(available, len);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        // Large reads skip the internal buffer ..
+        if (len >= buffer.length) {
+            int read = inputStream.read(b, off, len);
+            if (read > 0)
+                bytesRead += read;
+            return read;
+        }
+
+        if (!fill())
+            return -1;
+
+        return read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + inputStream.available();
+    }
+
+    /**
+     * Reads exactly len bytes .
+     *
+     * @throws BadRequestException if the stream ends first , the request body was truncated .
+     */
+    void readFully(@NonNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int read = read(b, off, len);
+            if (read < 0)
+                throw new BadRequestException("Unexpected end of request body");
+
+            off += read;
+            len -= read;
+        }
+    }
+
+    /**
+     * Finds the next line terminated by LF or CRLF without copying it ,
+     * its bounds are then available from getLineStart() and getLineEnd() over getBuffer() .
+     *
+     * @return false if the stream ended before any byte of the line .
+     * @throws BadRequestException if the line does not fit in the buffer .
+     */
+    boolean nextLine() throws IOException {
+        int scan = position;
+
+        while (true) {
+            while (scan < limit) {
+                if (buffer[scan] == '\n') {
+                    lineStart = position;
+                    lineEnd = (scan > position && buffer[scan - 1] == '\r') ? scan - 1 : scan;
+                    position = scan + 1;
+                    return true;
+                }
+                scan++;
+            }
+
+            // Move the partial line to the start of the buffer before reading more ..
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                scan -= position;
+                limit -= position;
+                position = 0;
+            }
+
+            if (limit == buffer.length)
+                throw new BadRequestException("Request line too long");
+
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read <= 0) {
+                if (limit == position)
+                    return false;
+
+                // Unterminated last line ..
+                lineStart = position;
+                lineEnd = limit;
+                position = limit;
+                return true;
+            }
+
+            bytesRead += read;
+            limit += read;
+        }
+    }
+
+    /**
+     * @return bytes handed out by this stream so far , read ahead bytes still in the buffer are not counted .
+     */
+    long getBytesConsumed() {
+        return bytesRead - (limit - position);
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getLineStart() {
+        return lineStart;
+    }
+
+    int getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Reads a line terminated by LF or CRLF as ISO-8859-1 .
+     *
+     * @return the line without its terminator or null if the stream ended before any byte .
+     */
+    @Nullable
+    String readLine() throws IOException {
+        if (!nextLine())
+            return null;
+
+        char[] line = new char[lineEnd - lineStart];
+        for (int i = 0; i < line.length; i++)
+            line[i] = (char) (buffer[lineStart + i] & 0xff);
+
+        return new String(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,21 @@
+package com.androthink.server.core;
+
+import java.io.IOException;
+
+// Thrown when a request is not received within the read limits of ServerConfig , answered with 408 ..
+class RequestTimeoutException extends IOException {
+
+    private final int kind;
+
+    /**
+     * @param kind one of TimeoutCounters.KIND .
+     */
+    RequestTimeoutException(int kind, String message) {
+        super(message);
+        this.kind = kind;
+    }
+
+    int getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,107 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+
+/**
+ * Access log writer appending lines to a file , access.log is renamed access.log.1 once it reaches maxBytes ,
+ * the previous ones moving to access.log.2 and so on up to maxFiles . The file is opened on the first write
+ * so a closed writer can be used again after a restart .
+ */
+public class RotatingFileWriter implements AccessLog.Writer {
+
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    private final SimpleDateFormat dateFormat = AccessLog.newDateFormat();
+    private final StringBuilder line = new StringBuilder(256);
+
+    private OutputStream outputStream;
+    private long size;
+
+    /**
+     * @param maxBytes size a file may reach before it is rotated .
+     * @param maxFiles rotated files kept besides the current one , older ones are deleted .
+     */
+    public RotatingFileWriter(@NonNull File file, long maxBytes, int maxFiles) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(0, maxFiles);
+    }
+
+    @Override
+    public void write(@NonNull AccessLog.Record record) throws IOException {
+        line.setLength(0);
+        record.appendTo(line, dateFormat);
+        line.append('\n');
+        byte[] bytes = line.toString().getBytes("UTF-8");
+
+        if (outputStream != null && size > 0 && size + bytes.length > maxBytes)
+            rotate();
+
+        if (outputStream == null) {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Can not create " + parent);
+
+            outputStream = new BufferedOutputStream(new FileOutputStream(file, true), 16 * 1024);
+            size = file.length();
+        }
+
+        outputStream.write(bytes);
+        size += bytes.length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (outputStream != null)
+            outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (outputStream == null)
+            return;
+
+        try {
+            outputStream.close();
+        } finally {
+            outputStream = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        close();
+
+        if (maxFiles == 0) {
+            if (!file.delete())
+                throw new IOException("Can not delete " + file);
+            return;
+        }
+
+        File oldest = rotated(maxFiles);
+        if (oldest.exists() && !oldest.delete())
+            throw new IOException("Can not delete " + oldest);
+
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File from = rotated(i);
+            if (from.exists() && !from.renameTo(rotated(i + 1)))
+                throw new IOException("Can not rename " + from);
+        }
+
+        if (!file.renameTo(rotated(1)))
+            throw new IOException("Can not rename " + file);
+    }
+
+    @NonNull
+    private File rotated(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+}
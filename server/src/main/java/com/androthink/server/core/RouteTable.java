@@ -0,0 +1,409 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.model.Route;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Routes compiled once in applyRoutes : exact paths in per method hash maps ,
+// templates ( /devices/{id} , /static/* ) and start with routes in path segment tries ..
+class RouteTable {
+
+    // Name under which the part of the path matched by * is exposed ..
+    static final String WILDCARD = "*";
+
+    // method ==> path ==> route
+    private final Map<String, Map<String, Route>> exactRoutes;
+    // path ==> methods registered for it , used to answer 405 instead of 404
+    private final Map<String, Set<String>> exactMethods;
+
+    private final Node prefixRoot;
+
+    private final TemplateNode templateRoot;
+    // Most values a single template can capture , sizes the per lookup capture array ..
+    private int maxCaptures = 0;
+
+    RouteTable(@NonNull List<Route> routeList) {
+        this.exactRoutes = new HashMap<>();
+        this.exactMethods = new HashMap<>();
+        this.prefixRoot = new Node();
+        this.templateRoot = new TemplateNode();
+
+        for (Route route : routeList) {
+            if (isTemplate(route.getPath()))
+                addTemplateRoute(route);
+            else if (route.isRouteStartWith())
+                addPrefixRoute(route);
+            else
+                addExactRoute(route);
+        }
+    }
+
+    // A template has at least one {name} segment or ends with a * segment ..
+    private static boolean isTemplate(@NonNull String path) {
+        return path.indexOf('{') >= 0 || path.equals("*") || path.endsWith("/*");
+    }
+
+    private void addTemplateRoute(Route route) {
+        TemplateNode node = templateRoot;
+        List<String> names = new ArrayList<>();
+        String path = route.getPath();
+
+        int start = nextSegmentStart(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            String segment = path.substring(start, end);
+            start = nextSegmentStart(path, end);
+
+            if (segment.equals("*")) {
+                if (start < path.length())
+                    throw new IllegalArgumentException("Wildcard must be the last segment : " + path);
+
+                names.add(WILDCARD);
+                putIfAbsent(node.wildcardRoutes(), route, names);
+                maxCaptures = Math.max(maxCaptures, names.size());
+                return;
+            }
+
+            if (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}') {
+                names.add(segment.substring(1, segment.length() - 1));
+                if (node.param == null)
+                    node.param = new TemplateNode();
+                node = node.param;
+            } else {
+                node = node.child(segment);
+            }
+        }
+
+        putIfAbsent(node.routes(), route, names);
+        maxCaptures = Math.max(maxCaptures, names.size());
+    }
+
+    private static void putIfAbsent(Map<String, CompiledTemplate> routes, Route route, List<String> names) {
+        if (!routes.containsKey(route.getMethod()))
+            routes.put(route.getMethod(), new CompiledTemplate(route, names.toArray(new String[0])));
+    }
+
+    private void addExactRoute(Route route) {
+        Map<String, Route> routes = exactRoutes.get(route.getMethod());
+        if (routes == null) {
+            routes = new HashMap<>();
+            exactRoutes.put(route.getMethod(), routes);
+        }
+
+        // First registered route wins as with the previous linear scan ..
+        if (!routes.containsKey(route.getPath()))
+            routes.put(route.getPath(), route);
+
+        Set<String> methods = exactMethods.get(route.getPath());
+        if (methods == null) {
+            methods = new LinkedHashSet<>();
+            exactMethods.put(route.getPath(), methods);
+        }
+        methods.add(route.getMethod());
+    }
+
+    private void addPrefixRoute(Route route) {
+        Node node = prefixRoot;
+        String path = route.getPath();
+
+        int start = nextSegmentStart(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            node = node.child(path.substring(start, end));
+            start = nextSegmentStart(path, end);
+        }
+
+        if (!node.routes.containsKey(route.getMethod()))
+            node.routes.put(route.getMethod(), route);
+    }
+
+    @Nullable
+    Route getRoute(@NonNull String method, @NonNull String path) {
+        Map<String, Route> routes = exactRoutes.get(method);
+        return routes != null ? routes.get(path) : null;
+    }
+
+    /**
+     * Same as getTemplateRoute(method, path, path, pathParams) , for a path whose case is kept .
+     */
+    @Nullable
+    Route getTemplateRoute(@NonNull String method, @NonNull String path, @NonNull Map<String, String> pathParams) {
+        return getTemplateRoute(method, path, path, pathParams);
+    }
+
+    /**
+     * Matches path against the compiled templates , literal segments win over {name} segments which win over * .
+     * The query string is not part of the match .
+     *
+     * @param path       lowercased request target the templates are matched against .
+     * @param target     request target as received , captured values are cut from it and percent-decoded .
+     * @param pathParams filled with the captured values when a route matches .
+     * @return the matched route or null .
+     */
+    @Nullable
+    Route getTemplateRoute(@NonNull String method, @NonNull String path, @NonNull String target,
+                           @NonNull Map<String, String> pathParams) {
+        if (templateRoot.isEmpty())
+            return null;
+
+        // Both come from the same bytes , a target of another length is not the raw form of path ..
+        if (target.length() != path.length())
+            target = path;
+
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+            target = target.substring(0, query);
+        }
+
+        String[] values = new String[maxCaptures];
+        CompiledTemplate template = match(templateRoot, method, path, target, 0, values, 0);
+        if (template == null)
+            return null;
+
+        for (int i = 0; i < template.names.length; i++)
+            pathParams.put(template.names[i], decode(values[i]));
+
+        return template.route;
+    }
+
+    @Nullable
+    private CompiledTemplate match(TemplateNode node, String method, String path, String target, int index,
+                                   String[] values, int captured) {
+        int start = nextSegmentStart(path, index);
+
+        if (start >= path.length()) {
+            CompiledTemplate template = node.routes != null ? node.routes.get(method) : null;
+            if (template == null && node.wildcardRoutes != null) {
+                template = node.wildcardRoutes.get(method);
+                if (template != null)
+                    values[captured] = "";
+            }
+            return template;
+        }
+
+        int end = segmentEnd(path, start);
+
+        if (node.children != null) {
+            TemplateNode child = node.children.get(path.substring(start, end));
+            if (child != null) {
+                CompiledTemplate template = match(child, method, path, target, end, values, captured);
+                if (template != null)
+                    return template;
+            }
+        }
+
+        if (node.param != null) {
+            values[captured] = target.substring(start, end);
+            CompiledTemplate template = match(node.param, method, path, target, end, values, captured + 1);
+            if (template != null)
+                return template;
+        }
+
+        if (node.wildcardRoutes != null) {
+            CompiledTemplate template = node.wildcardRoutes.get(method);
+            if (template != null) {
+                values[captured] = target.substring(start);
+                return template;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Percent-decodes a captured value as UTF-8 , '+' is kept as it only means a space in form bodies .
+     * Malformed escapes are kept as sent .
+     */
+    @NonNull
+    static String decode(@NonNull String value) {
+        if (value.indexOf('%') < 0)
+            return value;
+
+        // The target was read one byte per char , so every char is a byte of the UTF-8 path ..
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int high;
+            int low;
+            if (c == '%' && i + 2 < value.length() && (high = Character.digit(value.charAt(i + 1), 16)) >= 0
+                    && (low = Character.digit(value.charAt(i + 2), 16)) >= 0) {
+                bytes.write((high << 4) | low);
+                i += 2;
+            } else
+                bytes.write(c & 0xff);
+        }
+
+        try {
+            return bytes.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return value;
+        }
+    }
+
+    // Every method of every template matching path ..
+    private void collectTemplateMethods(TemplateNode node, String path, int index, Set<String> methods) {
+        if (node.wildcardRoutes != null)
+            methods.addAll(node.wildcardRoutes.keySet());
+
+        int start = nextSegmentStart(path, index);
+        if (start >= path.length()) {
+            if (node.routes != null)
+                methods.addAll(node.routes.keySet());
+            return;
+        }
+
+        int end = segmentEnd(path, start);
+
+        if (node.children != null) {
+            TemplateNode child = node.children.get(path.substring(start, end));
+            if (child != null)
+                collectTemplateMethods(child, path, end, methods);
+        }
+
+        if (node.param != null)
+            collectTemplateMethods(node.param, path, end, methods);
+    }
+
+    /**
+     * @return the start with route for method whose path covers the most leading segments of path .
+     */
+    @Nullable
+    Route getRouteWithStartWith(@NonNull String method, @NonNull String path) {
+        Node node = prefixRoot;
+        Route longest = node.routes.get(method);
+
+        int start = nextSegmentStart(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            node = node.children != null ? node.children.get(path.substring(start, end)) : null;
+            if (node == null)
+                break;
+
+            Route route = node.routes.get(method);
+            if (route != null)
+                longest = route;
+
+            start = nextSegmentStart(path, end);
+        }
+
+        return longest;
+    }
+
+    /**
+     * @return methods that have a route matching path , empty when the path is unknown .
+     */
+    @NonNull
+    Set<String> getAllowedMethods(@NonNull String path) {
+        Set<String> methods = new LinkedHashSet<>();
+
+        Set<String> exact = exactMethods.get(path);
+        if (exact != null)
+            methods.addAll(exact);
+
+        collectTemplateMethods(templateRoot, path, 0, methods);
+
+        Node node = prefixRoot;
+        methods.addAll(node.routes.keySet());
+
+        int start = nextSegmentStart(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            node = node.children != null ? node.children.get(path.substring(start, end)) : null;
+            if (node == null)
+                break;
+
+            methods.addAll(node.routes.keySet());
+            start = nextSegmentStart(path, end);
+        }
+
+        return methods;
+    }
+
+    private static int nextSegmentStart(String path, int index) {
+        while (index < path.length() && path.charAt(index) == '/')
+            index++;
+
+        return index;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.length() : end;
+    }
+
+    private static class CompiledTemplate {
+        private final Route route;
+        // Name of each captured value in capture order , * for the wildcard ..
+        private final String[] names;
+
+        CompiledTemplate(Route route, String[] names) {
+            this.route = route;
+            this.names = names;
+        }
+    }
+
+    private static class TemplateNode {
+        private Map<String, TemplateNode> children;
+        private TemplateNode param;
+        private Map<String, CompiledTemplate> routes;
+        private Map<String, CompiledTemplate> wildcardRoutes;
+
+        TemplateNode child(String segment) {
+            if (children == null)
+                children = new HashMap<>();
+
+            TemplateNode child = children.get(segment);
+            if (child == null) {
+                child = new TemplateNode();
+                children.put(segment, child);
+            }
+
+            return child;
+        }
+
+        Map<String, CompiledTemplate> routes() {
+            if (routes == null)
+                routes = new HashMap<>(4);
+            return routes;
+        }
+
+        Map<String, CompiledTemplate> wildcardRoutes() {
+            if (wildcardRoutes == null)
+                wildcardRoutes = new HashMap<>(4);
+            return wildcardRoutes;
+        }
+
+        boolean isEmpty() {
+            return children == null && param == null && routes == null && wildcardRoutes == null;
+        }
+    }
+
+    private static class Node {
+        private Map<String, Node> children;
+        private final Map<String, Route> routes = new HashMap<>(4);
+
+        Node child(String segment) {
+            if (children == null)
+                children = new HashMap<>();
+
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+
+            return child;
+        }
+    }
+}
@@ -13,12 +13,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 class RoutesHandler {
 
+    // Matched route of the built-in asset routes ..
+    static final String IMAGES_ROUTE = "/images/*";
+    static final String SOUNDS_ROUTE = "/sounds/*";
+
     private static RoutesHandler routesHandler = null;
 
-    private List<Route> routeList;
+    private volatile RouteTable routeTable;
 
     static RoutesHandler getInstance() {
         if (routesHandler == null)
@@ -28,18 +33,25 @@ class RoutesHandler {
     }
 
     private RoutesHandler() {
-        this.routeList = new ArrayList<>();
+        this.routeTable = new RouteTable(new ArrayList<Route>());
     }
 
     void Handle(@NonNull Request request, ResponseHandler responseHandler) throws IOException {
 
-        if (!isAllowedMethod(request.getMethod()))
+        if (!isAllowedMethod(request.getMethod())) {
             responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.METHOD_NOT_ALLOWED,
                     "{\"status\":false,\"error\":\"Method (" + request.getMethod() + ") Not Allowed!\"}");
+            return;
+        }
 
-        Route route = getRoute(request.getMethod(), request.getRoutePath());
+        RouteTable routeTable = this.routeTable;
+        Route route = routeTable.getRoute(request.getMethod(), request.getRoutePath());
+        if (route == null)
+            route = routeTable.getTemplateRoute(request.getMethod(), request.getRoutePath(), request.getRequestTarget(),
+                    request.getPathParams());
 
         if (route != null) {
+            request.setMatchedRoute(route.getPath());
             if (route.isAuth()) {
                 if (isApiRoute(request.getRoutePath())) {
                     String authKey = getAuthorizationKey(request.getHeaders());
@@ -65,11 +77,13 @@ class RoutesHandler {
         } else {
             if (request.getMethod().equals(ServerHelper.METHOD.GET)) {
                 if (request.getRoutePath().startsWith("/images/")) {
+                    request.setMatchedRoute(IMAGES_ROUTE);
                     responseHandler.sendAssetMediaFile(ServerHelper.RESPONSE_CODE.OK,ServerHelper.CONTENT_TYPE.JPEG,
                                     request.getRoutePath().replace("/images/", "img/"));
 
                     return;
                 } else if (request.getRoutePath().startsWith("/sounds/")) {
+                    request.setMatchedRoute(SOUNDS_ROUTE);
                     responseHandler.sendAssetMediaFile(ServerHelper.RESPONSE_CODE.OK,ServerHelper.CONTENT_TYPE.MPEG,
                                     request.getRoutePath().replace("/sounds/", "sound/"));
 
@@ -77,8 +91,9 @@ class RoutesHandler {
                 }
             }
 
-            Route startedWithRoute = getRouteWithStartWith(request.getMethod(), request.getRoutePath());
+            Route startedWithRoute = routeTable.getRouteWithStartWith(request.getMethod(), request.getRoutePath());
             if (startedWithRoute != null) {
+                request.setMatchedRoute(startedWithRoute.getPath());
                 if (startedWithRoute.isAuth()) {
                     if (isApiRoute(request.getRoutePath())) {
                         String authKey = getAuthorizationKey(request.getHeaders());
@@ -104,41 +119,42 @@ class RoutesHandler {
                 return;
             }
 
+            // Path is routed for other methods only ..
+            Set<String> allowedMethods = routeTable.getAllowedMethods(request.getRoutePath());
+            if (!allowedMethods.isEmpty()) {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Allow", getAllowHeader(allowedMethods));
+
+                responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.METHOD_NOT_ALLOWED,
+                        "{\"status\":false,\"error\":\"Method (" + request.getMethod() + ") Not Allowed!\"}", headers);
+                return;
+            }
+
             if (isApiRoute(request.getRoutePath()))
                 responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.NOT_FOUND,
                         "{\"status\":false,\"error\":\"Error 404 Not Found !\"}");
             else {
                 Map<String, String> placeHolders = new HashMap<>();
                 placeHolders.put("page_place_holder", "" + request.getRoutePath());
-                responseHandler.sendAssetFileWithPlaceHolder(ServerHelper.RESPONSE_CODE.NOT_FOUND,ServerHelper.CONTENT_TYPE.HTML ,"html/404.html", placeHolders);
+                responseHandler.sendAssetFileWithPlaceHolder(ServerHelper.RESPONSE_CODE.NOT_FOUND,ServerHelper.CONTENT_TYPE.HTML ,"html/404.html", placeHolders, true);
             }
         }
     }
 
     void applyRoutes(List<Route> routeList) {
-        this.routeList = routeList;
-    }
-
-    @Nullable
-    private Route getRoute(String method, String path) {
-
-        for (Route route : routeList) {
-            if (route.getMethod().equals(method) && route.getPath().equals(path))
-                return route;
-        }
-
-        return null;
+        this.routeTable = new RouteTable(routeList);
     }
 
-    @Nullable
-    private Route getRouteWithStartWith(String method, String path) {
-
-        for (Route route : routeList) {
-            if (route.isRouteStartWith() && route.getMethod().equals(method) && path.startsWith(route.getPath()))
-                return route;
+    @NonNull
+    private String getAllowHeader(@NonNull Set<String> methods) {
+        StringBuilder allow = new StringBuilder();
+        for (String method : methods) {
+            if (allow.length() > 0)
+                allow.append(", ");
+            allow.append(method.toUpperCase());
         }
 
-        return null;
+        return allow.toString();
     }
 
     private boolean isAllowedMethod(@NonNull String method) {
@@ -0,0 +1,507 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.callback.UploadCallBack;
+import com.androthink.server.handler.AssetCache;
+import com.androthink.server.handler.Compression;
+import com.androthink.server.handler.ResponseOutputStream;
+import com.androthink.server.helper.RequestIdGenerator;
+import com.androthink.server.helper.SequentialIdGenerator;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ServerConfig {
+
+    public class DISPATCH_MODE {
+        public static final int THREAD_PER_CONNECTION = 0;
+        public static final int WORKER_POOL = 1;
+    }
+
+    public class TRANSPORT {
+        // java.net.ServerSocket with one blocked worker per connection ..
+        public static final int BLOCKING = 0;
+        // Selector based , requests are buffered without blocking and handed to the worker pool when complete ..
+        public static final int NIO = 1;
+    }
+
+    private int transport;
+    private int dispatchMode;
+
+    private int workerCoreSize;
+    private int workerMaxSize;
+    private int workerQueueSize;
+    private long workerKeepAliveSeconds;
+
+    private boolean keepAliveEnabled;
+    private int keepAliveTimeoutMillis;
+    private int maxRequestsPerConnection;
+
+    private int headerReadTimeoutMillis;
+    private int bodyReadTimeoutMillis;
+    private long minBodyTransferRate;
+    private int writeTimeoutMillis;
+
+    private long maxBodySize;
+
+    private long multipartMaxFileSize;
+    private long multipartMaxFieldSize;
+    private int multipartMaxParts;
+    private File uploadDirectory;
+    private UploadCallBack uploadCallBack;
+
+    private boolean assetCacheEnabled;
+    private long assetCacheMaxBytes;
+
+    private Compression compression;
+    private int responseBufferSize;
+
+    private long webSocketMaxMessageSize;
+    private long webSocketMaxQueuedBytes;
+
+    private RequestIdGenerator requestIdGenerator;
+
+    // GET route answering with ServerMetrics in Prometheus text , null for none ..
+    private String metricsPath;
+
+    private int accessLogLevel;
+    private int accessLogSampling;
+    private int accessLogBufferSize;
+    private AccessLog.Writer accessLogWriter;
+
+    private final Map<String, String> cacheControl;
+
+    public ServerConfig() {
+        this.transport = TRANSPORT.BLOCKING;
+        this.dispatchMode = DISPATCH_MODE.THREAD_PER_CONNECTION;
+
+        this.workerCoreSize = 4;
+        this.workerMaxSize = 16;
+        this.workerQueueSize = 64;
+        this.workerKeepAliveSeconds = 30;
+
+        this.keepAliveEnabled = true;
+        this.keepAliveTimeoutMillis = 15 * 1000;
+        this.maxRequestsPerConnection = 100;
+
+        this.headerReadTimeoutMillis = 10 * 1000;
+        this.bodyReadTimeoutMillis = 30 * 1000;
+        this.minBodyTransferRate = 1024;
+        this.writeTimeoutMillis = 30 * 1000;
+
+        this.maxBodySize = 10 * 1024 * 1024;
+
+        this.multipartMaxFileSize = 1024L * 1024 * 1024;
+        this.multipartMaxFieldSize = 64 * 1024;
+        this.multipartMaxParts = 100;
+        this.uploadDirectory = null;
+        this.uploadCallBack = null;
+
+        this.assetCacheEnabled = true;
+        this.assetCacheMaxBytes = AssetCache.DEFAULT_MAX_BYTES;
+
+        this.compression = null;
+        this.responseBufferSize = ResponseOutputStream.DEFAULT_BUFFER_SIZE;
+
+        this.webSocketMaxMessageSize = 1024 * 1024;
+        this.webSocketMaxQueuedBytes = 1024 * 1024;
+
+        this.requestIdGenerator = new SequentialIdGenerator();
+        this.metricsPath = null;
+
+        this.accessLogLevel = AccessLog.LEVEL.ERRORS;
+        this.accessLogSampling = 1;
+        this.accessLogBufferSize = AccessLog.DEFAULT_BUFFER_SIZE;
+        this.accessLogWriter = null;
+
+        this.cacheControl = new LinkedHashMap<>();
+    }
+
+    public int getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param transport one of {@link TRANSPORT} values , NIO transport always uses the worker pool .
+     */
+    public void setTransport(int transport) {
+        this.transport = transport;
+    }
+
+    public int getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * @param dispatchMode one of {@link DISPATCH_MODE} values .
+     */
+    public void setDispatchMode(int dispatchMode) {
+        this.dispatchMode = dispatchMode;
+    }
+
+    public int getWorkerCoreSize() {
+        return workerCoreSize;
+    }
+
+    /**
+     * @param workerCoreSize number of workers kept alive even when idle .
+     */
+    public void setWorkerCoreSize(int workerCoreSize) {
+        this.workerCoreSize = workerCoreSize;
+    }
+
+    public int getWorkerMaxSize() {
+        return workerMaxSize;
+    }
+
+    /**
+     * @param workerMaxSize maximum number of workers when the queue is full .
+     */
+    public void setWorkerMaxSize(int workerMaxSize) {
+        this.workerMaxSize = workerMaxSize;
+    }
+
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    /**
+     * @param workerQueueSize maximum number of accepted connections waiting for a worker ,
+     *                        connections above that limit are answered with 503 .
+     */
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    public long getWorkerKeepAliveSeconds() {
+        return workerKeepAliveSeconds;
+    }
+
+    /**
+     * @param workerKeepAliveSeconds idle time before a non core worker is stopped .
+     */
+    public void setWorkerKeepAliveSeconds(long workerKeepAliveSeconds) {
+        this.workerKeepAliveSeconds = workerKeepAliveSeconds;
+    }
+
+    public boolean isKeepAliveEnabled() {
+        return keepAliveEnabled;
+    }
+
+    /**
+     * @param keepAliveEnabled serve more than one request per connection when the client asks for it .
+     */
+    public void setKeepAliveEnabled(boolean keepAliveEnabled) {
+        this.keepAliveEnabled = keepAliveEnabled;
+    }
+
+    public int getKeepAliveTimeoutMillis() {
+        return keepAliveTimeoutMillis;
+    }
+
+    /**
+     * @param keepAliveTimeoutMillis time a connection may stay idle waiting for its next request .
+     */
+    public void setKeepAliveTimeoutMillis(int keepAliveTimeoutMillis) {
+        this.keepAliveTimeoutMillis = keepAliveTimeoutMillis;
+    }
+
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * @param maxRequestsPerConnection number of requests after which a kept-alive connection is closed .
+     */
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    public int getHeaderReadTimeoutMillis() {
+        return headerReadTimeoutMillis;
+    }
+
+    /**
+     * @param headerReadTimeoutMillis time allowed to receive the request line and headers once a request starts ,
+     *                                the connection is answered with 408 and closed after it , 0 for no limit .
+     */
+    public void setHeaderReadTimeoutMillis(int headerReadTimeoutMillis) {
+        this.headerReadTimeoutMillis = headerReadTimeoutMillis;
+    }
+
+    public int getBodyReadTimeoutMillis() {
+        return bodyReadTimeoutMillis;
+    }
+
+    /**
+     * @param bodyReadTimeoutMillis longest wait for the next bytes of a request body , 0 for no limit .
+     */
+    public void setBodyReadTimeoutMillis(int bodyReadTimeoutMillis) {
+        this.bodyReadTimeoutMillis = bodyReadTimeoutMillis;
+    }
+
+    public long getMinBodyTransferRate() {
+        return minBodyTransferRate;
+    }
+
+    /**
+     * @param minBodyTransferRate bytes per second a request body must average after its first seconds ,
+     *                            slower uploads are answered with 408 , 0 to disable .
+     */
+    public void setMinBodyTransferRate(long minBodyTransferRate) {
+        this.minBodyTransferRate = minBodyTransferRate;
+    }
+
+    public int getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    /**
+     * @param writeTimeoutMillis longest a response write may wait for a client that stopped reading ,
+     *                           the connection is closed after it , 0 for no limit .
+     */
+    public void setWriteTimeoutMillis(int writeTimeoutMillis) {
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * @param maxBodySize largest accepted request body in bytes , bigger bodies are answered with 413 .
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public long getMultipartMaxFileSize() {
+        return multipartMaxFileSize;
+    }
+
+    /**
+     * @param multipartMaxFileSize largest file part of a multipart/form-data request , file parts are streamed
+     *                             to disk so this limit is independent of maxBodySize .
+     */
+    public void setMultipartMaxFileSize(long multipartMaxFileSize) {
+        this.multipartMaxFileSize = multipartMaxFileSize;
+    }
+
+    public long getMultipartMaxFieldSize() {
+        return multipartMaxFieldSize;
+    }
+
+    /**
+     * @param multipartMaxFieldSize largest text field of a multipart/form-data request , fields are kept in memory .
+     */
+    public void setMultipartMaxFieldSize(long multipartMaxFieldSize) {
+        this.multipartMaxFieldSize = multipartMaxFieldSize;
+    }
+
+    public int getMultipartMaxParts() {
+        return multipartMaxParts;
+    }
+
+    /**
+     * @param multipartMaxParts most fields and files accepted in one multipart/form-data request .
+     */
+    public void setMultipartMaxParts(int multipartMaxParts) {
+        this.multipartMaxParts = multipartMaxParts;
+    }
+
+    public File getUploadDirectory() {
+        return uploadDirectory;
+    }
+
+    /**
+     * @param uploadDirectory where uploaded files are stored until the response is sent , null for the default
+     *                        temp directory ( the app cache directory on Android ) .
+     */
+    public void setUploadDirectory(File uploadDirectory) {
+        this.uploadDirectory = uploadDirectory;
+    }
+
+    public UploadCallBack getUploadCallBack() {
+        return uploadCallBack;
+    }
+
+    /**
+     * @param uploadCallBack receives uploaded file parts as they arrive instead of temp files , null to disable .
+     */
+    public void setUploadCallBack(UploadCallBack uploadCallBack) {
+        this.uploadCallBack = uploadCallBack;
+    }
+
+    public boolean isAssetCacheEnabled() {
+        return assetCacheEnabled;
+    }
+
+    /**
+     * @param assetCacheEnabled keep small asset bodies in memory between requests .
+     */
+    public void setAssetCacheEnabled(boolean assetCacheEnabled) {
+        this.assetCacheEnabled = assetCacheEnabled;
+    }
+
+    public long getAssetCacheMaxBytes() {
+        return assetCacheMaxBytes;
+    }
+
+    /**
+     * @param assetCacheMaxBytes total size of the cached asset bodies , a single asset above a quarter of it is never cached .
+     */
+    public void setAssetCacheMaxBytes(long assetCacheMaxBytes) {
+        this.assetCacheMaxBytes = assetCacheMaxBytes;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @param compression gzip / deflate policy for responses , null ( default ) to never compress .
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public int getResponseBufferSize() {
+        return responseBufferSize;
+    }
+
+    /**
+     * @param responseBufferSize bytes buffered per connection before writing to the socket ,
+     *                           a response smaller than this is sent in a single write .
+     */
+    public void setResponseBufferSize(int responseBufferSize) {
+        this.responseBufferSize = responseBufferSize;
+    }
+
+    public long getWebSocketMaxMessageSize() {
+        return webSocketMaxMessageSize;
+    }
+
+    /**
+     * @param webSocketMaxMessageSize largest message accepted from a WebSocket client , fragments included ,
+     *                                bigger ones close the socket with 1009 .
+     */
+    public void setWebSocketMaxMessageSize(long webSocketMaxMessageSize) {
+        this.webSocketMaxMessageSize = webSocketMaxMessageSize;
+    }
+
+    public long getWebSocketMaxQueuedBytes() {
+        return webSocketMaxQueuedBytes;
+    }
+
+    /**
+     * @param webSocketMaxQueuedBytes bytes allowed to wait for a slow WebSocket client , further messages to it are dropped
+     *                                until it catches up ( see WebSocket.getDroppedMessages ) .
+     */
+    public void setWebSocketMaxQueuedBytes(long webSocketMaxQueuedBytes) {
+        this.webSocketMaxQueuedBytes = webSocketMaxQueuedBytes;
+    }
+
+    public RequestIdGenerator getRequestIdGenerator() {
+        return requestIdGenerator;
+    }
+
+    /**
+     * @param requestIdGenerator gives the id of every accepted connection , called on the accept thread ,
+     *                           ids must be unique while connections are open .
+     */
+    public void setRequestIdGenerator(@NonNull RequestIdGenerator requestIdGenerator) {
+        this.requestIdGenerator = requestIdGenerator;
+    }
+
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * @param metricsPath path of a built-in GET route serving the metrics in Prometheus text format ( "/metrics" ) ,
+     *                    null to only read them through ServerMetrics.getInstance() .
+     */
+    public void setMetricsPath(@Nullable String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+    public int getAccessLogLevel() {
+        return accessLogLevel;
+    }
+
+    /**
+     * @param accessLogLevel one of AccessLog.LEVEL , with LEVEL.OFF requests do not touch the access log at all .
+     */
+    public void setAccessLogLevel(int accessLogLevel) {
+        this.accessLogLevel = accessLogLevel;
+    }
+
+    public int getAccessLogSampling() {
+        return accessLogSampling;
+    }
+
+    /**
+     * @param accessLogSampling log one of every accessLogSampling successful requests , errors are always logged .
+     */
+    public void setAccessLogSampling(int accessLogSampling) {
+        this.accessLogSampling = accessLogSampling;
+    }
+
+    public int getAccessLogBufferSize() {
+        return accessLogBufferSize;
+    }
+
+    /**
+     * @param accessLogBufferSize records waiting for the writer thread before new ones are dropped .
+     */
+    public void setAccessLogBufferSize(int accessLogBufferSize) {
+        this.accessLogBufferSize = accessLogBufferSize;
+    }
+
+    public AccessLog.Writer getAccessLogWriter() {
+        return accessLogWriter;
+    }
+
+    /**
+     * @param accessLogWriter destination of the access log , null for logcat . A RotatingFileWriter keeps it in files .
+     */
+    public void setAccessLogWriter(@Nullable AccessLog.Writer accessLogWriter) {
+        this.accessLogWriter = accessLogWriter;
+    }
+
+    /**
+     * @param path request path .
+     * @return Cache-Control of the longest configured prefix of the path , or null .
+     */
+    public String getCacheControl(String path) {
+        if (path == null)
+            return null;
+
+        synchronized (cacheControl) {
+            String prefix = null;
+            for (String candidate : cacheControl.keySet()) {
+                if (path.startsWith(candidate) && (prefix == null || candidate.length() > prefix.length()))
+                    prefix = candidate;
+            }
+
+            return prefix == null ? null : cacheControl.get(prefix);
+        }
+    }
+
+    /**
+     * @param pathPrefix   routes whose path starts with it , e.g. "/static/" , the longest matching prefix wins .
+     * @param cacheControl Cache-Control sent with their successful and 304 responses , e.g. "public, max-age=86400" ,
+     *                     null to remove the prefix .
+     */
+    public void setCacheControl(String pathPrefix, String cacheControl) {
+        synchronized (this.cacheControl) {
+            if (cacheControl == null)
+                this.cacheControl.remove(pathPrefix);
+            else
+                this.cacheControl.put(pathPrefix, cacheControl);
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.helper.ServerHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request counters and latency histograms per route , method and status shared by both transports ,
+ * plus gauges registered by the server ( connections , worker queue , asset cache ) or by the application .
+ * Recording a request is a few map lookups and atomic increments , nothing is locked or allocated
+ * once the route was seen . Read with snapshot() or as Prometheus text with toPrometheus() .
+ */
+public class ServerMetrics {
+
+    // Route label of requests no route answered ( 404 , 405 , malformed requests ) ..
+    public static final String UNMATCHED_ROUTE = "unmatched";
+
+    // Upper bounds of the Prometheus duration buckets in seconds ..
+    private static final double[] DURATION_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final int MAX_STATUS = 600;
+
+    public interface Gauge {
+        double getValue();
+    }
+
+    /**
+     * Reads a family of gauges sharing one label , keyed by the label value .
+     */
+    public interface GaugeFamily {
+        @NonNull
+        Map<String, ? extends Number> getValues();
+    }
+
+    private static ServerMetrics serverMetrics = null;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+    // Sorted by name so the samples of a family stay together in the text output ..
+    private final ConcurrentSkipListMap<String, Metric> gauges = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private volatile boolean enabled = true;
+
+    public static synchronized ServerMetrics getInstance() {
+        if (serverMetrics == null)
+            serverMetrics = new ServerMetrics();
+
+        return serverMetrics;
+    }
+
+    ServerMetrics() {
+    }
+
+    /**
+     * @param enabled false to stop recording requests , registered gauges are still read .
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts one answered request .
+     *
+     * @param route        declared path of the route that answered , null when none did .
+     * @param method       request method , null when the request line was not read .
+     * @param status       status code sent , 0 when the connection was closed without a response .
+     * @param micros       time spent answering , negative when not measured .
+     * @param receivedBytes request line , headers and body bytes .
+     * @param sentBytes    response head and body bytes .
+     */
+    public void recordRequest(@Nullable String route, @Nullable String method, int status, long micros,
+                              long receivedBytes, long sentBytes) {
+        if (!enabled)
+            return;
+
+        getRouteMetrics(route != null ? route : UNMATCHED_ROUTE, methodLabel(method)).record(status, micros);
+
+        if (receivedBytes > 0)
+            bytesReceived.addAndGet(receivedBytes);
+        if (sentBytes > 0)
+            bytesSent.addAndGet(sentBytes);
+    }
+
+    @NonNull
+    private RouteMetrics getRouteMetrics(@NonNull String route, @NonNull String method) {
+        ConcurrentMap<String, RouteMetrics> methods = routes.get(route);
+        if (methods == null) {
+            ConcurrentMap<String, RouteMetrics> created = new ConcurrentHashMap<>();
+            methods = routes.putIfAbsent(route, created);
+            if (methods == null)
+                methods = created;
+        }
+
+        RouteMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            RouteMetrics created = new RouteMetrics();
+            metrics = methods.putIfAbsent(method, created);
+            if (metrics == null)
+                metrics = created;
+        }
+
+        return metrics;
+    }
+
+    // Any other method is counted under a single label so clients can not grow the map ..
+    @NonNull
+    private static String methodLabel(@Nullable String method) {
+        if (method == null)
+            return "NONE";
+
+        switch (method) {
+            case ServerHelper.METHOD.GET:
+                return "GET";
+            case ServerHelper.METHOD.POST:
+                return "POST";
+            case ServerHelper.METHOD.PUT:
+                return "PUT";
+            case ServerHelper.METHOD.DELETE:
+                return "DELETE";
+            default:
+                return "OTHER";
+        }
+    }
+
+    /**
+     * Adds a value read on every snapshot , replaces the one registered with this name .
+     *
+     * @param name  Prometheus sample name , labels included ( server_timeouts_total{kind="header"} ) .
+     * @param help  description of the metric family .
+     * @param gauge reads the current value .
+     */
+    public void registerGauge(@NonNull String name, @NonNull String help, @NonNull Gauge gauge) {
+        gauges.put(name, new Metric(name, "gauge", help, gauge));
+    }
+
+    /**
+     * Same as registerGauge for a value that only grows .
+     */
+    public void registerCounter(@NonNull String name, @NonNull String help, @NonNull Gauge counter) {
+        gauges.put(name, new Metric(name, "counter", help, counter));
+    }
+
+    /**
+     * Adds gauges whose label values are only known when read ( one sample per open stream ) ,
+     * replaces the metric registered with this name .
+     *
+     * @param name   Prometheus family name without labels .
+     * @param label  name of the label carrying the keys of the values .
+     * @param help   description of the metric family .
+     * @param values reads the current value of every label value .
+     */
+    public void registerGaugeFamily(@NonNull String name, @NonNull String label, @NonNull String help,
+                                    @NonNull GaugeFamily values) {
+        gauges.put(name, new Metric(name, label, help, values));
+    }
+
+    public void unregister(@NonNull String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Clears the request counters and histograms , gauges are kept .
+     */
+    public void reset() {
+        routes.clear();
+        bytesReceived.set(0);
+        bytesSent.set(0);
+    }
+
+    @NonNull
+    public Snapshot snapshot() {
+        List<RouteSnapshot> routeSnapshots = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentMap<String, RouteMetrics>> route : new TreeMap<>(routes).entrySet()) {
+            for (Map.Entry<String, RouteMetrics> method : new TreeMap<>(route.getValue()).entrySet())
+                routeSnapshots.add(method.getValue().snapshot(route.getKey(), method.getKey()));
+        }
+
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Metric metric : gauges.values()) {
+            if (metric.values == null)
+                values.put(metric.name, metric.read());
+            else {
+                for (Map.Entry<String, Double> sample : metric.readAll().entrySet())
+                    values.put(metric.sampleName(sample.getKey()), sample.getValue());
+            }
+        }
+
+        return new Snapshot(routeSnapshots, bytesReceived.get(), bytesSent.get(), values);
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format ( version 0.0.4 ) .
+     */
+    @NonNull
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder(4096);
+
+        List<String[]> labels = new ArrayList<>();
+        List<RouteMetrics> metrics = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentMap<String, RouteMetrics>> route : new TreeMap<>(routes).entrySet()) {
+            for (Map.Entry<String, RouteMetrics> method : new TreeMap<>(route.getValue()).entrySet()) {
+                labels.add(new String[]{route.getKey(), method.getKey()});
+                metrics.add(method.getValue());
+            }
+        }
+
+        family(text, "server_requests_total", "counter", "Requests answered per route , method and status .");
+        for (int i = 0; i < metrics.size(); i++) {
+            AtomicLongArray statuses = metrics.get(i).statuses;
+            for (int status = 0; status < MAX_STATUS; status++) {
+                long count = statuses.get(status);
+                if (count == 0)
+                    continue;
+
+                text.append("server_requests_total{");
+                routeLabels(text, labels.get(i));
+                text.append(",status=\"").append(status).append("\"} ").append(count).append('\n');
+            }
+        }
+
+        family(text, "server_request_duration_seconds", "histogram", "Time from the parsed request to the flushed response .");
+        for (int i = 0; i < metrics.size(); i++) {
+            LatencyHistogram latency = metrics.get(i).latency;
+            // Read the total first , buckets recorded meanwhile can only make them larger ..
+            long count = latency.getCount();
+            long sum = latency.getSum();
+
+            for (double bucket : DURATION_BUCKETS) {
+                text.append("server_request_duration_seconds_bucket{");
+                routeLabels(text, labels.get(i));
+                text.append(",le=\"").append(bucket).append("\"} ")
+                        .append(Math.min(count, latency.getCountAtOrBelow((long) (bucket * 1000000)))).append('\n');
+            }
+
+            text.append("server_request_duration_seconds_bucket{");
+            routeLabels(text, labels.get(i));
+            text.append(",le=\"+Inf\"} ").append(count).append('\n');
+
+            text.append("server_request_duration_seconds_sum{");
+            routeLabels(text, labels.get(i));
+            text.append("} ").append(sum / 1000000.0).append('\n');
+
+            text.append("server_request_duration_seconds_count{");
+            routeLabels(text, labels.get(i));
+            text.append("} ").append(count).append('\n');
+        }
+
+        family(text, "server_received_bytes_total", "counter", "Request bytes received , headers included .");
+        text.append("server_received_bytes_total ").append(bytesReceived.get()).append('\n');
+        family(text, "server_sent_bytes_total", "counter", "Response bytes sent , headers included .");
+        text.append("server_sent_bytes_total ").append(bytesSent.get()).append('\n');
+
+        String lastFamily = null;
+        for (Metric metric : gauges.values()) {
+            if (!metric.family.equals(lastFamily)) {
+                family(text, metric.family, metric.type, metric.help);
+                lastFamily = metric.family;
+            }
+
+            if (metric.values == null) {
+                text.append(metric.name).append(' ').append(formatValue(metric.read())).append('\n');
+                continue;
+            }
+
+            for (Map.Entry<String, Double> sample : metric.readAll().entrySet())
+                text.append(metric.sampleName(sample.getKey())).append(' ').append(formatValue(sample.getValue())).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    private static void family(@NonNull StringBuilder text, @NonNull String name, @NonNull String type, @NonNull String help) {
+        text.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void routeLabels(@NonNull StringBuilder text, @NonNull String[] labels) {
+        text.append("route=\"");
+        escapeLabel(text, labels[0]);
+        text.append("\",method=\"").append(labels[1]).append('"');
+    }
+
+    static void escapeLabel(@NonNull StringBuilder text, @NonNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+                text.append('\\').append(c);
+            else if (c == '\n')
+                text.append("\\n");
+            else
+                text.append(c);
+        }
+    }
+
+    @NonNull
+    private static String formatValue(double value) {
+        if (value == (long) value)
+            return Long.toString((long) value);
+
+        return Double.toString(value);
+    }
+
+    // Counters of one route and method ..
+    private static class RouteMetrics {
+        private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS);
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(int status, long micros) {
+            statuses.incrementAndGet(status > 0 && status < MAX_STATUS ? status : 0);
+            latency.record(micros);
+        }
+
+        @NonNull
+        RouteSnapshot snapshot(@NonNull String route, @NonNull String method) {
+            Map<Integer, Long> counts = new TreeMap<>();
+            long total = 0;
+            for (int status = 0; status < MAX_STATUS; status++) {
+                long count = statuses.get(status);
+                if (count > 0) {
+                    counts.put(status, count);
+                    total += count;
+                }
+            }
+
+            return new RouteSnapshot(route, method, total, counts, latency.getCount(), latency.getSum(),
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(90),
+                    latency.getValueAtPercentile(99), latency.getMax());
+        }
+    }
+
+    // Registered gauge , counter or gauge family , family is the name without its labels ..
+    private static class Metric {
+        private final String name;
+        private final String family;
+        private final String type;
+        private final String help;
+        private final Gauge gauge;
+        private final String label;
+        private final GaugeFamily values;
+
+        Metric(@NonNull String name, @NonNull String type, @NonNull String help, @NonNull Gauge gauge) {
+            int labels = name.indexOf('{');
+            this.name = name;
+            this.family = labels < 0 ? name : name.substring(0, labels);
+            this.type = type;
+            this.help = help;
+            this.gauge = gauge;
+            this.label = null;
+            this.values = null;
+        }
+
+        Metric(@NonNull String name, @NonNull String label, @NonNull String help, @NonNull GaugeFamily values) {
+            this.name = name;
+            this.family = name;
+            this.type = "gauge";
+            this.help = help;
+            this.gauge = null;
+            this.label = label;
+            this.values = values;
+        }
+
+        @NonNull
+        String sampleName(@NonNull String labelValue) {
+            StringBuilder sample = new StringBuilder(name.length() + label.length() + labelValue.length() + 5);
+            sample.append(name).append('{').append(label).append("=\"");
+            escapeLabel(sample, labelValue);
+            return sample.append("\"}").toString();
+        }
+
+        // Sorted by label value , an empty family writes no sample ..
+        @NonNull
+        Map<String, Double> readAll() {
+            Map<String, Double> samples = new TreeMap<>();
+            try {
+                for (Map.Entry<String, ? extends Number> value : values.getValues().entrySet()) {
+                    if (value.getKey() != null && value.getValue() != null)
+                        samples.put(value.getKey(), value.getValue().doubleValue());
+                }
+            } catch (RuntimeException e) {
+                samples.clear();
+            }
+            return samples;
+        }
+
+        // A failing gauge must not break the whole output ..
+        double read() {
+            try {
+                return gauge.getValue();
+            } catch (RuntimeException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Values of every metric at the time snapshot() was called .
+     */
+    public static class Snapshot {
+        private final List<RouteSnapshot> routes;
+        private final long bytesReceived;
+        private final long bytesSent;
+        private final Map<String, Double> gauges;
+
+        Snapshot(@NonNull List<RouteSnapshot> routes, long bytesReceived, long bytesSent, @NonNull Map<String, Double> gauges) {
+            this.routes = Collections.unmodifiableList(routes);
+            this.bytesReceived = bytesReceived;
+            this.bytesSent = bytesSent;
+            this.gauges = Collections.unmodifiableMap(gauges);
+        }
+
+        @NonNull
+        public List<RouteSnapshot> getRoutes() {
+            return routes;
+        }
+
+        @Nullable
+        public RouteSnapshot getRoute(@NonNull String route, @NonNull String method) {
+            for (RouteSnapshot snapshot : routes) {
+                if (snapshot.route.equals(route) && snapshot.method.equalsIgnoreCase(method))
+                    return snapshot;
+            }
+
+            return null;
+        }
+
+        public long getRequestCount() {
+            long total = 0;
+            for (RouteSnapshot route : routes)
+                total += route.requestCount;
+
+            return total;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * @return registered gauges and counters by name , NaN when reading one failed .
+         */
+        @NonNull
+        public Map<String, Double> getGauges() {
+            return gauges;
+        }
+    }
+
+    /**
+     * Counters of one route and method , durations in microseconds .
+     */
+    public static class RouteSnapshot {
+        private final String route;
+        private final String method;
+        private final long requestCount;
+        private final Map<Integer, Long> statusCounts;
+        private final long timedCount;
+        private final long totalMicros;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        RouteSnapshot(@NonNull String route, @NonNull String method, long requestCount, @NonNull Map<Integer, Long> statusCounts,
+                      long timedCount, long totalMicros, long p50, long p90, long p99, long max) {
+            this.route = route;
+            this.method = method;
+            this.requestCount = requestCount;
+            this.statusCounts = Collections.unmodifiableMap(statusCounts);
+            this.timedCount = timedCount;
+            this.totalMicros = totalMicros;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @NonNull
+        public String getRoute() {
+            return route;
+        }
+
+        @NonNull
+        public String getMethod() {
+            return method;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        /**
+         * @return requests per status code , 0 for connections closed without a response .
+         */
+        @NonNull
+        public Map<Integer, Long> getStatusCounts() {
+            return statusCounts;
+        }
+
+        public long getStatusCount(int status) {
+            Long count = statusCounts.get(status);
+            return count != null ? count : 0;
+        }
+
+        public long getMeanMicros() {
+            return timedCount > 0 ? totalMicros / timedCount : 0;
+        }
+
+        public long getP50Micros() {
+            return p50;
+        }
+
+        public long getP90Micros() {
+            return p90;
+        }
+
+        public long getP99Micros() {
+            return p99;
+        }
+
+        public long getMaxMicros() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.androthink.server.core;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.RequestCallBack;
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.PushStream;
+import com.androthink.server.handler.ResponseHandler;
+import com.androthink.server.handler.ResponseOutputStream;
+import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Request;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+class ServerRequestTask implements Runnable {
+
+    // Prebuilt so rejecting a connection costs one write ..
+    private static final byte[] SERVICE_UNAVAILABLE_RESPONSE =
+            ClientConnection.buildErrorResponse("503 Service Unavailable", "Retry-After: 1\r\n");
+
+    private final Context context;
+    private final ServerConfig config;
+    private final ClientConnection connection;
+    private final RequestCallBack requestCallBack;
+
+    private ResponseHandler responseHandler = null;
+
+    // Kept across runs , a kept-alive connection may be handed back to a worker between requests ..
+    private RequestStream requestStream = null;
+    private HttpRequestParser parser = null;
+
+    private Request request;
+
+    ServerRequestTask(Context context, @NonNull ServerConfig config, @NonNull ClientConnection connection,
+                      String requestId, RequestCallBack requestCallBack) {
+
+        this.context = context;
+        this.config = config;
+        this.connection = connection;
+        this.requestCallBack = requestCallBack;
+        this.request = new Request(requestId, connection.getClientAddress(), requestCallBack);
+    }
+
+    @Override
+    public void run() {
+
+        boolean keepAlive = false;
+        // Upgraded or pushing connection now owned by the transport ..
+        boolean handedOver = false;
+
+        try {
+            ResponseOutputStream responseStream = connection.getResponseStream(config.getResponseBufferSize());
+            if (requestStream == null) {
+                requestStream = new RequestStream(connection.getInputStream());
+                parser = new HttpRequestParser();
+            }
+
+            do {
+                keepAlive = handleRequest(requestStream, parser, responseStream);
+            } while (keepAlive && connection.isPersistentStream() && connection.waitsForNextRequest(requestStream));
+
+            WebSocketCallBack webSocketCallBack = responseHandler != null ? responseHandler.getWebSocketCallBack() : null;
+            if (webSocketCallBack != null)
+                handedOver = connection.startWebSocket(requestStream, responseStream, request, webSocketCallBack, config);
+
+            PushStream pushStream = responseHandler != null ? responseHandler.getPushStream() : null;
+            if (pushStream != null)
+                handedOver = connection.startPush(pushStream, responseStream, this);
+
+        } catch (IOException e) {
+            keepAlive = false;
+            e.printStackTrace();
+        } finally {
+            if (keepAlive)
+                connection.keepAlive(this);
+            else if (!handedOver)
+                close();
+        }
+    }
+
+    /**
+     * Reads , routes and answers one request from the connection .
+     *
+     * @return true when the connection should be kept open for another request .
+     */
+    private boolean handleRequest(RequestStream requestStream, HttpRequestParser parser, ResponseOutputStream responseStream) {
+
+        int requestNumber = connection.nextRequest();
+        if (requestNumber > 1)
+            request = new Request(request.getRequestId(), request.getClientAddress(), requestCallBack);
+
+        responseHandler = ResponseHandler.getInstance(context, responseStream);
+        responseHandler.setCompression(config.getCompression());
+
+        long receivedStart = requestStream.getBytesConsumed();
+        long handleStart = -1;
+
+        try {
+            connection.onAwaitingRequest(requestNumber);
+            request = RequestHandler.getInstance(request, requestStream, parser, config, connection).extract();
+            connection.onRequestRead();
+            responseHandler.setRequest(request);
+
+            // Connection closed by client before sending another request ..
+            if (request.getMethod() == null)
+                return false;
+
+            handleStart = System.nanoTime();
+
+            responseHandler.setKeepAlive(isKeepAlive(request, requestNumber));
+            responseHandler.setCacheControl(config.getCacheControl(request.getRoutePath()));
+
+            // Handle Request ==> Response ..
+            RoutesHandler.getInstance().Handle(request, responseHandler);
+
+            // End of the response , nothing may stay buffered while waiting for the next request ..
+            responseHandler.flush();
+
+            return responseHandler.isKeepAlive() && responseHandler.isCommitted();
+        } catch (SocketTimeoutException e) {
+            // Idle kept-alive connection ..
+            return false;
+        } catch (RequestTimeoutException e) {
+            // Slow or stalled client , the rest of the request is not waited for ..
+            responseHandler.setKeepAlive(false);
+            try {
+                responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.REQUEST_TIMEOUT,
+                        "{\"status\":false,\"error\":\"Error 408 Request Timeout !\"}");
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        } catch (BadRequestException e) {
+            responseHandler.setKeepAlive(false);
+            try {
+                responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.BAD_REQUEST,
+                        "{\"status\":false,\"error\":\"Error 400 Bad Request !\"}");
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        } catch (PayloadTooLargeException e) {
+            // Body is left unread so the connection can not be reused ..
+            responseHandler.setKeepAlive(false);
+            try {
+                responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.PAYLOAD_TOO_LARGE,
+                        "{\"status\":false,\"error\":\"Error 413 Payload Too Large !\"}");
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        } catch (IOException e) {
+            responseHandler.setKeepAlive(false);
+            try {
+                responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.NOT_FOUND,
+                        "{\"status\":false,\"error\":\"FileNotFound : " + e.toString().replace("java.io.FileNotFoundException:", "") + "\"}");
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+
+            e.printStackTrace();
+        } catch (Resources.NotFoundException e) {
+            responseHandler.setKeepAlive(false);
+            try {
+                responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.NOT_FOUND,
+                        "{\"status\":false,\"error\":\"FileNotFound : " + e.toString() + "\"}");
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+
+            e.printStackTrace();
+        } catch (Exception e) {
+            responseHandler.setKeepAlive(false);
+            try {
+                String route = request.getRoutePath();
+                if (route != null && route.startsWith("/api"))
+                    responseHandler.sendJsonResponse(ServerHelper.RESPONSE_CODE.INTERNAL_SERVER_ERROR, "{\"status\":false,\"error\":\"Internal Server Error : " + e.toString() + "\"}");
+                else {
+                    Map<String, String> placeHolders = new HashMap<>();
+                    placeHolders.put("error_place_holder", "" + e.toString());
+                    responseHandler.sendAssetFileWithPlaceHolder(ServerHelper.RESPONSE_CODE.NOT_FOUND,ServerHelper.CONTENT_TYPE.HTML, "html/500.html", placeHolders, true);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            e.printStackTrace();
+        } finally {
+            // Uploads the route did not move ..
+            request.deleteTempFiles();
+
+            // Nothing to count for an idle connection closed before a request ..
+            if (request.getMethod() != null || responseHandler.getStatusCode() != 0) {
+                int status = responseHandler.getStatusCode();
+                long micros = handleStart < 0 ? -1 : (System.nanoTime() - handleStart) / 1000;
+                long received = requestStream.getBytesConsumed() - receivedStart;
+                long sent = responseHandler.getBytesSent();
+
+                ServerMetrics.getInstance().recordRequest(request.getMatchedRoute(), request.getMethod(), status, micros, received, sent);
+                AccessLog.getInstance().log(request.getRequestId(), request.getClientAddress(), request.getMethod(), request.getRoutePath(),
+                        status, received, sent, micros);
+            }
+        }
+
+        return false;
+    }
+
+    // HTTP/1.1 connections are persistent unless the client says otherwise , HTTP/1.0 ones only on request ..
+    private boolean isKeepAlive(@NonNull Request request, int requestNumber) {
+        if (!config.isKeepAliveEnabled() || requestNumber >= config.getMaxRequestsPerConnection() || !connection.isReusable())
+            return false;
+
+        String connectionHeader = request.getHeaders().get(ServerHelper.MAIN_HEADERS.CONNECTION);
+
+        if ("HTTP/1.1".equals(request.getProtocol()))
+            return connectionHeader == null || !connectionHeader.equalsIgnoreCase("close");
+
+        return connectionHeader != null && connectionHeader.equalsIgnoreCase("keep-alive");
+    }
+
+    // Called on the rejector thread instead of run() when no worker is available to handle this connection ..
+    void reject() {
+        try {
+            int sent = connection.rejectWith(SERVICE_UNAVAILABLE_RESPONSE);
+
+            ServerMetrics.getInstance().recordRequest(null, null, ServerHelper.RESPONSE_CODE.SERVICE_UNAVAILABLE, -1, 0, sent);
+            AccessLog.getInstance().log(request.getRequestId(), request.getClientAddress(), null, null,
+                    ServerHelper.RESPONSE_CODE.SERVICE_UNAVAILABLE, 0, sent, -1);
+        } finally {
+            close();
+        }
+    }
+
+    void close() {
+        this.connection.close();
+
+        request.onComplete();
+    }
+
+    Request getRequest() {
+        return this.request;
+    }
+}
@@ -5,7 +5,6 @@ import android.util.Log;
 
 import com.androthink.server.callback.RequestCallBack;
 import com.androthink.server.callback.ServerCallBack;
-import com.androthink.server.helper.ServerHelper;
 import com.androthink.server.model.Route;
 
 import java.io.IOException;
@@ -13,32 +12,51 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.List;
-import java.util.Vector;
 
-class ServerRunnable implements Runnable , RequestCallBack {
+class ServerRunnable implements ServerTransport , RequestCallBack {
 
     private final Context context;
+    private final ServerConfig config;
     private ServerSocket serverSocket;
     private final static String TAG = "ServerRunnable";
 
+    // Upper bound for closing open connections on stop ..
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
     private final ServerCallBack serverCallBack;
 
     // indicator to determine whether the server has isRunning or not
     private boolean isRunning = true;
 
-    // Clients Threads ..
-    private final Vector<ServerRequestThread> serverRequestThreads;
+    // Open client connections ..
+    private final ConnectionRegistry connections;
+    private final TimeoutCounters timeoutCounters = new TimeoutCounters();
+
+    // Null when each connection gets its own thread ..
+    private final WorkerPool workerPool;
+    private final IdleConnectionWatcher idleWatcher;
 
-    ServerRunnable(Context context,int port, List<Route> routeList, ServerCallBack serverCallBack) throws IOException {
+    ServerRunnable(Context context,int port, List<Route> routeList, ServerConfig config, ServerCallBack serverCallBack) throws IOException {
         this.context = context;
+        this.config = config;
         this.serverCallBack = serverCallBack;
 
-        this.serverRequestThreads = new Vector<>();
+        this.connections = new ConnectionRegistry();
         this.serverSocket = new ServerSocket(port);
 
+        if (config.getDispatchMode() == ServerConfig.DISPATCH_MODE.WORKER_POOL) {
+            this.workerPool = new WorkerPool(config);
+            this.idleWatcher = new IdleConnectionWatcher(workerPool);
+            this.idleWatcher.start();
+        } else {
+            this.workerPool = null;
+            this.idleWatcher = null;
+        }
+
         RoutesHandler.getInstance().applyRoutes(routeList);
     }
 
+    @Override
     public void run() {
 
         Log.d(TAG  , "Server Started .");
@@ -50,7 +68,14 @@ class ServerRunnable implements Runnable , RequestCallBack {
                 Socket clientSocket = this.serverSocket.accept();
 
                 if(clientSocket != null) {
-                    serverRequestThreads.add(new ServerRequestThread(context,clientSocket, ServerHelper.generateRandomId(),this));
+                    String requestId = config.getRequestIdGenerator().nextId();
+                    ServerRequestTask task = new ServerRequestTask(context, config,
+                            new SocketConnection(clientSocket, config.isKeepAliveEnabled() ? config.getKeepAliveTimeoutMillis() : 0,
+                                    config, timeoutCounters, idleWatcher),
+                            requestId,this);
+                    connections.register(requestId, task);
+
+                    dispatch(task);
                 }
 
             } catch (SocketException e) {
@@ -71,14 +96,24 @@ class ServerRunnable implements Runnable , RequestCallBack {
         Log.d(TAG, "Server Stopped !");
     }
 
+    private void dispatch(ServerRequestTask task) {
+        if (workerPool != null)
+            workerPool.execute(task);
+        else
+            new Thread(task).start();
+    }
+
     private void terminate() {
 
         Log.w(TAG, "Server Terminating ...");
 
-        for (Thread serverThread : serverRequestThreads) {
-            if (serverThread.isAlive()) serverThread.interrupt();
+        if (workerPool != null) {
+            idleWatcher.stop();
+            workerPool.shutdown();
         }
 
+        connections.closeAll(CLOSE_TIMEOUT_MILLIS);
+
         try {
             if (!this.serverSocket.isClosed())
                 this.serverSocket.close();
@@ -92,7 +127,33 @@ class ServerRunnable implements Runnable , RequestCallBack {
         Log.i(TAG, "Server Terminated !");
     }
 
-    void stop() {
+    @Override
+    public int getQueueDepth() {
+        return workerPool != null ? workerPool.getQueueDepth() : 0;
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return workerPool != null ? workerPool.getActiveWorkers() : connections.size();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return workerPool != null ? workerPool.getRejectedConnections() : 0;
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return connections.size();
+    }
+
+    @Override
+    public TimeoutCounters getTimeoutCounters() {
+        return timeoutCounters;
+    }
+
+    @Override
+    public void stop() {
         Log.i(TAG, "Stopping Server ...");
 
         this.isRunning = false;
@@ -101,33 +162,14 @@ class ServerRunnable implements Runnable , RequestCallBack {
 
     @Override
     public void onRequestComplete(String clientId) {
-        Log.e(TAG,"Request Completed : " + clientId);
-        Log.e(TAG,"Total Requests : " + serverRequestThreads.size());
-
-        for (ServerRequestThread serverThread: serverRequestThreads) {
-            if(serverThread.getRequest().getRequestId().equals(clientId)) {
-                if(serverThread.isAlive())
-                    serverThread.interrupt();
-
-                serverRequestThreads.remove(serverThread);
-                break;
-            }
-        }
-
-        Log.e(TAG,"Total Requests : " + serverRequestThreads.size());
+        // Requests are logged by the AccessLog writer thread , nothing is formatted here ..
+        connections.unregister(clientId);
     }
 
     @Override
     public void onError(String clientId) {
-        Log.e(TAG,"Request Error : " + clientId);
-
-        for (ServerRequestThread serverThread: serverRequestThreads) {
-            if(serverThread.getRequest().getRequestId().equals(clientId)) {
-                serverThread.close();
-                break;
-            }
-        }
-
-        Log.e(TAG,"Total Requests : " + serverRequestThreads.size());
+        ServerRequestTask serverTask = connections.get(clientId);
+        if (serverTask != null)
+            serverTask.close();
     }
 }
\ No newline at end of file
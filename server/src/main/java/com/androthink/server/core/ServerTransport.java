@@ -0,0 +1,17 @@
+package com.androthink.server.core;
+
+// Accept loop implementations started by ServerUtils ..
+interface ServerTransport extends Runnable {
+
+    void stop();
+
+    int getQueueDepth();
+
+    int getActiveWorkers();
+
+    long getRejectedConnections();
+
+    int getOpenConnections();
+
+    TimeoutCounters getTimeoutCounters();
+}
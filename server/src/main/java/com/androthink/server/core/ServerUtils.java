@@ -3,42 +3,71 @@ package com.androthink.server.core;
 import android.content.Context;
 import android.util.Log;
 
+import com.androthink.server.callback.RouteCallBack;
 import com.androthink.server.callback.ServerCallBack;
+import com.androthink.server.handler.AssetCache;
+import com.androthink.server.handler.EventStream;
+import com.androthink.server.handler.MjpegStream;
+import com.androthink.server.handler.ResponseHandler;
+import com.androthink.server.handler.WebSocket;
+import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Request;
 import com.androthink.server.model.Route;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ServerUtils implements ServerCallBack {
 
     private static ServerUtils serverUtils = null;
     private final static String TAG = "ServerUtils";
 
+    private static final long ACCESS_LOG_STOP_TIMEOUT_MILLIS = 1000;
+
     private Thread streamerThread;
-    private ServerRunnable streamer = null;
+    private ServerTransport streamer = null;
 
     private int port;
     private List<Route> routeList;
+    private ServerConfig config;
     private ServerCallBack callBack;
 
     public static ServerUtils getInstance(List<Route> routeList,int port){
         if(serverUtils == null)
-            serverUtils = new ServerUtils(routeList,port,null);
+            serverUtils = new ServerUtils(routeList,port,new ServerConfig(),null);
 
         return serverUtils;
     }
 
     public static ServerUtils getInstance(List<Route> routeList,int port,ServerCallBack callBack){
         if(serverUtils == null)
-            serverUtils = new ServerUtils(routeList,port,callBack);
+            serverUtils = new ServerUtils(routeList,port,new ServerConfig(),callBack);
+
+        return serverUtils;
+    }
+
+    public static ServerUtils getInstance(List<Route> routeList,int port,ServerConfig config){
+        if(serverUtils == null)
+            serverUtils = new ServerUtils(routeList,port,config,null);
+
+        return serverUtils;
+    }
+
+    public static ServerUtils getInstance(List<Route> routeList,int port,ServerConfig config,ServerCallBack callBack){
+        if(serverUtils == null)
+            serverUtils = new ServerUtils(routeList,port,config,callBack);
 
         return serverUtils;
     }
 
     private ServerUtils(){}
 
-    private ServerUtils(List<Route> routeList,int port,ServerCallBack callBack) {
+    private ServerUtils(List<Route> routeList,int port,ServerConfig config,ServerCallBack callBack) {
         this.routeList = routeList;
+        this.config = config != null ? config : new ServerConfig();
         this.callBack = callBack;
         this.port = port;
     }
@@ -50,8 +79,28 @@ public class ServerUtils implements ServerCallBack {
             return;
         }
 
+        AssetCache.getInstance().setMaxBytes(config.getAssetCacheMaxBytes());
+        AssetCache.getInstance().setEnabled(config.isAssetCacheEnabled());
+
+        AccessLog accessLog = AccessLog.getInstance();
+        accessLog.setLevel(config.getAccessLogLevel());
+        accessLog.setSampling(config.getAccessLogSampling());
+        accessLog.setWriter(config.getAccessLogWriter() != null ? config.getAccessLogWriter() : new AccessLog.LogcatWriter());
+        accessLog.setBufferSize(config.getAccessLogBufferSize());
+        accessLog.start();
+
+        registerMetrics();
+        List<Route> routes = routeList;
+        if (config.getMetricsPath() != null) {
+            routes = new ArrayList<>(routeList);
+            routes.add(new Route(config.getMetricsPath(), ServerHelper.METHOD.GET, new MetricsCallBack()));
+        }
+
         try {
-            streamer = new ServerRunnable(context,port, routeList, ServerUtils.this);
+            if (config.getTransport() == ServerConfig.TRANSPORT.NIO)
+                streamer = new NioServerRunnable(context,port, routes, config, ServerUtils.this);
+            else
+                streamer = new ServerRunnable(context,port, routes, config, ServerUtils.this);
             streamerThread = new Thread(streamer);
 
             streamerThread.start();
@@ -78,6 +127,175 @@ public class ServerUtils implements ServerCallBack {
         return streamerThread != null;
     }
 
+    /**
+     * @return number of accepted connections waiting for a free worker .
+     */
+    public int getQueueDepth() {
+        return streamer != null ? streamer.getQueueDepth() : 0;
+    }
+
+    /**
+     * @return number of connections currently being handled .
+     */
+    public int getActiveWorkers() {
+        return streamer != null ? streamer.getActiveWorkers() : 0;
+    }
+
+    /**
+     * @return number of client connections currently open , idle kept-alive and upgraded ones included .
+     */
+    public int getOpenConnections() {
+        return streamer != null ? streamer.getOpenConnections() : 0;
+    }
+
+    /**
+     * @return connections closed by the header , body and write timeouts of ServerConfig , per kind .
+     */
+    public TimeoutCounters getTimeoutCounters() {
+        return streamer != null ? streamer.getTimeoutCounters() : new TimeoutCounters();
+    }
+
+    /**
+     * @return number of connections answered with 503 because the worker pool was saturated .
+     */
+    public long getRejectedConnections() {
+        return streamer != null ? streamer.getRejectedConnections() : 0;
+    }
+
+    /**
+     * @return the asset cache , to read its hit , miss and eviction counters or to disable or clear it at runtime .
+     */
+    public AssetCache getAssetCache() {
+        return AssetCache.getInstance();
+    }
+
+    /**
+     * @return requests per route , method and status , latency percentiles , bytes and the server gauges .
+     */
+    public ServerMetrics.Snapshot getMetricsSnapshot() {
+        return ServerMetrics.getInstance().snapshot();
+    }
+
+    // Transport and cache values read on every snapshot , the server may be restarted with another transport ..
+    private void registerMetrics() {
+        ServerMetrics metrics = ServerMetrics.getInstance();
+
+        metrics.registerGauge("server_open_connections", "Client connections open , idle and upgraded ones included .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getOpenConnections();
+            }
+        });
+        metrics.registerGauge("server_active_workers", "Connections being handled by a worker .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getActiveWorkers();
+            }
+        });
+        metrics.registerGauge("server_queue_depth", "Connections waiting for a free worker .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getQueueDepth();
+            }
+        });
+        metrics.registerCounter("server_rejected_connections_total", "Connections answered with 503 by a saturated worker pool .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getRejectedConnections();
+            }
+        });
+
+        final String timeoutsHelp = "Connections closed by a read or write timeout .";
+        metrics.registerCounter("server_timeouts_total{kind=\"header\"}", timeoutsHelp, new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getTimeoutCounters().getHeaderTimeouts();
+            }
+        });
+        metrics.registerCounter("server_timeouts_total{kind=\"body\"}", timeoutsHelp, new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getTimeoutCounters().getBodyTimeouts();
+            }
+        });
+        metrics.registerCounter("server_timeouts_total{kind=\"slow_body\"}", timeoutsHelp, new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getTimeoutCounters().getSlowBodyTransfers();
+            }
+        });
+        metrics.registerCounter("server_timeouts_total{kind=\"write\"}", timeoutsHelp, new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return getTimeoutCounters().getWriteTimeouts();
+            }
+        });
+
+        metrics.registerCounter("server_access_log_dropped_total", "Access log records lost because the writer fell behind .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return AccessLog.getInstance().getDroppedRecords();
+            }
+        });
+
+        metrics.registerGaugeFamily("server_sse_subscribers", "stream", "Clients subscribed to each open event stream .", new ServerMetrics.GaugeFamily() {
+            @Override
+            public Map<String, Integer> getValues() {
+                return EventStream.getSubscriberCounts();
+            }
+        });
+        metrics.registerGaugeFamily("server_mjpeg_viewers", "stream", "Clients watching each open MJPEG stream .", new ServerMetrics.GaugeFamily() {
+            @Override
+            public Map<String, Integer> getValues() {
+                return MjpegStream.getViewerCounts();
+            }
+        });
+        metrics.registerGauge("server_websocket_open", "WebSocket connections open .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return WebSocket.getOpenCount();
+            }
+        });
+
+        final AssetCache assetCache = AssetCache.getInstance();
+        metrics.registerCounter("server_asset_cache_hits_total", "Asset bodies served from the cache .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return assetCache.getHitCount();
+            }
+        });
+        metrics.registerCounter("server_asset_cache_misses_total", "Asset bodies read from the assets .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return assetCache.getMissCount();
+            }
+        });
+        metrics.registerCounter("server_asset_cache_evictions_total", "Asset bodies removed to stay within the cache size .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return assetCache.getEvictionCount();
+            }
+        });
+        metrics.registerGauge("server_asset_cache_bytes", "Bytes of the cached asset bodies .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return assetCache.getSize();
+            }
+        });
+    }
+
+    // Built-in route of ServerConfig.setMetricsPath() ..
+    private static class MetricsCallBack implements RouteCallBack {
+        @Override
+        public void onRequested(Request request, ResponseHandler responseHandler) throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-store");
+
+            responseHandler.sendResponse(ServerHelper.RESPONSE_CODE.OK, "text/plain; version=0.0.4; charset=utf-8",
+                    ServerMetrics.getInstance().toPrometheus().getBytes("UTF-8"), headers);
+        }
+    }
+
     @Override
     public void onServerStopped() {
         if(streamerThread.isAlive()){
@@ -86,6 +304,9 @@ public class ServerUtils implements ServerCallBack {
 
         streamerThread = null;
 
+        // Requests answered while stopping are written before the writer is closed ..
+        AccessLog.getInstance().stop(ACCESS_LOG_STOP_TIMEOUT_MILLIS);
+
         if(callBack != null)
             callBack.onServerStopped();
         Log.e(TAG, "Server Stopped .");
@@ -0,0 +1,176 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.PushStream;
+import com.androthink.server.handler.ResponseOutputStream;
+import com.androthink.server.helper.NetworkHelper;
+import com.androthink.server.model.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+class SocketConnection extends ClientConnection {
+
+    // Blocking sockets can not try a write once , a client that does not read is dropped after this ..
+    private static final long REJECT_WRITE_TIMEOUT_MILLIS = 1000;
+
+    private final Socket socket;
+    private final ServerConfig config;
+    private final TimeoutCounters counters;
+    private final int idleTimeoutMillis;
+    // Set with a worker pool , idle kept-alive connections then wait there instead of on a worker ..
+    private final IdleConnectionWatcher idleWatcher;
+
+    // Set once a pushed response is handed over to the shared writers ..
+    private volatile SocketPush push;
+
+    private TimedInputStream inputStream;
+    private TimedOutputStream outputStream;
+
+    /**
+     * @param socket            accepted client socket .
+     * @param idleTimeoutMillis read timeout used to drop idle kept-alive connections , 0 for no timeout .
+     */
+    SocketConnection(@NonNull Socket socket, int idleTimeoutMillis, @NonNull ServerConfig config, @NonNull TimeoutCounters counters) {
+        this(socket, idleTimeoutMillis, config, counters, null);
+    }
+
+    /**
+     * @param idleWatcher waits for the next request of kept-alive connections , null to wait on the task's thread .
+     */
+    SocketConnection(@NonNull Socket socket, int idleTimeoutMillis, @NonNull ServerConfig config, @NonNull TimeoutCounters counters,
+                     IdleConnectionWatcher idleWatcher) {
+        this.socket = socket;
+        this.config = config;
+        this.counters = counters;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.idleWatcher = idleWatcher;
+
+        try {
+            this.socket.setSoTimeout(idleTimeoutMillis);
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    String getClientAddress() {
+        return NetworkHelper.getIp(socket.getInetAddress(), true);
+    }
+
+    @Override
+    InputStream getInputStream() throws IOException {
+        if (inputStream == null)
+            inputStream = new TimedInputStream(socket, socket.getInputStream(), config, counters);
+
+        return inputStream;
+    }
+
+    @Override
+    OutputStream getOutputStream() throws IOException {
+        if (outputStream == null)
+            outputStream = new TimedOutputStream(socket, socket.getOutputStream(), config.getWriteTimeoutMillis(), counters);
+
+        return outputStream;
+    }
+
+    @Override
+    void onAwaitingRequest(int requestNumber) {
+        if (inputStream != null)
+            inputStream.awaitRequest(requestNumber > 1 ? idleTimeoutMillis : 0);
+    }
+
+    @Override
+    void onReadingBody() {
+        if (inputStream != null)
+            inputStream.startBody();
+    }
+
+    @Override
+    void onRequestRead() {
+        if (inputStream != null)
+            inputStream.endRequest();
+    }
+
+    @Override
+    boolean isPersistentStream() {
+        return true;
+    }
+
+    // Without a watcher the task's thread is its own and may block until the next request ..
+    @Override
+    boolean waitsForNextRequest(@NonNull RequestStream requestStream) throws IOException {
+        return idleWatcher == null || requestStream.available() > 0;
+    }
+
+    @Override
+    void keepAlive(@NonNull ServerRequestTask task) {
+        if (idleWatcher != null)
+            idleWatcher.park(this, task);
+        else
+            task.close();
+    }
+
+    int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * @return bytes received and not read yet , -1 when the socket is closed or failed .
+     */
+    int available() {
+        try {
+            return socket.isClosed() ? -1 : socket.getInputStream().available();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    boolean startWebSocket(@NonNull RequestStream requestStream, @NonNull ResponseOutputStream outputStream,
+                           @NonNull Request request, @NonNull WebSocketCallBack callBack, @NonNull ServerConfig config) {
+        // Blocking reads keep the task thread until the socket closes ..
+        new SocketWebSocket(socket, requestStream, outputStream, request, callBack, config).run();
+        return false;
+    }
+
+    @Override
+    boolean startPush(@NonNull PushStream stream, @NonNull ResponseOutputStream outputStream, @NonNull ServerRequestTask task) {
+        push = new SocketPush(stream, outputStream, task);
+        push.start();
+        return true;
+    }
+
+    @Override
+    int rejectWith(@NonNull byte[] response) {
+        int written = 0;
+        try {
+            new TimedOutputStream(socket, socket.getOutputStream(), REJECT_WRITE_TIMEOUT_MILLIS, counters).write(response);
+            written = response.length;
+        } catch (IOException e) {
+            // Closed below anyway ..
+        }
+        close();
+        return written;
+    }
+
+    @Override
+    void close() {
+        try {
+            if (!this.socket.isClosed())
+                this.socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // After the socket , a writer blocked on it fails right away ..
+        SocketPush current = push;
+        if (current != null)
+            current.onClosed();
+    }
+}
@@ -0,0 +1,153 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.handler.PushStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushed response body over a blocking socket , a shared writer pool sends what the stream queues once a worker sent the head ..
+class SocketPush implements PushStream.Listener {
+
+    // How often idle streams are checked for a due heartbeat ..
+    private static final long HEARTBEAT_CHECK_MILLIS = 1000;
+
+    private static final ExecutorService writers = Executors.newCachedThreadPool(new PushThreadFactory("PushWriter-"));
+    private static final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(new PushThreadFactory("PushHeartbeat-"));
+
+    private final PushStream stream;
+    private final OutputStream outputStream;
+    private final ServerRequestTask task;
+
+    private final Object writeLock = new Object();
+    // True while a writer task is scheduled and has not started writing yet ..
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private volatile long lastWrite;
+    private volatile boolean heartbeatDue = false;
+    private volatile ScheduledFuture<?> heartbeatCheck;
+
+    SocketPush(@NonNull PushStream stream, @NonNull OutputStream outputStream, @NonNull ServerRequestTask task) {
+        this.stream = stream;
+        this.outputStream = outputStream;
+        this.task = task;
+    }
+
+    void start() {
+        lastWrite = System.currentTimeMillis();
+
+        if (stream.getHeartbeatMillis() > 0) {
+            heartbeatCheck = heartbeats.scheduleWithFixedDelay(checkHeartbeat,
+                    HEARTBEAT_CHECK_MILLIS, HEARTBEAT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+
+            // Closed while scheduling ..
+            if (ended.get())
+                heartbeatCheck.cancel(false);
+        }
+
+        stream.attach(this);
+    }
+
+    @Override
+    public void onQueued() {
+        if (writeRequested.compareAndSet(false, true))
+            writers.execute(drain);
+    }
+
+    // Connection closed , by the stream ending , a failed write or the server stopping ..
+    void onClosed() {
+        if (!ended.compareAndSet(false, true))
+            return;
+
+        ScheduledFuture<?> check = heartbeatCheck;
+        if (check != null)
+            check.cancel(false);
+
+        stream.close();
+    }
+
+    private void write() throws IOException {
+        boolean wrote = false;
+
+        ByteBuffer buffer;
+        while ((buffer = stream.next()) != null) {
+            outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            wrote = true;
+        }
+
+        if (heartbeatDue) {
+            heartbeatDue = false;
+
+            buffer = wrote ? null : stream.heartbeat();
+            if (buffer != null) {
+                outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                wrote = true;
+            }
+        }
+
+        if (wrote) {
+            outputStream.flush();
+            lastWrite = System.currentTimeMillis();
+        }
+    }
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            writeRequested.set(false);
+
+            try {
+                synchronized (writeLock) {
+                    if (!ended.get())
+                        write();
+                }
+            } catch (IOException e) {
+                // Client gone or too slow to read ..
+                task.close();
+                return;
+            }
+
+            // Ended by its stream , not by the connection closing ..
+            if (stream.isClosed() && !ended.get())
+                task.close();
+        }
+    };
+
+    private final Runnable checkHeartbeat = new Runnable() {
+        @Override
+        public void run() {
+            if (System.currentTimeMillis() - lastWrite < stream.getHeartbeatMillis())
+                return;
+
+            heartbeatDue = true;
+            onQueued();
+        }
+    };
+
+    private static class PushThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        PushThreadFactory(@NonNull String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
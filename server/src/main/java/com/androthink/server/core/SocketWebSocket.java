@@ -0,0 +1,131 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.WebSocket;
+import com.androthink.server.model.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// WebSocket over a blocking socket , the connection's task thread reads frames and a shared writer pool sends them ..
+class SocketWebSocket extends WebSocket {
+
+    // Reads wake up this often to notice a close frame the client never answered ..
+    private static final int READ_TIMEOUT_MILLIS = 1000;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final ExecutorService writers = Executors.newCachedThreadPool(new WriterThreadFactory());
+
+    private final Socket socket;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    private final Object writeLock = new Object();
+    // True while a writer task is scheduled or running ..
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    SocketWebSocket(@NonNull Socket socket, @NonNull InputStream inputStream, @NonNull OutputStream outputStream,
+                    @NonNull Request request, @NonNull WebSocketCallBack callBack, @NonNull ServerConfig config) {
+        super(request, callBack, config.getWebSocketMaxMessageSize(), config.getWebSocketMaxQueuedBytes());
+
+        this.socket = socket;
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+    }
+
+    // Reads until the socket closes , on the calling thread ..
+    void run() {
+        try {
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+
+        onOpen();
+
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try {
+            while (true) {
+                int read;
+                try {
+                    read = inputStream.read(buffer, 0, buffer.length);
+                } catch (SocketTimeoutException e) {
+                    if (isCloseTimedOut(System.currentTimeMillis()))
+                        break;
+
+                    continue;
+                }
+
+                if (read < 0)
+                    break;
+
+                if (!onReceived(buffer, 0, read)) {
+                    // Close handshake over , send what is left and end ..
+                    synchronized (writeLock) {
+                        writeTo(outputStream);
+                    }
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Connection lost ..
+        } finally {
+            onConnectionClosed();
+        }
+    }
+
+    @Override
+    protected void onQueued() {
+        if (draining.compareAndSet(false, true))
+            writers.execute(drain);
+    }
+
+    @Override
+    protected void closeConnection() {
+        try {
+            if (!socket.isClosed())
+                socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                try {
+                    synchronized (writeLock) {
+                        writeTo(outputStream);
+                    }
+                } catch (IOException e) {
+                    onConnectionClosed();
+                } finally {
+                    draining.set(false);
+                }
+            } while (hasQueuedFrames() && draining.compareAndSet(false, true));
+        }
+    };
+
+    private static class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "WebSocketWriter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
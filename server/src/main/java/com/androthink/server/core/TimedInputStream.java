@@ -0,0 +1,147 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+// Socket input enforcing the read limits of ServerConfig , SO_TIMEOUT is set before every read from the current phase ..
+// A client trickling header bytes can not hold the thread past the header deadline , nor send a body slower than the minimum rate .
+class TimedInputStream extends FilterInputStream {
+
+    private static final int PHASE_NONE = 0;
+    private static final int PHASE_IDLE = 1;
+    private static final int PHASE_HEADERS = 2;
+    private static final int PHASE_BODY = 3;
+
+    // The transfer rate is only judged once the body has been read for this long ..
+    private static final long RATE_GRACE_MILLIS = 5 * 1000;
+
+    private final Socket socket;
+    private final ServerConfig config;
+    private final TimeoutCounters counters;
+
+    private int phase = PHASE_NONE;
+    private int idleTimeoutMillis;
+    private long headerDeadline;
+    private long bodyStart;
+    private long bodyBytes;
+    private int soTimeout = -1;
+
+    TimedInputStream(@NonNull Socket socket, @NonNull InputStream inputStream, @NonNull ServerConfig config, @NonNull TimeoutCounters counters) {
+        super(inputStream);
+        this.socket = socket;
+        this.config = config;
+        this.counters = counters;
+    }
+
+    /**
+     * @param idleTimeoutMillis how long to wait for the first byte of a request on a kept-alive connection ,
+     *                          0 when the request is expected right away ( first request of the connection ) .
+     */
+    void awaitRequest(int idleTimeoutMillis) {
+        if (idleTimeoutMillis > 0) {
+            this.phase = PHASE_IDLE;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+        } else {
+            startHeaders();
+        }
+    }
+
+    void startBody() {
+        phase = PHASE_BODY;
+        bodyStart = System.currentTimeMillis();
+        bodyBytes = 0;
+    }
+
+    // Request fully read , later reads ( WebSocket frames ) are not limited here ..
+    void endRequest() {
+        phase = PHASE_NONE;
+    }
+
+    private void startHeaders() {
+        phase = PHASE_HEADERS;
+        headerDeadline = config.getHeaderReadTimeoutMillis() > 0 ? System.currentTimeMillis() + config.getHeaderReadTimeoutMillis() : 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        switch (phase) {
+            case PHASE_IDLE: {
+                setSoTimeout(idleTimeoutMillis);
+                // A timeout here is a plain idle keep-alive connection ..
+                int read = in.read(b, off, len);
+                if (read > 0)
+                    startHeaders();
+                return read;
+            }
+            case PHASE_HEADERS: {
+                if (headerDeadline > 0) {
+                    long remaining = headerDeadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        throw timeout(TimeoutCounters.KIND.HEADER, "Headers not received in time");
+                    setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+                } else {
+                    setSoTimeout(0);
+                }
+
+                try {
+                    return in.read(b, off, len);
+                } catch (SocketTimeoutException e) {
+                    throw timeout(TimeoutCounters.KIND.HEADER, "Headers not received in time");
+                }
+            }
+            case PHASE_BODY: {
+                setSoTimeout(config.getBodyReadTimeoutMillis());
+
+                int read;
+                try {
+                    read = in.read(b, off, len);
+                } catch (SocketTimeoutException e) {
+                    throw timeout(TimeoutCounters.KIND.BODY, "Body not received in time");
+                }
+
+                if (read > 0) {
+                    bodyBytes += read;
+
+                    if (isTooSlow(bodyBytes, System.currentTimeMillis() - bodyStart, config.getMinBodyTransferRate()))
+                        throw timeout(TimeoutCounters.KIND.SLOW_BODY, "Body sent slower than " + config.getMinBodyTransferRate() + " bytes/s");
+                }
+                return read;
+            }
+            default:
+                return in.read(b, off, len);
+        }
+    }
+
+    /**
+     * @param minRate bytes per second , 0 to never judge the transfer too slow .
+     * @return true when bytes received in elapsedMillis average less than minRate , after a grace period .
+     */
+    static boolean isTooSlow(long bytes, long elapsedMillis, long minRate) {
+        return minRate > 0 && elapsedMillis > RATE_GRACE_MILLIS && bytes * 1000 / elapsedMillis < minRate;
+    }
+
+    private RequestTimeoutException timeout(int kind, String message) {
+        counters.increment(kind);
+        phase = PHASE_NONE;
+        return new RequestTimeoutException(kind, message);
+    }
+
+    private void setSoTimeout(int timeoutMillis) throws SocketException {
+        if (timeoutMillis != soTimeout) {
+            socket.setSoTimeout(timeoutMillis);
+            soTimeout = timeoutMillis;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Socket output with a write timeout , blocking writes have none so a shared watchdog closes sockets stuck in a write ..
+class TimedOutputStream extends FilterOutputStream {
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 1000;
+
+    // Streams inside a write , added and removed around every write ..
+    private static final Set<TimedOutputStream> writing = Collections.newSetFromMap(new ConcurrentHashMap<TimedOutputStream, Boolean>());
+    private static Thread watchdog;
+
+    private final Socket socket;
+    private final long writeTimeoutMillis;
+    private final TimeoutCounters counters;
+
+    private volatile long writeStart;
+
+    TimedOutputStream(@NonNull Socket socket, @NonNull OutputStream outputStream, long writeTimeoutMillis, @NonNull TimeoutCounters counters) {
+        super(outputStream);
+        this.socket = socket;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.counters = counters;
+
+        if (writeTimeoutMillis > 0)
+            startWatchdog();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (writeTimeoutMillis <= 0) {
+            out.write(b, off, len);
+            return;
+        }
+
+        writeStart = System.currentTimeMillis();
+        writing.add(this);
+        try {
+            out.write(b, off, len);
+        } finally {
+            writing.remove(this);
+            writeStart = 0;
+        }
+    }
+
+    private void closeIfStuck(long now) {
+        long start = writeStart;
+        if (start == 0 || now - start < writeTimeoutMillis)
+            return;
+
+        writing.remove(this);
+        counters.increment(TimeoutCounters.KIND.WRITE);
+        try {
+            // Unblocks the writing thread with a SocketException ..
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static synchronized void startWatchdog() {
+        if (watchdog != null)
+            return;
+
+        watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(WATCHDOG_INTERVAL_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    long now = System.currentTimeMillis();
+                    for (TimedOutputStream stream : writing)
+                        stream.closeIfStuck(now);
+                }
+            }
+        }, "WriteWatchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+}
@@ -0,0 +1,56 @@
+package com.androthink.server.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Connections closed by the read and write limits of ServerConfig , one counter per kind of limit ..
+public class TimeoutCounters {
+
+    public class KIND {
+        // Request line and headers not received within headerReadTimeoutMillis ..
+        public static final int HEADER = 0;
+        // No body bytes for bodyReadTimeoutMillis ..
+        public static final int BODY = 1;
+        // Body arriving slower than minBodyTransferRate ..
+        public static final int SLOW_BODY = 2;
+        // Client not reading the response for writeTimeoutMillis ..
+        public static final int WRITE = 3;
+    }
+
+    private final AtomicLong headerTimeouts = new AtomicLong();
+    private final AtomicLong bodyTimeouts = new AtomicLong();
+    private final AtomicLong slowBodyTransfers = new AtomicLong();
+    private final AtomicLong writeTimeouts = new AtomicLong();
+
+    void increment(int kind) {
+        switch (kind) {
+            case KIND.HEADER:
+                headerTimeouts.incrementAndGet();
+                break;
+            case KIND.BODY:
+                bodyTimeouts.incrementAndGet();
+                break;
+            case KIND.SLOW_BODY:
+                slowBodyTransfers.incrementAndGet();
+                break;
+            case KIND.WRITE:
+                writeTimeouts.incrementAndGet();
+                break;
+        }
+    }
+
+    public long getHeaderTimeouts() {
+        return headerTimeouts.get();
+    }
+
+    public long getBodyTimeouts() {
+        return bodyTimeouts.get();
+    }
+
+    public long getSlowBodyTransfers() {
+        return slowBodyTransfers.get();
+    }
+
+    public long getWriteTimeouts() {
+        return writeTimeouts.get();
+    }
+}
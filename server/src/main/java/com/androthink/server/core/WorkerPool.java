@@ -0,0 +1,116 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class WorkerPool {
+
+    // Rejected connections waiting for their 503 , past this they are closed without one ..
+    private static final int REJECT_QUEUE_SIZE = 64;
+
+    private final ThreadPoolExecutor executor;
+    // Single thread writing the 503s so the accept or selector thread never waits on a client ..
+    private final ThreadPoolExecutor rejector;
+    private final AtomicLong rejectedConnections;
+
+    WorkerPool(@NonNull ServerConfig config) {
+        this.rejectedConnections = new AtomicLong();
+
+        int coreSize = Math.max(1, config.getWorkerCoreSize());
+        int maxSize = Math.max(coreSize, config.getWorkerMaxSize());
+
+        this.executor = new ThreadPoolExecutor(coreSize, maxSize,
+                config.getWorkerKeepAliveSeconds(), TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, config.getWorkerQueueSize())),
+                new WorkerThreadFactory("ServerWorker-"), new ServiceUnavailablePolicy());
+
+        this.rejector = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(REJECT_QUEUE_SIZE),
+                new WorkerThreadFactory("ServerRejector-"), new CloseConnectionPolicy());
+    }
+
+    void execute(@NonNull ServerRequestTask task) {
+        this.executor.execute(task);
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+        for (Runnable pending : this.rejector.shutdownNow())
+            ((RejectTask) pending).task.close();
+    }
+
+    int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    int getActiveWorkers() {
+        return this.executor.getActiveCount();
+    }
+
+    long getRejectedConnections() {
+        return this.rejectedConnections.get();
+    }
+
+    // Answer with 503 instead of dropping the socket when all workers and queue slots are taken ..
+    private class ServiceUnavailablePolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (!(runnable instanceof ServerRequestTask))
+                return;
+
+            ServerRequestTask task = (ServerRequestTask) runnable;
+
+            // Server stopping , not an overload ..
+            if (executor.isShutdown()) {
+                task.close();
+                return;
+            }
+
+            rejectedConnections.incrementAndGet();
+            rejector.execute(new RejectTask(task));
+        }
+    }
+
+    // Rejector saturated or stopped , the connection is closed without a response ..
+    private static class CloseConnectionPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (runnable instanceof RejectTask)
+                ((RejectTask) runnable).task.close();
+        }
+    }
+
+    private static class RejectTask implements Runnable {
+        private final ServerRequestTask task;
+
+        RejectTask(ServerRequestTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.reject();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, prefix + count.incrementAndGet());
+        }
+    }
+}
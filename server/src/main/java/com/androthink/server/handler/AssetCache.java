@@ -0,0 +1,241 @@
+package com.androthink.server.handler;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.helper.ServerHelper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of asset bodies shared by every ResponseHandler , bounded by the total size of the bodies .
+ * Bodies are kept already decoded ( UTF-8 BOM removed for text assets ) so a hit is written as is ,
+ * gzip and deflate variants are computed on first use and kept with the body .
+ */
+public class AssetCache {
+
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static AssetCache assetCache = null;
+
+    // Access ordered , the eldest entry is the least recently used one ..
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(32, 0.75f, true);
+
+    private boolean enabled = true;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long size = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public static synchronized AssetCache getInstance() {
+        if (assetCache == null)
+            assetCache = new AssetCache();
+
+        return assetCache;
+    }
+
+    private AssetCache() {
+    }
+
+    /**
+     * @return the cached body or null , a miss is counted when the cache is enabled .
+     */
+    @Nullable
+    synchronized Entry get(@NonNull String assetPath, boolean isUTF8) {
+        if (!enabled)
+            return null;
+
+        Entry entry = entries.get(key(assetPath, isUTF8));
+        if (entry != null)
+            hitCount++;
+        else
+            missCount++;
+
+        return entry;
+    }
+
+    /**
+     * Caches data unless the cache is disabled or the body is bigger than a quarter of the budget .
+     *
+     * @return the entry holding data , cached or not .
+     */
+    @NonNull
+    synchronized Entry put(@NonNull String assetPath, boolean isUTF8, @NonNull String contentType, @NonNull byte[] data) {
+        Entry entry = new Entry(key(assetPath, isUTF8), contentType, data);
+        if (!enabled || !isCacheable(data.length))
+            return entry;
+
+        Entry previous = entries.put(entry.key, entry);
+        if (previous != null)
+            size -= previous.getSize();
+
+        size += entry.getSize();
+        trimToSize(maxBytes);
+        return entry;
+    }
+
+    /**
+     * @return the body of entry compressed with encoding or null if not computed yet .
+     */
+    @Nullable
+    synchronized byte[] getVariant(@NonNull Entry entry, @NonNull String encoding) {
+        return entry.variants != null ? entry.variants.get(encoding) : null;
+    }
+
+    /**
+     * Keeps a compressed copy of entry , counted in the cache size while entry is cached .
+     */
+    synchronized void putVariant(@NonNull Entry entry, @NonNull String encoding, @NonNull byte[] data) {
+        boolean cached = entries.get(entry.key) == entry;
+        if (cached)
+            size -= entry.getSize();
+
+        if (entry.variants == null)
+            entry.variants = new HashMap<>(2);
+        entry.variants.put(encoding, data);
+
+        if (cached) {
+            size += entry.getSize();
+            trimToSize(maxBytes);
+        }
+    }
+
+    /**
+     * @return true if a body of this length would be kept .
+     */
+    synchronized boolean isCacheable(long length) {
+        return enabled && length <= maxBytes / 4;
+    }
+
+    /**
+     * Loads the asset through the cache .
+     */
+    @NonNull
+    Entry load(@NonNull Context context, @NonNull String assetPath, boolean isUTF8, @NonNull String contentType) throws IOException {
+        Entry entry = get(assetPath, isUTF8);
+        if (entry != null)
+            return entry;
+
+        return put(assetPath, isUTF8, contentType, ServerHelper.loadFileFromAsset(context, assetPath, isUTF8));
+    }
+
+    private void trimToSize(long limit) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > limit && iterator.hasNext()) {
+            size -= iterator.next().getValue().getSize();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    static String key(String assetPath, boolean isUTF8) {
+        return isUTF8 ? assetPath : "raw:" + assetPath;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled false to bypass the cache , cached bodies are dropped .
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            clear();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes total size of the cached bodies , least recently used ones are evicted above it .
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Drops every cached body and compiled page template , counters are kept .
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+        TemplateCache.getInstance().clear();
+        ETagCache.getInstance().clear();
+    }
+
+    /**
+     * @return total size in bytes of the cached bodies .
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    // Cached body and its compressed variants , variants are guarded by the cache lock ..
+    static class Entry {
+        private final String key;
+        private final String contentType;
+        private final byte[] data;
+        private Map<String, byte[]> variants;
+
+        Entry(@NonNull String key, @NonNull String contentType, @NonNull byte[] data) {
+            this.key = key;
+            this.contentType = contentType;
+            this.data = data;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        int getLength() {
+            return data.length;
+        }
+
+        // Body and variants together ..
+        private long getSize() {
+            long size = data.length;
+            if (variants != null) {
+                for (byte[] variant : variants.values())
+                    size += variant.length;
+            }
+
+            return size;
+        }
+    }
+}
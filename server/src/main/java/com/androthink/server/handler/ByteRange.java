@@ -0,0 +1,142 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// One satisfiable range of a "Range: bytes=..." header , both bounds inclusive ..
+class ByteRange {
+
+    // More ranges than this are answered with the whole body instead ..
+    static final int MAX_RANGES = 16;
+
+    private static final Comparator<ByteRange> BY_START = new Comparator<ByteRange>() {
+        @Override
+        public int compare(ByteRange a, ByteRange b) {
+            return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+        }
+    };
+
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length() {
+        return end - start + 1;
+    }
+
+    String toContentRange(long total) {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+
+    /**
+     * Parses a Range header against a body of the given length , overlapping and adjacent ranges are merged .
+     *
+     * @return null if the header must be ignored ( invalid , not bytes or too many ranges ) ,
+     * an empty list if no range can be satisfied ( 416 ) or the ranges sorted by start .
+     */
+    @Nullable
+    static List<ByteRange> parse(@Nullable String header, long length) {
+        if (header == null)
+            return null;
+
+        header = header.trim();
+        if (header.length() < 6 || !header.regionMatches(true, 0, "bytes=", 0, 6))
+            return null;
+
+        List<ByteRange> ranges = new ArrayList<>();
+        int count = 0;
+
+        for (String spec : header.substring(6).split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty())
+                continue;
+
+            if (++count > MAX_RANGES)
+                return null;
+
+            int dash = spec.indexOf('-');
+            if (dash < 0)
+                return null;
+
+            if (dash == 0) {
+                // Suffix range : the last n bytes ..
+                long suffix = parseNumber(spec, 1, spec.length());
+                if (suffix < 0)
+                    return null;
+
+                if (suffix > 0 && length > 0)
+                    ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                continue;
+            }
+
+            long first = parseNumber(spec, 0, dash);
+            if (first < 0)
+                return null;
+
+            long last = length - 1;
+            if (dash + 1 < spec.length()) {
+                last = parseNumber(spec, dash + 1, spec.length());
+                if (last < 0 || last < first)
+                    return null;
+            }
+
+            if (first < length)
+                ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+        }
+
+        if (count == 0)
+            return null;
+
+        return merge(ranges);
+    }
+
+    @NonNull
+    private static List<ByteRange> merge(@NonNull List<ByteRange> ranges) {
+        if (ranges.size() < 2)
+            return ranges;
+
+        Collections.sort(ranges, BY_START);
+
+        List<ByteRange> merged = new ArrayList<>(ranges.size());
+        ByteRange current = ranges.get(0);
+
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.start <= current.end + 1)
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            else {
+                merged.add(current);
+                current = next;
+            }
+        }
+
+        merged.add(current);
+        return merged;
+    }
+
+    // Parses an unsigned decimal , -1 if empty , not a number or too large ..
+    private static long parseNumber(String value, int start, int end) {
+        if (start >= end || end - start > 18)
+            return -1;
+
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+
+            number = number * 10 + (c - '0');
+        }
+
+        return number;
+    }
+}
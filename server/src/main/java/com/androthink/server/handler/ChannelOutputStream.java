@@ -0,0 +1,126 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking OutputStream view over a non-blocking SocketChannel that stays registered with the server selector ,
+ * used by the NIO transport . Files are sent with FileChannel.transferTo straight to the socket .
+ */
+public class ChannelOutputStream extends OutputStream {
+
+    private static final long WRITE_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final SocketChannel channel;
+    private final long writeTimeoutMillis;
+    private volatile boolean timedOut = false;
+
+    // Private selector used only to wait until the socket send buffer drains ..
+    private Selector writeSelector;
+
+    public ChannelOutputStream(@NonNull SocketChannel channel) {
+        this(channel, WRITE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param writeTimeoutMillis longest wait for the client to make room in the send buffer , 0 for no limit .
+     */
+    public ChannelOutputStream(@NonNull SocketChannel channel, long writeTimeoutMillis) {
+        this.channel = channel;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    /**
+     * @return true once a write gave up waiting for the client .
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    public void write(@NonNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0)
+                awaitWritable();
+        }
+    }
+
+    /**
+     * Writes all buffers in order with gathering writes , usually a single system call .
+     */
+    public void write(@NonNull ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers)
+            remaining += buffer.remaining();
+
+        while (remaining > 0) {
+            long written = channel.write(buffers);
+            if (written == 0)
+                awaitWritable();
+
+            remaining -= written;
+        }
+    }
+
+    /**
+     * Sends count bytes of source starting at position without copying them through the heap .
+     *
+     * @throws EOFException if the file is shorter than expected .
+     */
+    public void transferFrom(@NonNull FileChannel source, long position, long count) throws IOException {
+        long end = position + count;
+
+        while (position < end) {
+            long sent = source.transferTo(position, end - position, channel);
+
+            if (sent == 0) {
+                if (position >= source.size())
+                    throw new EOFException("File truncated while sending");
+
+                awaitWritable();
+            }
+
+            position += sent;
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        if (writeSelector == null) {
+            writeSelector = Selector.open();
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+
+        if (writeSelector.select(writeTimeoutMillis) == 0) {
+            timedOut = true;
+            throw new SocketTimeoutException("Write timed out");
+        }
+
+        writeSelector.selectedKeys().clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writeSelector != null) {
+            writeSelector.close();
+            writeSelector = null;
+        }
+    }
+}
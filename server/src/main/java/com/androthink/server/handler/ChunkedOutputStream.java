@@ -0,0 +1,53 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Writes a body with "Transfer-Encoding: chunked" , close() sends the last chunk and leaves the connection open and unflushed ..
+class ChunkedOutputStream extends OutputStream {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final OutputStream outputStream;
+    private boolean closed = false;
+
+    ChunkedOutputStream(@NonNull OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return;
+
+        if (closed)
+            throw new IOException("Chunked body already finished");
+
+        outputStream.write(Integer.toHexString(len).getBytes("ISO-8859-1"));
+        outputStream.write(CRLF);
+        outputStream.write(b, off, len);
+        outputStream.write(CRLF);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        outputStream.write(LAST_CHUNK);
+    }
+}
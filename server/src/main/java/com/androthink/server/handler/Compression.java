@@ -0,0 +1,183 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response compression policy , responses are compressed only when the client accepts gzip or deflate ,
+ * the body is at least getMinSize() bytes and its content type is in the allowlist .
+ * Bodies above getStreamingThreshold() are compressed while being sent with chunked transfer encoding .
+ */
+public class Compression {
+
+    public class ENCODING {
+        public static final String GZIP = "gzip";
+        public static final String DEFLATE = "deflate";
+    }
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private int minSize;
+    private int streamingThreshold;
+    private final Set<String> contentTypes;
+
+    public Compression() {
+        this.minSize = 1024;
+        this.streamingThreshold = 256 * 1024;
+        this.contentTypes = Collections.synchronizedSet(new HashSet<String>());
+
+        contentTypes.add("text/html");
+        contentTypes.add("text/css");
+        contentTypes.add("text/plain");
+        contentTypes.add("text/xml");
+        contentTypes.add("text/javascript");
+        contentTypes.add("application/javascript");
+        contentTypes.add("application/json");
+        contentTypes.add("application/xml");
+        contentTypes.add("image/svg+xml");
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @param minSize smaller bodies are sent as is , compressing them costs more than it saves .
+     */
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getStreamingThreshold() {
+        return streamingThreshold;
+    }
+
+    /**
+     * @param streamingThreshold bodies up to this size are compressed in memory and sent with a Content-Length ,
+     *                           bigger ones are compressed on the fly with chunked transfer encoding .
+     */
+    public void setStreamingThreshold(int streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    /**
+     * @param contentType mime type to compress , parameters such as charset are ignored .
+     */
+    public void addContentType(@NonNull String contentType) {
+        contentTypes.add(contentType.toLowerCase(Locale.US));
+    }
+
+    public void removeContentType(@NonNull String contentType) {
+        contentTypes.remove(contentType.toLowerCase(Locale.US));
+    }
+
+    boolean isCompressible(@Nullable String contentType) {
+        if (contentType == null)
+            return false;
+
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.US);
+        return contentTypes.contains(type);
+    }
+
+    boolean isCompressible(@Nullable String contentType, long length) {
+        return length >= minSize && isCompressible(contentType);
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding request header .
+     * @return gzip or deflate , gzip preferred , or null when the client accepts neither .
+     */
+    @Nullable
+    static String negotiate(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null)
+            return null;
+
+        boolean gzip = false;
+        boolean deflate = false;
+        boolean any = false;
+
+        for (String token : acceptEncoding.split(",")) {
+            String coding = token;
+            boolean accepted = true;
+
+            int semicolon = token.indexOf(';');
+            if (semicolon >= 0) {
+                coding = token.substring(0, semicolon);
+                accepted = !isZeroQuality(token.substring(semicolon + 1));
+            }
+
+            coding = coding.trim();
+            if (coding.equalsIgnoreCase(ENCODING.GZIP))
+                gzip = accepted;
+            else if (coding.equalsIgnoreCase(ENCODING.DEFLATE))
+                deflate = accepted;
+            else if (coding.equals("*"))
+                any = accepted;
+        }
+
+        if (gzip || (any && !acceptEncoding.toLowerCase(Locale.US).contains(ENCODING.GZIP)))
+            return ENCODING.GZIP;
+
+        return deflate ? ENCODING.DEFLATE : null;
+    }
+
+    // q=0 , q=0.0 ... means not acceptable ..
+    private static boolean isZeroQuality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim()) <= 0f;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @NonNull
+    static byte[] compress(@NonNull byte[] data, int offset, int length, @NonNull String encoding) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 3));
+        DeflaterOutputStream outputStream = wrap(compressed, encoding);
+        outputStream.write(data, offset, length);
+        outputStream.close();
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @return a stream compressing into outputStream , finish() or close() writes the trailer .
+     */
+    @NonNull
+    static DeflaterOutputStream wrap(@NonNull OutputStream outputStream, @NonNull String encoding) throws IOException {
+        if (ENCODING.GZIP.equals(encoding))
+            return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+
+        final Deflater deflater = new Deflater();
+        return new DeflaterOutputStream(outputStream, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // A deflater passed in is not released by DeflaterOutputStream itself ..
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Strong ETags per file or asset , hashed once from the content and recomputed only when the version ( modification time ) changes ..
+class ETagCache {
+
+    private static final int MAX_ENTRIES = 256;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static ETagCache eTagCache = null;
+
+    private final LinkedHashMap<String, Tag> tags = new LinkedHashMap<String, Tag>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tag> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    static synchronized ETagCache getInstance() {
+        if (eTagCache == null)
+            eTagCache = new ETagCache();
+
+        return eTagCache;
+    }
+
+    private ETagCache() {
+    }
+
+    @NonNull
+    String get(@NonNull String key, long version, @NonNull byte[] data) {
+        String etag = get(key, version);
+        if (etag == null) {
+            MessageDigest digest = newDigest();
+            digest.update(data);
+            etag = put(key, version, toETag(digest));
+        }
+
+        return etag;
+    }
+
+    @NonNull
+    String get(@NonNull String key, long version, @NonNull FileChannel file, long position, long count) throws IOException {
+        String etag = get(key, version);
+        if (etag == null) {
+            // Hashed outside the lock , positional reads leave the channel position alone ..
+            MessageDigest digest = newDigest();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 1)));
+            while (count > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), count));
+
+                int read = file.read(buffer, position);
+                if (read < 0)
+                    throw new EOFException("File truncated while hashing");
+
+                digest.update(buffer.array(), 0, read);
+                position += read;
+                count -= read;
+            }
+
+            etag = put(key, version, toETag(digest));
+        }
+
+        return etag;
+    }
+
+    synchronized void clear() {
+        tags.clear();
+    }
+
+    @Nullable
+    private synchronized String get(String key, long version) {
+        Tag tag = tags.get(key);
+        return tag != null && tag.version == version ? tag.etag : null;
+    }
+
+    private synchronized String put(String key, long version, String etag) {
+        tags.put(key, new Tag(version, etag));
+        return etag;
+    }
+
+    /**
+     * @return the ETag of a compressed representation , "hash" becomes "hash-gzip" .
+     */
+    @NonNull
+    static String withEncoding(@NonNull String etag, @NonNull String encoding) {
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    /**
+     * Weak comparison used by If-None-Match , W/ prefixes and compressed suffixes are ignored .
+     *
+     * @param ifNoneMatch If-None-Match request header , * or a list of entity tags .
+     * @param etag        identity ETag of the body .
+     */
+    static boolean matches(@NonNull String ifNoneMatch, @NonNull String etag) {
+        if (ifNoneMatch.trim().equals("*"))
+            return true;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+
+            if (tag.equals(etag)
+                    || tag.equals(withEncoding(etag, Compression.ENCODING.GZIP))
+                    || tag.equals(withEncoding(etag, Compression.ENCODING.DEFLATE)))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toETag(MessageDigest digest) {
+        byte[] hash = digest.digest();
+        char[] etag = new char[hash.length * 2 + 2];
+        etag[0] = '"';
+        for (int i = 0; i < hash.length; i++) {
+            etag[1 + i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+            etag[2 + i * 2] = HEX[hash[i] & 0x0f];
+        }
+        etag[etag.length - 1] = '"';
+
+        return new String(etag);
+    }
+
+    private static class Tag {
+        private final long version;
+        private final String etag;
+
+        Tag(long version, String etag) {
+            this.version = version;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Server-Sent Events channel sent to any number of subscribers with ResponseHandler.sendEventStream .
+ * Each event is serialized once and queued for every subscriber , the latest events are kept so a client
+ * reconnecting with Last-Event-ID receives the ones it missed .
+ * A subscriber too slow to keep up is disconnected , its client reconnects and catches up from the replay buffer .
+ */
+public class EventStream {
+
+    public static final int DEFAULT_REPLAY_SIZE = 100;
+    public static final int DEFAULT_MAX_QUEUED_EVENTS = 256;
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 15 * 1000;
+
+    // Comment line written to an idle subscriber ..
+    static final byte[] HEARTBEAT = {':', '\n', '\n'};
+
+    private static final ConcurrentMap<String, EventStream> streams = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Latest events , oldest first , ids are consecutive ..
+    private final ArrayDeque<byte[]> replay = new ArrayDeque<>();
+    private int replaySize = DEFAULT_REPLAY_SIZE;
+    private int maxQueuedEvents = DEFAULT_MAX_QUEUED_EVENTS;
+    private volatile long heartbeatMillis = DEFAULT_HEARTBEAT_MILLIS;
+
+    // Id of the last event sent , guarded by this ..
+    private long lastEventId = 0;
+    private long droppedSubscribers = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * @param name name routes use to find the stream with get() .
+     * @return the stream registered with this name , created if needed .
+     */
+    @NonNull
+    public static EventStream register(@NonNull String name) {
+        EventStream stream = streams.get(name);
+        while (stream == null || stream.isClosed()) {
+            EventStream created = new EventStream(name);
+            if (stream == null ? streams.putIfAbsent(name, created) == null : streams.replace(name, stream, created))
+                return created;
+
+            stream = streams.get(name);
+        }
+
+        return stream;
+    }
+
+    @Nullable
+    public static EventStream get(@NonNull String name) {
+        return streams.get(name);
+    }
+
+    /**
+     * @return subscribers of every registered stream , keyed by stream name .
+     */
+    @NonNull
+    public static Map<String, Integer> getSubscriberCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (EventStream stream : streams.values()) {
+            if (!stream.isClosed())
+                counts.put(stream.name, stream.getSubscriberCount());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Closes the stream registered with this name , its subscribers' responses end .
+     */
+    public static void unregister(@NonNull String name) {
+        EventStream stream = streams.get(name);
+        if (stream != null)
+            stream.close();
+    }
+
+    private EventStream(@NonNull String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param replaySize events kept for clients reconnecting with Last-Event-ID .
+     */
+    public synchronized void setReplaySize(int replaySize) {
+        this.replaySize = Math.max(0, replaySize);
+
+        while (replay.size() > this.replaySize)
+            replay.removeFirst();
+    }
+
+    /**
+     * @param maxQueuedEvents events allowed to wait for one subscriber before it is disconnected .
+     */
+    public synchronized void setMaxQueuedEvents(int maxQueuedEvents) {
+        this.maxQueuedEvents = Math.max(1, maxQueuedEvents);
+    }
+
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    /**
+     * @param heartbeatMillis idle time after which a comment is sent to keep proxies from closing the connection .
+     */
+    public void setHeartbeatMillis(long heartbeatMillis) {
+        this.heartbeatMillis = Math.max(1, heartbeatMillis);
+    }
+
+    /**
+     * @param data event data , may span several lines .
+     * @return id of the event .
+     */
+    public long send(@NonNull String data) {
+        return send(null, data);
+    }
+
+    /**
+     * Queues an event for every subscriber without waiting for any of them .
+     *
+     * @param event event type the client listens to with addEventListener , null for "message" .
+     * @param data  event data , may span several lines .
+     * @return id of the event , 0 once the stream is closed .
+     */
+    public synchronized long send(@Nullable String event, @NonNull String data) {
+        if (closed)
+            return 0;
+
+        long id = ++lastEventId;
+        byte[] serialized = serialize(id, event, data);
+
+        if (replaySize > 0) {
+            if (replay.size() >= replaySize)
+                replay.removeFirst();
+            replay.addLast(serialized);
+        }
+
+        // A subscriber that can not take the event closes and leaves the list itself ..
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(serialized, maxQueuedEvents))
+                droppedSubscribers++;
+        }
+
+        return id;
+    }
+
+    public void close() {
+        closed = true;
+        streams.remove(name, this);
+
+        for (Subscriber subscriber : subscribers)
+            subscriber.close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public synchronized long getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * @return subscribers disconnected because they could not keep up .
+     */
+    public synchronized long getDroppedSubscribers() {
+        return droppedSubscribers;
+    }
+
+    /**
+     * Adds a subscriber , with the kept events after lastEventId already queued .
+     *
+     * @param lastEventId Last-Event-ID sent by a reconnecting client , null for a new one .
+     */
+    @NonNull
+    synchronized Subscriber open(@Nullable String lastEventId) {
+        Subscriber subscriber = new Subscriber(this);
+
+        long lastSeen = parseEventId(lastEventId);
+        if (lastSeen >= 0 && lastSeen < this.lastEventId) {
+            // Ids in the buffer are consecutive and end with this.lastEventId ..
+            long missed = Math.min(this.lastEventId - lastSeen, replay.size());
+            int skip = replay.size() - (int) missed;
+
+            for (byte[] event : replay) {
+                if (skip-- <= 0)
+                    subscriber.offer(event, Integer.MAX_VALUE);
+            }
+        }
+
+        if (closed)
+            subscriber.close();
+        else
+            subscribers.add(subscriber);
+
+        return subscriber;
+    }
+
+    private static long parseEventId(@Nullable String value) {
+        if (value == null)
+            return -1;
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @NonNull
+    static byte[] serialize(long id, @Nullable String event, @NonNull String data) {
+        StringBuilder builder = new StringBuilder(data.length() + 32);
+        builder.append("id: ").append(id).append('\n');
+
+        if (event != null)
+            builder.append("event: ").append(event.replace('\r', ' ').replace('\n', ' ')).append('\n');
+
+        // Every line of the data gets its own field , CRLF and CR count as line ends too ..
+        int start = 0;
+        int length = data.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? data.charAt(i) : '\n';
+            if (c != '\n' && c != '\r')
+                continue;
+
+            builder.append("data: ").append(data, start, i).append('\n');
+            if (c == '\r' && i + 1 < length && data.charAt(i + 1) == '\n')
+                i++;
+            start = i + 1;
+        }
+
+        builder.append('\n');
+
+        try {
+            return builder.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // One connected client and the events its transport has not written yet ..
+    static class Subscriber extends PushStream {
+        private final EventStream stream;
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private boolean closed = false;
+
+        Subscriber(@NonNull EventStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * @return false when the subscriber is too far behind and was closed .
+         */
+        boolean offer(@NonNull byte[] event, int maxQueuedEvents) {
+            boolean queued;
+            synchronized (this) {
+                if (closed)
+                    return false;
+
+                queued = pending.size() < maxQueuedEvents;
+                if (queued)
+                    pending.addLast(event);
+            }
+
+            if (queued)
+                onQueued();
+            else
+                close();
+
+            return queued;
+        }
+
+        // Events queued since the last call leave in one write ..
+        @Nullable
+        @Override
+        public synchronized ByteBuffer next() {
+            if (closed || pending.isEmpty())
+                return null;
+
+            if (pending.size() == 1)
+                return ByteBuffer.wrap(pending.removeFirst());
+
+            int length = 0;
+            for (byte[] event : pending)
+                length += event.length;
+
+            ByteBuffer batch = ByteBuffer.allocate(length);
+            byte[] event;
+            while ((event = pending.pollFirst()) != null)
+                batch.put(event);
+
+            batch.flip();
+            return batch;
+        }
+
+        @Override
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+
+            stream.subscribers.remove(this);
+            onQueued();
+        }
+
+        @Override
+        public long getHeartbeatMillis() {
+            return stream.getHeartbeatMillis();
+        }
+
+        @NonNull
+        @Override
+        public ByteBuffer heartbeat() {
+            return ByteBuffer.wrap(HEARTBEAT);
+        }
+    }
+}
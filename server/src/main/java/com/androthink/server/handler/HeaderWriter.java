@@ -0,0 +1,219 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.helper.ServerHelper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serializes a response head as ASCII bytes into a per thread buffer , status lines are precomputed and the Date header
+ * is formatted once per second . A small body can be appended so head and body leave in a single write .
+ */
+class HeaderWriter extends OutputStream {
+
+    // Bodies up to this size are copied behind the head instead of being written separately ..
+    static final int MAX_INLINE_BODY = 16 * 1024;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // A buffer grown past this by a big inline body is not kept for the next response ..
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] SEPARATOR = {':', ' '};
+
+    private static final byte[][] STATUS_LINES = new byte[600][];
+
+    private static final ThreadLocal<HeaderWriter> WRITERS = new ThreadLocal<HeaderWriter>() {
+        @Override
+        protected HeaderWriter initialValue() {
+            return new HeaderWriter();
+        }
+    };
+
+    private static volatile CachedDate cachedDate = null;
+
+    static {
+        for (int code = 100; code < STATUS_LINES.length; code++) {
+            String reason = getReasonPhrase(code);
+            if (reason != null)
+                STATUS_LINES[code] = toAscii("HTTP/1.1 " + code + " " + reason + "\r\n");
+        }
+    }
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int count = 0;
+
+    private HeaderWriter() {
+    }
+
+    /**
+     * @return the empty writer of the calling thread , it is reused by the next response on that thread .
+     */
+    @NonNull
+    static HeaderWriter obtain() {
+        HeaderWriter writer = WRITERS.get();
+        if (writer.buffer.length > MAX_POOLED_CAPACITY)
+            writer.buffer = new byte[INITIAL_CAPACITY];
+
+        writer.count = 0;
+        return writer;
+    }
+
+    @NonNull
+    HeaderWriter status(int code) {
+        byte[] line = code >= 0 && code < STATUS_LINES.length ? STATUS_LINES[code] : null;
+        if (line == null)
+            line = toAscii("HTTP/1.1 " + code + " UnKnown\r\n");
+
+        write(line, 0, line.length);
+        return this;
+    }
+
+    @NonNull
+    HeaderWriter date() {
+        byte[] line = getDateLine(System.currentTimeMillis());
+        write(line, 0, line.length);
+        return this;
+    }
+
+    @NonNull
+    HeaderWriter header(@NonNull String name, @NonNull String value) {
+        writeAscii(name);
+        write(SEPARATOR, 0, SEPARATOR.length);
+        writeAscii(value);
+        write(CRLF, 0, CRLF.length);
+        return this;
+    }
+
+    @NonNull
+    HeaderWriter header(@NonNull String name, long value) {
+        return header(name, Long.toString(value));
+    }
+
+    // Blank line closing the head ..
+    @NonNull
+    HeaderWriter end() {
+        write(CRLF, 0, CRLF.length);
+        return this;
+    }
+
+    /**
+     * Writes the head followed by the body , in one write when the body is small .
+     */
+    void writeTo(@NonNull OutputStream outputStream, @NonNull byte[] body, int offset, int length) throws IOException {
+        if (length <= MAX_INLINE_BODY) {
+            write(body, offset, length);
+            writeTo(outputStream);
+        } else {
+            writeTo(outputStream);
+            outputStream.write(body, offset, length);
+        }
+    }
+
+    void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, count);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    // Header text is Latin-1 , other characters can not be sent and become '?' ..
+    private void writeAscii(@NonNull String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            buffer[count++] = (byte) (c <= 0xff ? c : '?');
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, count + extra)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+
+    @NonNull
+    static byte[] getDateLine(long now) {
+        long second = now / 1000;
+        CachedDate date = cachedDate;
+        if (date == null || date.second != second) {
+            date = new CachedDate(second, toAscii("Date: " + ServerHelper.formatHttpDate(second * 1000) + "\r\n"));
+            cachedDate = date;
+        }
+
+        return date.line;
+    }
+
+    @Nullable
+    static String getReasonPhrase(int code) {
+        switch (code) {
+            case ServerHelper.RESPONSE_CODE.SWITCHING_PROTOCOLS:
+                return "Switching Protocols";
+            case ServerHelper.RESPONSE_CODE.OK:
+                return "OK";
+            case ServerHelper.RESPONSE_CODE.PARTIAL_CONTENT:
+                return "Partial Content";
+            case ServerHelper.RESPONSE_CODE.NOT_MODIFIED:
+                return "Not Modified";
+            case ServerHelper.RESPONSE_CODE.BAD_REQUEST:
+                return "Bad Request";
+            case ServerHelper.RESPONSE_CODE.UNAUTHORIZED:
+                return "Unauthorized";
+            case ServerHelper.RESPONSE_CODE.FORBIDDEN:
+                return "Forbidden";
+            case ServerHelper.RESPONSE_CODE.NOT_FOUND:
+                return "Not Found";
+            case ServerHelper.RESPONSE_CODE.METHOD_NOT_ALLOWED:
+                return "Method Not Allowed";
+            case ServerHelper.RESPONSE_CODE.REQUEST_TIMEOUT:
+                return "Request Timeout";
+            case ServerHelper.RESPONSE_CODE.PAYLOAD_TOO_LARGE:
+                return "Payload Too Large";
+            case ServerHelper.RESPONSE_CODE.RANGE_NOT_SATISFIABLE:
+                return "Range Not Satisfiable";
+            case ServerHelper.RESPONSE_CODE.UPGRADE_REQUIRED:
+                return "Upgrade Required";
+            case ServerHelper.RESPONSE_CODE.INTERNAL_SERVER_ERROR:
+                return "Internal Server Error";
+            case ServerHelper.RESPONSE_CODE.SERVICE_UNAVAILABLE:
+                return "Service Unavailable";
+            default:
+                return null;
+        }
+    }
+
+    @NonNull
+    private static byte[] toAscii(@NonNull String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) text.charAt(i);
+
+        return bytes;
+    }
+
+    private static class CachedDate {
+        private final long second;
+        private final byte[] line;
+
+        CachedDate(long second, byte[] line) {
+            this.second = second;
+            this.line = line;
+        }
+    }
+}
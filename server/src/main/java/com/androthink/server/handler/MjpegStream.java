@@ -0,0 +1,287 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.helper.ServerHelper;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live JPEG stream ( e.g. a camera preview ) fed by one producer and sent to any number of viewers as
+ * multipart/x-mixed-replace with ResponseHandler.sendMjpegStream .
+ * Every viewer holds only the latest frame it has not sent yet , a slow viewer drops frames instead of
+ * stalling the producer or the other viewers .
+ */
+public class MjpegStream {
+
+    private static final ConcurrentMap<String, MjpegStream> streams = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private final AtomicLong publishedFrames = new AtomicLong();
+
+    // Sent first to a viewer joining between two frames ..
+    private volatile byte[] lastFrame = null;
+    private volatile boolean closed = false;
+
+    /**
+     * @param name name routes use to find the stream with get() .
+     * @return the stream registered with this name , created if needed .
+     */
+    @NonNull
+    public static MjpegStream register(@NonNull String name) {
+        MjpegStream stream = streams.get(name);
+        while (stream == null || stream.isClosed()) {
+            MjpegStream created = new MjpegStream(name);
+            if (stream == null ? streams.putIfAbsent(name, created) == null : streams.replace(name, stream, created))
+                return created;
+
+            stream = streams.get(name);
+        }
+
+        return stream;
+    }
+
+    @Nullable
+    public static MjpegStream get(@NonNull String name) {
+        return streams.get(name);
+    }
+
+    /**
+     * @return viewers of every registered stream , keyed by stream name .
+     */
+    @NonNull
+    public static Map<String, Integer> getViewerCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (MjpegStream stream : streams.values()) {
+            if (!stream.isClosed())
+                counts.put(stream.name, stream.getViewerCount());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Closes the stream registered with this name , its viewers' responses end .
+     */
+    public static void unregister(@NonNull String name) {
+        MjpegStream stream = streams.get(name);
+        if (stream != null)
+            stream.close();
+    }
+
+    private MjpegStream(@NonNull String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Hands a frame to every viewer without waiting for any of them .
+     *
+     * @param jpeg JPEG image , e.g. from ServerHelper.convertBitmapToByte , it must not be modified afterwards .
+     */
+    public void publish(@NonNull byte[] jpeg) {
+        if (closed)
+            return;
+
+        lastFrame = jpeg;
+        publishedFrames.incrementAndGet();
+
+        for (Viewer viewer : viewers)
+            viewer.offer(jpeg);
+    }
+
+    public void close() {
+        closed = true;
+        streams.remove(name, this);
+
+        for (Viewer viewer : viewers)
+            viewer.close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getPublishedFrames() {
+        return publishedFrames.get();
+    }
+
+    public int getViewerCount() {
+        return viewers.size();
+    }
+
+    /**
+     * @return the viewers connected now , with their own fps and dropped frame counters .
+     */
+    @NonNull
+    public List<Viewer> getViewers() {
+        return Collections.unmodifiableList(new ArrayList<>(viewers));
+    }
+
+    /**
+     * @param boundary multipart boundary of the viewer's response .
+     */
+    @NonNull
+    Viewer open(@Nullable String clientAddress, @NonNull String boundary) {
+        Viewer viewer = new Viewer(this, clientAddress, boundary);
+        viewers.add(viewer);
+
+        byte[] frame = lastFrame;
+        if (frame != null)
+            viewer.offer(frame);
+
+        // Closed while joining ..
+        if (closed)
+            viewer.close();
+
+        return viewer;
+    }
+
+    void remove(@NonNull Viewer viewer) {
+        viewer.close();
+    }
+
+    // One connected client , pending is a single slot so a newer frame replaces an unsent one ..
+    public static class Viewer extends PushStream {
+        private final MjpegStream stream;
+        private final String clientAddress;
+        private final long connectedAt;
+        // CRLF closing the previous frame goes with the next boundary ..
+        private final String partStart;
+
+        private byte[] pending = null;
+        // Frame whose part header was handed out last , next() returns it right after ..
+        private byte[] sending = null;
+        private boolean closed = false;
+
+        private long sentFrames = 0;
+        private long droppedFrames = 0;
+
+        // Frames sent in the current one second window and the rate of the last complete one ..
+        private long windowStart;
+        private int windowFrames = 0;
+        private int fps = 0;
+
+        Viewer(@NonNull MjpegStream stream, @Nullable String clientAddress, @NonNull String boundary) {
+            this.stream = stream;
+            this.clientAddress = clientAddress;
+            this.partStart = "\r\n--" + boundary + "\r\n"
+                    + ServerHelper.MAIN_HEADERS.CONTENT_TYPE + ": " + ServerHelper.CONTENT_TYPE.JPEG + "\r\n"
+                    + ServerHelper.MAIN_HEADERS.CONTENT_LENGTH + ": ";
+            this.connectedAt = System.currentTimeMillis();
+            this.windowStart = connectedAt;
+        }
+
+        void offer(@NonNull byte[] frame) {
+            synchronized (this) {
+                if (closed)
+                    return;
+
+                if (pending != null)
+                    droppedFrames++;
+
+                pending = frame;
+            }
+
+            onQueued();
+        }
+
+        // Part header of the pending frame , then the frame itself ..
+        @Nullable
+        @Override
+        public synchronized ByteBuffer next() {
+            if (closed)
+                return null;
+
+            if (sending != null) {
+                ByteBuffer frame = ByteBuffer.wrap(sending);
+                sending = null;
+                onSent();
+                return frame;
+            }
+
+            if (pending == null)
+                return null;
+
+            sending = pending;
+            pending = null;
+
+            try {
+                return ByteBuffer.wrap((partStart + sending.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                pending = null;
+                sending = null;
+            }
+
+            stream.viewers.remove(this);
+            onQueued();
+        }
+
+        synchronized void onSent() {
+            sentFrames++;
+            windowFrames++;
+
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= 1000) {
+                fps = (int) (windowFrames * 1000 / (now - windowStart));
+                windowStart = now;
+                windowFrames = 0;
+            }
+        }
+
+        @Nullable
+        public String getClientAddress() {
+            return clientAddress;
+        }
+
+        public long getConnectedAt() {
+            return connectedAt;
+        }
+
+        /**
+         * @return frames sent during the last second , 0 when the viewer has not received a frame for a while .
+         */
+        public synchronized int getFps() {
+            return System.currentTimeMillis() - windowStart >= 2000 ? 0 : fps;
+        }
+
+        public synchronized long getSentFrames() {
+            return sentFrames;
+        }
+
+        /**
+         * @return frames replaced by a newer one before this viewer could send them .
+         */
+        public synchronized long getDroppedFrames() {
+            return droppedFrames;
+        }
+    }
+}
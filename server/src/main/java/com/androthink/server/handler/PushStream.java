@@ -0,0 +1,67 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Body of a response that lasts as long as its client stays connected ( an EventStream subscriber or an
+ * MjpegStream viewer ) . Once the head is sent the connection is handed back to the transport , which writes
+ * what the stream queues without holding a worker thread .
+ */
+public abstract class PushStream {
+
+    /**
+     * Transport writing the stream , told from any thread that there is something to write .
+     */
+    public interface Listener {
+        void onQueued();
+    }
+
+    @Nullable
+    private volatile Listener listener;
+
+    /**
+     * Called by the transport once it owns the connection , whatever was queued before is announced right away .
+     */
+    public void attach(@NonNull Listener listener) {
+        this.listener = listener;
+        listener.onQueued();
+    }
+
+    // Called by subclasses outside their own lock once bytes are queued or the stream ended ..
+    protected void onQueued() {
+        Listener current = listener;
+        if (current != null)
+            current.onQueued();
+    }
+
+    /**
+     * @return the next bytes to write , a heap buffer written completely before the next call , null when nothing is waiting .
+     */
+    @Nullable
+    public abstract ByteBuffer next();
+
+    /**
+     * @return true once the stream ended , the transport then closes the connection .
+     */
+    public abstract boolean isClosed();
+
+    /**
+     * Ends the stream , called by the transport when the client left or the server stops .
+     */
+    public abstract void close();
+
+    /**
+     * @return idle time after which heartbeat() is written , 0 for none .
+     */
+    public long getHeartbeatMillis() {
+        return 0;
+    }
+
+    @Nullable
+    public ByteBuffer heartbeat() {
+        return null;
+    }
+}
@@ -1,34 +1,169 @@
 package com.androthink.server.handler;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 
 import androidx.annotation.NonNull;
 
+import androidx.annotation.Nullable;
+
+import com.androthink.server.callback.WebSocketCallBack;
 import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Request;
 
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Date;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
 
 public class ResponseHandler {
 
+    // Copy buffer used when files can not be handed to the socket with transferTo ..
+    private static final int FILE_BUFFER_SIZE = 16 * 1024;
+    // Bytes of the UTF-8 byte order mark skipped at the start of text files ..
+    private static final int UTF8_BOM_LENGTH = 3;
+
+    // Content length passed to sendResponseHeader for a body sent with chunked transfer encoding ..
+    private static final long CHUNKED = -2;
+    // Content length passed to sendResponseHeader for a response that never has a body ( 304 ) ..
+    private static final long NO_BODY = -3;
+
     private final Context context;
     private final DataOutputStream responseStream;
+    // Buffer under responseStream , flushed once at the end of each response ..
+    private final ResponseOutputStream outputStream;
+    // Counters of outputStream when this response started ..
+    private final long startBytes;
+    private final long startWrites;
+
+    // Request being answered , its Range and If-Range headers drive partial responses ..
+    @Nullable
+    private Request request;
+    // Null when responses are never compressed ..
+    @Nullable
+    private Compression compression;
+    // Cache-Control configured for the request path , null to leave caching to the route ..
+    @Nullable
+    private String cacheControl;
+    // APK update time used as Last-Modified of assets , -1 until looked up ..
+    private long assetsLastModified = -1;
+
+    // Set once the handshake of a WebSocket upgrade is sent ..
+    @Nullable
+    private WebSocketCallBack webSocketCallBack;
+    // Set once the head of an event or MJPEG stream is sent , the transport writes the rest ..
+    @Nullable
+    private PushStream pushStream;
+
+    // Whether the connection stays open after this response , the stream is never closed here ..
+    private boolean keepAlive = false;
+    private boolean committed = false;
+    // Status of the head written , 0 until then ..
+    private int statusCode = 0;
 
     public static ResponseHandler getInstance(Context context, DataOutputStream responseStream) {
-        return new ResponseHandler(context, responseStream);
+        return getInstance(context, (OutputStream) responseStream);
+    }
+
+    /**
+     * @param outputStream connection output , a ResponseOutputStream is used as is so its buffer is kept
+     *                     across the responses of a connection , other streams get a buffer of the default size .
+     */
+    public static ResponseHandler getInstance(Context context, @NonNull OutputStream outputStream) {
+        return new ResponseHandler(context, outputStream instanceof ResponseOutputStream ? (ResponseOutputStream) outputStream
+                : new ResponseOutputStream(outputStream, ResponseOutputStream.DEFAULT_BUFFER_SIZE));
     }
 
-    private ResponseHandler(Context context, DataOutputStream responseStream) {
+    private ResponseHandler(Context context, @NonNull ResponseOutputStream outputStream) {
         this.context = context;
-        this.responseStream = responseStream;
+        this.outputStream = outputStream;
+        this.responseStream = new DataOutputStream(outputStream);
+        this.startBytes = outputStream.getBytesWritten();
+        this.startWrites = outputStream.getWriteCount();
     }
 
     public Context getContext() {
         return this.context;
     }
 
+    /**
+     * @param request request being answered , enables Range handling for file and media responses .
+     */
+    public void setRequest(@Nullable Request request) {
+        this.request = request;
+    }
+
+    /**
+     * @param compression compression policy , null to always send bodies as is .
+     */
+    public void setCompression(@Nullable Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param cacheControl Cache-Control value added to successful and 304 responses unless the route sets its own .
+     */
+    public void setCacheControl(@Nullable String cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    /**
+     * @return bytes of this response written to the connection so far .
+     */
+    public long getBytesSent() {
+        return outputStream.getBytesWritten() - startBytes;
+    }
+
+    /**
+     * @return status code of the response head written , 0 when nothing was sent yet .
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return writes to the connection made by this response so far , each one costs at least one system call .
+     */
+    public long getWriteCount() {
+        return outputStream.getWriteCount() - startWrites;
+    }
+
+    /**
+     * Sends whatever is still buffered , called once the response is complete .
+     *
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void flush() throws IOException {
+        this.responseStream.flush();
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @param keepAlive true to answer with Connection: keep-alive and leave the connection open for the next request .
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * @return true once the response headers have been written .
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
     /**
      * @param json Json to be sent as Response .
      * @throws IOException throws exception if response channel closed .
@@ -37,11 +172,10 @@ public class ResponseHandler {
     public void sendJsonResponse(String json) throws IOException {
         if (json != null) {
             byte[] data = json.getBytes("UTF-8");
-            sendResponseHeader(ServerHelper.RESPONSE_CODE.OK, ServerHelper.CONTENT_TYPE.JSON, data.length);
-            this.responseStream.write(data);
+            sendBytes(ServerHelper.RESPONSE_CODE.OK, ServerHelper.CONTENT_TYPE.JSON, data, null);
+        } else {
+            this.responseStream.flush();
         }
-        this.responseStream.flush();
-        this.responseStream.close();
     }
 
     /**
@@ -52,11 +186,10 @@ public class ResponseHandler {
     public void sendJsonResponse(String json, Map<String, String> customHeaders) throws IOException {
         if (json != null) {
             byte[] data = json.getBytes("UTF-8");
-            sendResponseHeader(ServerHelper.RESPONSE_CODE.OK, ServerHelper.CONTENT_TYPE.JSON, data.length, customHeaders);
-            this.responseStream.write(data);
+            sendBytes(ServerHelper.RESPONSE_CODE.OK, ServerHelper.CONTENT_TYPE.JSON, data, customHeaders);
+        } else {
+            this.responseStream.flush();
         }
-        this.responseStream.flush();
-        this.responseStream.close();
     }
 
     /**
@@ -68,11 +201,10 @@ public class ResponseHandler {
     public void sendJsonResponse(int code, String json, Map<String, String> customHeaders) throws IOException {
         if (json != null) {
             byte[] data = json.getBytes("UTF-8");
-            sendResponseHeader(code, ServerHelper.CONTENT_TYPE.JSON, data.length, customHeaders);
-            this.responseStream.write(data);
+            sendBytes(code, ServerHelper.CONTENT_TYPE.JSON, data, customHeaders);
+        } else {
+            this.responseStream.flush();
         }
-        this.responseStream.flush();
-        this.responseStream.close();
     }
 
     /**
@@ -83,11 +215,10 @@ public class ResponseHandler {
     public void sendJsonResponse(int code, String json) throws IOException {
         if (json != null) {
             byte[] data = json.getBytes("UTF-8");
-            sendResponseHeader(code, ServerHelper.CONTENT_TYPE.JSON, data.length);
-            this.responseStream.write(data);
+            sendBytes(code, ServerHelper.CONTENT_TYPE.JSON, data, null);
+        } else {
+            this.responseStream.flush();
         }
-        this.responseStream.flush();
-        this.responseStream.close();
     }
 
     /**
@@ -99,14 +230,13 @@ public class ResponseHandler {
      */
     public void sendAssetFile(int code, String type, String assetPath, Map<String, String> customHeaders) throws IOException {
 
-        byte[] data = ServerHelper.loadFileFromAsset(context, assetPath, true);
-        sendResponseHeader(code, type, data.length, customHeaders);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        AssetCache.Entry entry = AssetCache.getInstance().load(context, assetPath, true, type);
+        sendBody(code, type, getAssetBody(entry), customHeaders);
     }
 
     /**
+     * Streamed like streamFile without loading the file in memory , a leading UTF-8 BOM is not sent .
+     *
      * @param code          custom response code
      * @param type          Content-Type
      * @param filename      filename for the file to be sent .
@@ -114,12 +244,7 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendFile(int code, String type, String filename, Map<String, String> customHeaders) throws IOException {
-
-        byte[] data = ServerHelper.loadFileAsBytes(filename, true);
-        sendResponseHeader(code, type, data.length, customHeaders);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        streamTextFile(code, type, filename, customHeaders);
     }
 
     /**
@@ -130,12 +255,7 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendAssetMediaFile(int code, String type, String assetPath, Map<String, String> customHeaders) throws IOException {
-
-        byte[] data = ServerHelper.loadFileFromAsset(context, assetPath, false);
-        sendResponseHeader(code, type, data.length, customHeaders);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        streamAsset(code, type, assetPath, customHeaders);
     }
 
     /**
@@ -146,12 +266,7 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendMediaFile(int code, String type, String filename, Map<String, String> customHeaders) throws IOException {
-
-        byte[] data = ServerHelper.loadFileAsBytes(filename, false);
-        sendResponseHeader(code, type, data.length, customHeaders);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        streamFile(code, type, filename, customHeaders);
     }
 
     /**
@@ -162,26 +277,20 @@ public class ResponseHandler {
      */
     public void sendAssetFile(int code, String type, String assetPath) throws IOException {
 
-        byte[] data = ServerHelper.loadFileFromAsset(context, assetPath, true);
-        sendResponseHeader(code, type, data.length);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        AssetCache.Entry entry = AssetCache.getInstance().load(context, assetPath, true, type);
+        sendBody(code, type, getAssetBody(entry), null);
     }
 
     /**
+     * Streamed like streamFile without loading the file in memory , a leading UTF-8 BOM is not sent .
+     *
      * @param code     custom response code
      * @param type     Content-Type
      * @param filename filename for the file to be sent .
      * @throws IOException throws exception if response channel closed .
      */
     public void sendFile(int code, String type, String filename) throws IOException {
-
-        byte[] data = ServerHelper.loadFileAsBytes(filename, true);
-        sendResponseHeader(code, type, data.length);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        streamTextFile(code, type, filename, null);
     }
 
     /**
@@ -191,12 +300,7 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendAssetMediaFile(int code, String type, String assetPath) throws IOException {
-
-        byte[] data = ServerHelper.loadFileFromAsset(context, assetPath, false);
-        sendResponseHeader(code, type, data.length);
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        streamAsset(code, type, assetPath, null);
     }
 
     /**
@@ -206,12 +310,417 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendMediaFile(int code, String type, String filename) throws IOException {
+        streamFile(code, type, filename, null);
+    }
+
+    /**
+     * Sends the file without loading it in memory , the length comes from File.length()
+     * and the content is copied with FileChannel.transferTo when the transport allows it or a fixed buffer otherwise .
+     * A 200 response carries ETag and Last-Modified , honours conditional requests with 304
+     * and Range / If-Range by only reading the requested parts of the file .
+     *
+     * @param code          custom response code
+     * @param type          Content-Type
+     * @param filename      filename for the file to be sent .
+     * @param customHeaders headers to be sent with the response , may be null .
+     * @throws IOException throws exception if response channel closed or file not found .
+     */
+    public void streamFile(int code, String type, String filename, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        File file = new File(filename);
+        FileInputStream input = new FileInputStream(file);
+        try {
+            Body body = new Body(null, input.getChannel(), 0, file.length());
+            body.lastModified = file.lastModified();
+            body.etag = ETagCache.getInstance().get(filename, getFileVersion(file), body.channel, 0, body.length);
+
+            sendBody(code, type, body, customHeaders);
+        } finally {
+            input.close();
+        }
+    }
+
+    // Sends an asset from the cache or from its file descriptor inside the APK , compressed assets have none and are loaded instead ..
+    private void streamAsset(int code, String type, String assetPath, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        AssetCache cache = AssetCache.getInstance();
+        AssetCache.Entry entry = cache.get(assetPath, false);
+        if (entry != null) {
+            sendBody(code, type, getAssetBody(entry), customHeaders);
+            return;
+        }
+
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = context.getAssets().openFd(assetPath);
+        } catch (FileNotFoundException e) {
+            // Compressed asset ..
+        }
+
+        if (descriptor == null || descriptor.getLength() < 0) {
+            if (descriptor != null)
+                descriptor.close();
+
+            entry = cache.put(assetPath, false, type, ServerHelper.loadFileFromAsset(context, assetPath, false));
+            sendBody(code, type, getAssetBody(entry), customHeaders);
+            return;
+        }
+
+        try {
+            FileInputStream input = descriptor.createInputStream();
+            try {
+                FileChannel channel = input.getChannel();
+
+                if (cache.isCacheable(descriptor.getLength())) {
+                    byte[] data = readFileRegion(channel, descriptor.getStartOffset(), (int) descriptor.getLength());
+                    entry = cache.put(assetPath, false, type, data);
+                    sendBody(code, type, getAssetBody(entry), customHeaders);
+                } else {
+                    Body body = new Body(null, channel, descriptor.getStartOffset(), descriptor.getLength());
+                    body.lastModified = getAssetsLastModified();
+                    body.etag = ETagCache.getInstance().get("asset:" + AssetCache.key(assetPath, false), 0, channel, body.offset, body.length);
+
+                    sendBody(code, type, body, customHeaders);
+                }
+            } finally {
+                input.close();
+            }
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    // Assets only change with the app , their ETag is computed once ..
+    @NonNull
+    private Body getAssetBody(@NonNull AssetCache.Entry entry) {
+        Body body = new Body(entry, null, 0, entry.getLength());
+        body.lastModified = getAssetsLastModified();
+        body.etag = ETagCache.getInstance().get("asset:" + entry.getKey(), 0, entry.getData());
+        return body;
+    }
+
+    // Same as streamFile , the body starts after the UTF-8 BOM when the file has one ..
+    private void streamTextFile(int code, String type, String filename, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        File file = new File(filename);
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            long length = file.length();
+            long start = hasUtf8Bom(channel, length) ? UTF8_BOM_LENGTH : 0;
+
+            Body body = new Body(null, channel, start, length - start);
+            body.lastModified = file.lastModified();
+            // Without its BOM the body is another representation with its own ETag ..
+            body.etag = ETagCache.getInstance().get("text:" + filename, getFileVersion(file), channel, start, body.length);
+
+            sendBody(code, type, body, customHeaders);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static boolean hasUtf8Bom(@NonNull FileChannel file, long length) throws IOException {
+        if (length < UTF8_BOM_LENGTH)
+            return false;
+
+        byte[] head = readFileRegion(file, 0, UTF8_BOM_LENGTH);
+        return head[0] == (byte) 0xEF && head[1] == (byte) 0xBB && head[2] == (byte) 0xBF;
+    }
+
+    // Modification time and length together tell a rewritten file apart ..
+    private static long getFileVersion(@NonNull File file) {
+        return file.lastModified() * 31 + file.length();
+    }
+
+    // Assets are replaced only when the app is updated , 0 if unknown ..
+    private long getAssetsLastModified() {
+        if (assetsLastModified < 0) {
+            try {
+                assetsLastModified = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            } catch (Exception e) {
+                assetsLastModified = 0;
+            }
+        }
+
+        return assetsLastModified;
+    }
+
+    // Sends a dynamic body , compressed in memory or on the fly when the client accepts it ..
+    private void sendBytes(int code, String type, @NonNull byte[] data, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        Map<String, String> headers = copyHeaders(customHeaders);
+        addCacheControl(code, headers);
+        String encoding = negotiateEncoding(type, data.length, headers);
+
+        if (encoding == null) {
+            sendResponseHeader(code, type, headers, data);
+        } else if (data.length > compression.getStreamingThreshold()) {
+            sendCompressed(code, type, new Body(new AssetCache.Entry("", type, data), null, 0, data.length), encoding, headers);
+        } else {
+            byte[] compressed = Compression.compress(data, 0, data.length, encoding);
+            headers.put("Content-Encoding", encoding);
+            sendResponseHeader(code, type, headers, compressed);
+        }
+
+        this.responseStream.flush();
+    }
+
+    /**
+     * Sends a file or asset body as a whole or as the ranges the request asked for , or 304 when the client copy is still valid .
+     * Whole bodies are compressed when the client accepts it , cached assets reuse their precomputed compressed variant .
+     */
+    private void sendBody(int code, String type, @NonNull Body body, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        Map<String, String> headers = copyHeaders(customHeaders);
+        addCacheControl(code, headers);
+
+        // Ranges always apply to the identity body ..
+        String encoding = negotiateEncoding(type, body.length, headers);
+
+        List<ByteRange> ranges = null;
+        if (code == ServerHelper.RESPONSE_CODE.OK) {
+            headers.put("Accept-Ranges", "bytes");
+            if (body.lastModified > 0)
+                headers.put("Last-Modified", ServerHelper.formatHttpDate(body.lastModified));
+
+            if (isNotModified(body)) {
+                if (body.etag != null)
+                    headers.put("ETag", encoding != null ? ETagCache.withEncoding(body.etag, encoding) : body.etag);
+
+                sendResponseHeader(ServerHelper.RESPONSE_CODE.NOT_MODIFIED, type, NO_BODY, headers);
+                this.responseStream.flush();
+                return;
+            }
+
+            ranges = getRequestedRanges(body);
+
+            // A compressed body is another representation with its own strong ETag ..
+            if (body.etag != null)
+                headers.put("ETag", encoding != null && ranges == null ? ETagCache.withEncoding(body.etag, encoding) : body.etag);
+        }
+
+        if (ranges == null && encoding != null) {
+            if (body.entry != null) {
+                byte[] compressed = getCompressedVariant(body.entry, encoding);
+                headers.put("Content-Encoding", encoding);
+                sendResponseHeader(code, type, headers, compressed);
+            } else if (body.channel != null && body.length <= compression.getStreamingThreshold()) {
+                byte[] compressed = Compression.compress(readFileRegion(body.channel, body.offset, (int) body.length), 0, (int) body.length, encoding);
+                headers.put("Content-Encoding", encoding);
+                sendResponseHeader(code, type, headers, compressed);
+            } else {
+                sendCompressed(code, type, body, encoding, headers);
+            }
+        } else if (ranges == null && body.entry != null) {
+            sendResponseHeader(code, type, headers, body.entry.getData());
+        } else if (ranges == null) {
+            sendResponseHeader(code, type, body.length, headers);
+            writeRegion(body, 0, body.length);
+        } else if (ranges.isEmpty()) {
+            headers.put("Content-Range", "bytes */" + body.length);
+            sendResponseHeader(ServerHelper.RESPONSE_CODE.RANGE_NOT_SATISFIABLE, type, 0, headers);
+        } else if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            headers.put("Content-Range", range.toContentRange(body.length));
+            sendResponseHeader(ServerHelper.RESPONSE_CODE.PARTIAL_CONTENT, type, range.length(), headers);
+            writeRegion(body, range.start, range.length());
+        } else {
+            sendMultipartRanges(type, body, ranges, headers);
+        }
 
-        byte[] data = ServerHelper.loadFileAsBytes(filename, false);
-        sendResponseHeader(code, type, data.length);
-        this.responseStream.write(data);
         this.responseStream.flush();
-        this.responseStream.close();
+    }
+
+    /**
+     * @return true when If-None-Match ( or If-Modified-Since without it ) shows the client copy is current .
+     */
+    private boolean isNotModified(@NonNull Body body) {
+        if (request == null || !ServerHelper.METHOD.GET.equals(request.getMethod()))
+            return false;
+
+        String ifNoneMatch = request.getHeaders().get(ServerHelper.MAIN_HEADERS.IF_NONE_MATCH);
+        if (ifNoneMatch != null)
+            return body.etag != null && ETagCache.matches(ifNoneMatch, body.etag);
+
+        String ifModifiedSince = request.getHeaders().get(ServerHelper.MAIN_HEADERS.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || body.lastModified <= 0)
+            return false;
+
+        // HTTP dates have a one second precision ..
+        long since = ServerHelper.parseHttpDate(ifModifiedSince);
+        return since >= 0 && body.lastModified / 1000 <= since / 1000;
+    }
+
+    /**
+     * Compresses the body while sending it , with chunked transfer encoding for HTTP/1.1 clients
+     * or by closing the connection after the body for HTTP/1.0 ones .
+     */
+    private void sendCompressed(int code, String type, @NonNull Body body, @NonNull String encoding,
+                                @NonNull Map<String, String> headers) throws IOException {
+
+        boolean chunked = request != null && "HTTP/1.1".equals(request.getProtocol());
+
+        headers.put("Content-Encoding", encoding);
+        sendResponseHeader(code, type, chunked ? CHUNKED : -1, headers);
+
+        OutputStream outputStream = chunked ? new ChunkedOutputStream(this.responseStream) : this.responseStream;
+        DeflaterOutputStream compressed = Compression.wrap(outputStream, encoding);
+        try {
+            if (body.entry != null)
+                compressed.write(body.entry.getData(), 0, body.entry.getLength());
+            else if (body.channel != null)
+                copyFileRegion(body.channel, body.offset, body.length, compressed);
+        } finally {
+            compressed.close();
+        }
+    }
+
+    // Compressed copy of a cached asset , computed once and kept with the asset ..
+    private byte[] getCompressedVariant(@NonNull AssetCache.Entry entry, @NonNull String encoding) throws IOException {
+        AssetCache cache = AssetCache.getInstance();
+
+        byte[] compressed = cache.getVariant(entry, encoding);
+        if (compressed == null) {
+            compressed = Compression.compress(entry.getData(), 0, entry.getLength(), encoding);
+            cache.putVariant(entry, encoding, compressed);
+        }
+
+        return compressed;
+    }
+
+    @NonNull
+    private static Map<String, String> copyHeaders(@Nullable Map<String, String> customHeaders) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (customHeaders != null)
+            headers.putAll(customHeaders);
+
+        return headers;
+    }
+
+    // Cache-Control configured for the route prefix , on successful responses only and unless set by the route ..
+    private void addCacheControl(int code, @NonNull Map<String, String> headers) {
+        if (cacheControl != null && code >= 200 && code < 300 && !headers.containsKey("Cache-Control"))
+            headers.put("Cache-Control", cacheControl);
+    }
+
+    /**
+     * Adds Vary: Accept-Encoding when the body could be compressed .
+     *
+     * @return the content coding to use or null to send the body as is .
+     */
+    @Nullable
+    private String negotiateEncoding(String type, long length, @NonNull Map<String, String> headers) {
+        if (compression == null || !compression.isCompressible(type, length))
+            return null;
+
+        String vary = headers.get("Vary");
+        headers.put("Vary", vary == null ? "Accept-Encoding" : vary + ", Accept-Encoding");
+
+        if (request == null)
+            return null;
+
+        return Compression.negotiate(request.getHeaders().get(ServerHelper.MAIN_HEADERS.ACCEPT_ENCODING));
+    }
+
+    private void sendMultipartRanges(String type, @NonNull Body body, @NonNull List<ByteRange> ranges,
+                                     @NonNull Map<String, String> headers) throws IOException {
+
+        String boundary = "ByteRanges" + Long.toHexString(System.nanoTime());
+
+        // Part headers are built first so the total Content-Length is known up front ..
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+
+        for (int i = 0; i < partHeaders.length; i++) {
+            ByteRange range = ranges.get(i);
+            String part = (i == 0 ? "" : "\r\n") + "--" + boundary + "\r\n" +
+                    "Content-Type: " + type + "\r\n" +
+                    "Content-Range: " + range.toContentRange(body.length) + "\r\n\r\n";
+
+            partHeaders[i] = part.getBytes("ISO-8859-1");
+            contentLength += partHeaders[i].length + range.length();
+        }
+
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+        contentLength += closing.length;
+
+        sendResponseHeader(ServerHelper.RESPONSE_CODE.PARTIAL_CONTENT,
+                ServerHelper.CONTENT_TYPE.MULTIPART_BYTE_RANGES + "; boundary=" + boundary, contentLength, headers);
+
+        for (int i = 0; i < partHeaders.length; i++) {
+            this.responseStream.write(partHeaders[i]);
+            writeRegion(body, ranges.get(i).start, ranges.get(i).length());
+        }
+
+        this.responseStream.write(closing);
+    }
+
+    /**
+     * @return the ranges to send , null to send the whole body or an empty list for 416 .
+     */
+    @Nullable
+    private List<ByteRange> getRequestedRanges(@NonNull Body body) {
+        if (request == null || !ServerHelper.METHOD.GET.equals(request.getMethod()))
+            return null;
+
+        String range = request.getHeaders().get(ServerHelper.MAIN_HEADERS.RANGE);
+        if (range == null)
+            return null;
+
+        // If-Range holds either a strong ETag or the exact Last-Modified date ..
+        String ifRange = request.getHeaders().get(ServerHelper.MAIN_HEADERS.IF_RANGE);
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(body.etag))
+                    return null;
+            } else {
+                long date = ServerHelper.parseHttpDate(ifRange);
+                if (date < 0 || body.lastModified <= 0 || date / 1000 != body.lastModified / 1000)
+                    return null;
+            }
+        }
+
+        return ByteRange.parse(range, body.length);
+    }
+
+    private void writeRegion(@NonNull Body body, long position, long count) throws IOException {
+        if (body.entry != null)
+            this.responseStream.write(body.entry.getData(), (int) position, (int) count);
+        else if (body.channel != null)
+            writeFileRegion(body.channel, body.offset + position, count);
+    }
+
+    private static byte[] readFileRegion(@NonNull FileChannel file, long position, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Asset truncated");
+        }
+
+        return buffer.array();
+    }
+
+    // Writes count bytes of the file starting at position to the response ..
+    private void writeFileRegion(@NonNull FileChannel file, long position, long count) throws IOException {
+        outputStream.transferFrom(file, position, count);
+    }
+
+    // Positional reads leave the stream position alone , asset descriptors share it with the whole APK ..
+    static void copyFileRegion(@NonNull FileChannel file, long position, long count, @NonNull OutputStream outputStream) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(FILE_BUFFER_SIZE, Math.max(count, 1)));
+        while (count > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count));
+
+            int read = file.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("File truncated while sending");
+
+            outputStream.write(buffer.array(), 0, read);
+            position += read;
+            count -= read;
+        }
     }
 
     /**
@@ -222,20 +731,33 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendFileWithPlaceHolder(int code, String type, String filename, @NonNull Map<String, String> placeHolders) throws IOException {
+        sendFileWithPlaceHolder(code, type, filename, placeHolders, false);
+    }
 
-        String page = new String(ServerHelper.loadFileAsBytes(filename, true), "UTF-8");
-        String value;
-        for (String key : placeHolders.keySet()) {
-            value = placeHolders.get(key);
-            page = page.replace(key, (value != null ? value : ""));
-        }
+    /**
+     * The file is compiled once per set of placeholders and recompiled when it is modified .
+     *
+     * @param code         custom response code
+     * @param type         Content-Type
+     * @param filename     filename for the html file to be sent .
+     * @param placeHolders data values to be replaced with placeholders in the file to be sent with the response .
+     * @param escapeHtml   true to escape &amp; &lt; &gt; &quot; and ' in the values .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void sendFileWithPlaceHolder(int code, String type, String filename, @NonNull Map<String, String> placeHolders,
+                                        boolean escapeHtml) throws IOException {
 
-        byte[] data = page.getBytes("UTF-8");
-        sendResponseHeader(code, type, data.length);
+        File file = new File(filename);
+        long version = getFileVersion(file);
 
-        this.responseStream.write(data);
-        this.responseStream.flush();
-        this.responseStream.close();
+        TemplateCache cache = TemplateCache.getInstance();
+        Template template = cache.get(filename, version, placeHolders.keySet());
+        if (template == null) {
+            template = cache.put(filename, version, placeHolders.keySet(),
+                    Template.compile(ServerHelper.loadFileAsBytes(filename, true), placeHolders.keySet()));
+        }
+
+        sendTemplate(code, type, template, placeHolders, escapeHtml);
     }
 
     /**
@@ -246,20 +768,51 @@ public class ResponseHandler {
      * @throws IOException throws exception if response channel closed .
      */
     public void sendAssetFileWithPlaceHolder(int code, String type, String filename, @NonNull Map<String, String> placeHolders) throws IOException {
+        sendAssetFileWithPlaceHolder(code, type, filename, placeHolders, false);
+    }
+
+    /**
+     * The asset is compiled once per set of placeholders .
+     *
+     * @param code         custom response code
+     * @param type         Content-Type
+     * @param filename     filename for the html file to be sent .
+     * @param placeHolders data values to be replaced with placeholders in the file to be sent with the response .
+     * @param escapeHtml   true to escape &amp; &lt; &gt; &quot; and ' in the values .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void sendAssetFileWithPlaceHolder(int code, String type, String filename, @NonNull Map<String, String> placeHolders,
+                                             boolean escapeHtml) throws IOException {
+
+        String path = "asset:" + filename;
 
-        String page = new String(ServerHelper.loadFileFromAsset(context, filename, true), "UTF-8");
-        String value;
-        for (String key : placeHolders.keySet()) {
-            value = placeHolders.get(key);
-            page = page.replace(key, (value != null ? value : ""));
+        TemplateCache cache = TemplateCache.getInstance();
+        Template template = cache.get(path, 0, placeHolders.keySet());
+        if (template == null) {
+            template = cache.put(path, 0, placeHolders.keySet(),
+                    Template.compile(AssetCache.getInstance().load(context, filename, true, type).getData(), placeHolders.keySet()));
         }
 
-        byte[] data = page.getBytes("UTF-8");
-        sendResponseHeader(code, type, data.length);
+        sendTemplate(code, type, template, placeHolders, escapeHtml);
+    }
+
+    // Values are encoded first so the length is known , then the page is written literal by literal ..
+    private void sendTemplate(int code, String type, @NonNull Template template, @NonNull Map<String, String> placeHolders,
+                              boolean escapeHtml) throws IOException {
+
+        byte[][] values = template.encode(placeHolders, escapeHtml);
+        long length = template.length(values);
+
+        HeaderWriter writer = writeResponseHeader(code, type, length, null);
+        if (length <= HeaderWriter.MAX_INLINE_BODY) {
+            template.write(writer, values);
+            writer.writeTo(this.responseStream);
+        } else {
+            writer.writeTo(this.responseStream);
+            template.write(this.responseStream, values);
+        }
 
-        this.responseStream.write(data);
         this.responseStream.flush();
-        this.responseStream.close();
     }
 
     /**
@@ -270,10 +823,7 @@ public class ResponseHandler {
      */
     public void sendResponse(int code, String type, @NonNull byte[] response) throws IOException {
 
-        sendResponseHeader(code, type, response.length);
-        this.responseStream.write(response);
-        this.responseStream.flush();
-        this.responseStream.close();
+        sendBytes(code, type, response, null);
     }
 
     /**
@@ -285,66 +835,113 @@ public class ResponseHandler {
      */
     public void sendResponse(int code, String type, @NonNull byte[] response, Map<String, String> customHeaders) throws IOException {
 
-        sendResponseHeader(code, type, response.length, customHeaders);
-        this.responseStream.write(response);
+        sendBytes(code, type, response, customHeaders);
+    }
+
+    /**
+     * Sends the frames of a live stream as multipart/x-mixed-replace until the stream is closed or the client leaves .
+     * Only the head is written here , the transport sends the frames once the route returns without holding a worker .
+     * The connection is closed afterwards .
+     *
+     * @param stream stream registered with MjpegStream.register .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void sendMjpegStream(@NonNull MjpegStream stream) throws IOException {
+        sendMjpegStream(stream, null);
+    }
+
+    /**
+     * @param stream        stream registered with MjpegStream.register .
+     * @param customHeaders headers to be sent with the response .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void sendMjpegStream(@NonNull MjpegStream stream, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        String boundary = "MjpegFrame" + Long.toHexString(System.nanoTime());
+
+        Map<String, String> headers = copyHeaders(customHeaders);
+        if (!headers.containsKey("Cache-Control"))
+            headers.put("Cache-Control", "no-cache, no-store, must-revalidate");
+
+        sendResponseHeader(ServerHelper.RESPONSE_CODE.OK,
+                ServerHelper.CONTENT_TYPE.MJPEG + "; boundary=" + boundary, -1, headers);
         this.responseStream.flush();
-        this.responseStream.close();
-    }
-
-    // Stream (Response not closed after image sent)
-    private void streamImagesToResponse(byte[] image) throws IOException {
-
-        responseStream.writeBytes("--KruscheUndPartnerPartG\r\n");
-        responseStream.writeBytes("Content-Type: " + ServerHelper.CONTENT_TYPE.JPEG + "\r\n\r\n");
-
-        responseStream.write(image);
-
-        responseStream.writeBytes("\r\n\r\n");
-        responseStream.flush();
-    }
-
-    private String getResponseDetails(int code) {
-        switch (code) {
-            case ServerHelper.RESPONSE_CODE.OK:
-                return "OK";
-            case ServerHelper.RESPONSE_CODE.BAD_REQUEST:
-                return "Bad Request";
-            case ServerHelper.RESPONSE_CODE.UNAUTHORIZED:
-                return "Unauthorized";
-            case ServerHelper.RESPONSE_CODE.FORBIDDEN:
-                return "Forbidden";
-            case ServerHelper.RESPONSE_CODE.NOT_FOUND:
-                return "Not Found";
-            case ServerHelper.RESPONSE_CODE.METHOD_NOT_ALLOWED:
-                return "Method Not Allowed";
-            case ServerHelper.RESPONSE_CODE.INTERNAL_SERVER_ERROR:
-                return "Internal Server Error";
-            default:
-                return "UnKnown";
-        }
+
+        this.pushStream = stream.open(request != null ? request.getClientAddress() : null, boundary);
+    }
+
+    /**
+     * Sends the events of a stream as text/event-stream until the stream is closed or the client leaves .
+     * Only the head is written here , the transport sends the events once the route returns without holding a worker .
+     * A client reconnecting with Last-Event-ID first receives the kept events it missed . The connection is closed afterwards .
+     *
+     * @param stream stream registered with EventStream.register .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void sendEventStream(@NonNull EventStream stream) throws IOException {
+        sendEventStream(stream, null);
+    }
+
+    /**
+     * @param stream        stream registered with EventStream.register .
+     * @param customHeaders headers to be sent with the response .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public void sendEventStream(@NonNull EventStream stream, @Nullable Map<String, String> customHeaders) throws IOException {
+
+        Map<String, String> headers = copyHeaders(customHeaders);
+        if (!headers.containsKey("Cache-Control"))
+            headers.put("Cache-Control", "no-cache");
+
+        sendResponseHeader(ServerHelper.RESPONSE_CODE.OK, ServerHelper.CONTENT_TYPE.EVENT_STREAM, -1, headers);
+        this.responseStream.flush();
+
+        this.pushStream = stream.open(request != null
+                ? request.getHeaders().get(ServerHelper.MAIN_HEADERS.LAST_EVENT_ID) : null);
     }
 
-    private void sendResponseHeader(int code, String contentType, long contentLength) throws IOException {
+    private String getConnectionHeader(long contentLength) {
+        // Without a length the end of the body is only known when the connection closes ..
+        if (contentLength == -1)
+            keepAlive = false;
 
-        String sb = "HTTP/1.1 " + code + " " + getResponseDetails(code) + "\r\n" +
-                "Date: " + new Date().toString() + "\r\n" +
-                ServerHelper.MAIN_HEADERS.CONTENT_TYPE + ": " + contentType + "\r\n" +
-                ((contentLength != -1) ? ServerHelper.MAIN_HEADERS.CONTENT_LENGTH + ": " + contentLength + "\r\n\r\n" : "\r\n");
-        this.responseStream.write(sb.getBytes());
+        committed = true;
+        return keepAlive ? "keep-alive" : "close";
     }
 
-    private void sendResponseHeader(int code, String contentType, long contentLength, @NonNull Map<String, String> customHeaders) throws IOException {
+    // Head serialized into the thread's pooled writer , not written yet ..
+    @NonNull
+    private HeaderWriter writeResponseHeader(int code, String contentType, long contentLength,
+                                             @Nullable Map<String, String> customHeaders) {
 
-        String sb = "HTTP/1.1 " + code + " " + getResponseDetails(code) + "\r\n" +
-                "Date: " + new Date().toString() + "\r\n";
+        statusCode = code;
+        HeaderWriter writer = HeaderWriter.obtain()
+                .status(code)
+                .date()
+                .header("Connection", getConnectionHeader(contentLength));
 
-        for (String key : customHeaders.keySet()) {
-            sb += key + ": " + customHeaders.get(key) + "\r\n";
+        if (customHeaders != null) {
+            for (Map.Entry<String, String> header : customHeaders.entrySet())
+                writer.header(header.getKey(), String.valueOf(header.getValue()));
         }
 
-        sb += ServerHelper.MAIN_HEADERS.CONTENT_TYPE + ": " + contentType + "\r\n" +
-                ((contentLength != -1) ? ServerHelper.MAIN_HEADERS.CONTENT_LENGTH + ": " + contentLength + "\r\n\r\n" : "\r\n");
-        this.responseStream.write(sb.getBytes());
+        if (contentLength == CHUNKED)
+            writer.header(ServerHelper.MAIN_HEADERS.TRANSFER_ENCODING, "chunked");
+
+        writer.header(ServerHelper.MAIN_HEADERS.CONTENT_TYPE, String.valueOf(contentType));
+        if (contentLength >= 0)
+            writer.header(ServerHelper.MAIN_HEADERS.CONTENT_LENGTH, contentLength);
+
+        return writer.end();
+    }
+
+    private void sendResponseHeader(int code, String contentType, long contentLength, @Nullable Map<String, String> customHeaders) throws IOException {
+        writeResponseHeader(code, contentType, contentLength, customHeaders).writeTo(this.responseStream);
+    }
+
+    // Head and a small body leave in a single write ..
+    private void sendResponseHeader(int code, String contentType, @Nullable Map<String, String> customHeaders, @NonNull byte[] body) throws IOException {
+        writeResponseHeader(code, contentType, body.length, customHeaders).writeTo(this.responseStream, body, 0, body.length);
     }
 
     public void sendSocketHansShakeHeader(@NonNull Map<String, String> headers) throws IOException {
@@ -352,7 +949,7 @@ public class ResponseHandler {
         String secSocketKey = "";
         for (String head : headers.keySet()) {
             if (head.equals(ServerHelper.MAIN_HEADERS.SEC_WEB_SOCKET_KEY)) {
-                secSocketKey = headers.get(head);
+                secSocketKey = headers.get(head).trim();
             }
         }
 
@@ -360,13 +957,95 @@ public class ResponseHandler {
 
         secSocketKey = ServerHelper.encodeString(secSocketKey);
 
-        String header = "HTTP/1.1 101 Web Socket Protocol Handshake\r\n" +
-                "Upgrade: websocket\r\n" +
-                "Connection: Upgrade\r\n" +
-                "Access-Control-Allow-Origin: *\r\n" +
-                "Sec-WebSocket-Accept:" + secSocketKey + "\r\n\r\n";
-        //printStream.print(header);
+        keepAlive = false;
+        committed = true;
+        statusCode = ServerHelper.RESPONSE_CODE.SWITCHING_PROTOCOLS;
+
+        HeaderWriter.obtain()
+                .status(ServerHelper.RESPONSE_CODE.SWITCHING_PROTOCOLS)
+                .header("Upgrade", "websocket")
+                .header("Connection", "Upgrade")
+                .header("Access-Control-Allow-Origin", "*")
+                .header(ServerHelper.MAIN_HEADERS.SEC_WEB_SOCKET_ACCEPT, secSocketKey)
+                .end()
+                .writeTo(this.responseStream);
+        this.responseStream.flush();
+    }
+
+    /**
+     * Answers a WebSocket upgrade request , the connection is handed to the callback once the route returns .
+     * Requests that are not a valid version 13 upgrade get 400 or 426 instead .
+     *
+     * @param callBack receives the messages and events of the socket .
+     * @return true when the handshake was sent .
+     * @throws IOException throws exception if response channel closed .
+     */
+    public boolean upgradeToWebSocket(@NonNull WebSocketCallBack callBack) throws IOException {
+        Map<String, String> headers = request != null ? request.getHeaders() : null;
+
+        String upgrade = headers != null ? headers.get(ServerHelper.MAIN_HEADERS.UPGRADE) : null;
+        String connection = headers != null ? headers.get(ServerHelper.MAIN_HEADERS.CONNECTION) : null;
+        String key = headers != null ? headers.get(ServerHelper.MAIN_HEADERS.SEC_WEB_SOCKET_KEY) : null;
 
-        this.responseStream.write(header.getBytes());
+        if (!"websocket".equalsIgnoreCase(upgrade == null ? null : upgrade.trim()) || connection == null
+                || !connection.toLowerCase().contains("upgrade") || key == null || key.trim().isEmpty()) {
+            keepAlive = false;
+            sendJsonResponse(ServerHelper.RESPONSE_CODE.BAD_REQUEST,
+                    "{\"status\":false,\"error\":\"Error 400 Bad WebSocket Upgrade Request !\"}");
+            return false;
+        }
+
+        String version = headers.get(ServerHelper.MAIN_HEADERS.SEC_WEB_SOCKET_VERSION);
+        if (version == null || !version.trim().equals("13")) {
+            Map<String, String> versionHeaders = new LinkedHashMap<>();
+            versionHeaders.put("Sec-WebSocket-Version", "13");
+
+            keepAlive = false;
+            sendJsonResponse(ServerHelper.RESPONSE_CODE.UPGRADE_REQUIRED,
+                    "{\"status\":false,\"error\":\"Error 426 Upgrade Required !\"}", versionHeaders);
+            return false;
+        }
+
+        sendSocketHansShakeHeader(headers);
+        this.webSocketCallBack = callBack;
+        return true;
+    }
+
+    /**
+     * @return callback of the WebSocket this response upgraded the connection to , null for plain responses .
+     */
+    @Nullable
+    public WebSocketCallBack getWebSocketCallBack() {
+        return webSocketCallBack;
+    }
+
+    /**
+     * @return stream the transport keeps writing once the route returns , null for plain responses .
+     */
+    @Nullable
+    public PushStream getPushStream() {
+        return pushStream;
+    }
+
+    // Body of a file or asset response , either in memory or a region of a file , with its validators ..
+    private static class Body {
+        @Nullable
+        final AssetCache.Entry entry;
+        @Nullable
+        final FileChannel channel;
+        final long offset;
+        final long length;
+
+        // Milliseconds , 0 when unknown ..
+        long lastModified;
+        @Nullable
+        String etag;
+
+        Body(@Nullable AssetCache.Entry entry, @Nullable FileChannel channel, long offset, long length) {
+            this.entry = entry;
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
     }
 }
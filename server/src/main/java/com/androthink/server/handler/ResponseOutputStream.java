@@ -0,0 +1,136 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered response output of a connection , nothing reaches the socket until the buffer fills or flush() is called
+ * at the end of a response . On the NIO transport a large write is gathered with the buffered bytes into a single
+ * channel write and files are handed to the socket with transferTo .
+ * Bytes and writes are counted so the cost of each response can be measured .
+ */
+public class ResponseOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final OutputStream outputStream;
+    // Set on the NIO transport ..
+    private final ChannelOutputStream channelStream;
+    private final int bufferSize;
+
+    // Allocated on the first write , idle connections do not hold a buffer ..
+    private byte[] buffer;
+    private int count = 0;
+
+    private long bytesWritten = 0;
+    private long writeCount = 0;
+
+    /**
+     * @param outputStream connection output , a ChannelOutputStream enables gathering writes and zero copy files .
+     * @param bufferSize   bytes kept before writing to the connection .
+     */
+    public ResponseOutputStream(@NonNull OutputStream outputStream, int bufferSize) {
+        this.outputStream = outputStream;
+        this.channelStream = outputStream instanceof ChannelOutputStream ? (ChannelOutputStream) outputStream : null;
+        this.bufferSize = Math.max(bufferSize, 512);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffer == null)
+            buffer = new byte[bufferSize];
+        else if (count == buffer.length)
+            flushBuffer();
+
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (buffer == null)
+            buffer = new byte[bufferSize];
+
+        if (len <= buffer.length - count) {
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+            return;
+        }
+
+        if (len < buffer.length) {
+            // Fits once the buffered bytes are gone ..
+            flushBuffer();
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+            return;
+        }
+
+        if (channelStream != null && count > 0) {
+            // Buffered head and large body in one gathering write ..
+            channelStream.write(new ByteBuffer[]{ByteBuffer.wrap(buffer, 0, count), ByteBuffer.wrap(b, off, len)});
+            countWrite(count + len);
+            count = 0;
+            return;
+        }
+
+        flushBuffer();
+        outputStream.write(b, off, len);
+        countWrite(len);
+    }
+
+    /**
+     * Sends count bytes of file starting at position , straight from the file to the socket on the NIO transport .
+     */
+    void transferFrom(@NonNull FileChannel file, long position, long count) throws IOException {
+        if (channelStream == null) {
+            ResponseHandler.copyFileRegion(file, position, count, this);
+            return;
+        }
+
+        flushBuffer();
+        channelStream.transferFrom(file, position, count);
+        countWrite(count);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        outputStream.flush();
+    }
+
+    // Buffered bytes only , the connection is never closed here ..
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * @return bytes handed to the connection so far , buffered bytes not included .
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return writes made to the connection so far , each one costs at least one system call .
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            outputStream.write(buffer, 0, count);
+            countWrite(count);
+            count = 0;
+        }
+    }
+
+    private void countWrite(long bytes) {
+        bytesWritten += bytes;
+        writeCount++;
+    }
+}
@@ -0,0 +1,180 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Page split once into literal byte ranges and placeholder slots , rendered in a single pass without copying the page ..
+class Template {
+
+    private final byte[] source;
+    // Literal i is source[literalStarts[i] , literalEnds[i]) , slot i sits between literal i and literal i + 1 ..
+    private final int[] literalStarts;
+    private final int[] literalEnds;
+    private final String[] slots;
+
+    private Template(byte[] source, int[] literalStarts, int[] literalEnds, String[] slots) {
+        this.source = source;
+        this.literalStarts = literalStarts;
+        this.literalEnds = literalEnds;
+        this.slots = slots;
+    }
+
+    /**
+     * Finds every occurrence of the placeholder keys in the UTF-8 page , the longest key wins when several match at the same place .
+     *
+     * @param source page bytes , kept by the template .
+     * @param keys   placeholders to look for .
+     */
+    @NonNull
+    static Template compile(@NonNull byte[] source, @NonNull Collection<String> keys) throws UnsupportedEncodingException {
+        List<String> names = new ArrayList<>();
+        List<byte[]> patterns = new ArrayList<>();
+        for (String key : keys) {
+            if (key != null && !key.isEmpty()) {
+                names.add(key);
+                patterns.add(key.getBytes("UTF-8"));
+            }
+        }
+
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+
+        int literalStart = 0;
+        int i = 0;
+        while (i < source.length) {
+            int match = -1;
+            for (int k = 0; k < patterns.size(); k++) {
+                byte[] pattern = patterns.get(k);
+                if ((match < 0 || pattern.length > patterns.get(match).length) && regionMatches(source, i, pattern))
+                    match = k;
+            }
+
+            if (match < 0) {
+                i++;
+                continue;
+            }
+
+            starts.add(literalStart);
+            ends.add(i);
+            slots.add(names.get(match));
+
+            i += patterns.get(match).length;
+            literalStart = i;
+        }
+
+        starts.add(literalStart);
+        ends.add(source.length);
+
+        return new Template(source, toArray(starts), toArray(ends), slots.toArray(new String[0]));
+    }
+
+    /**
+     * @return the UTF-8 value of every slot , null values are rendered empty .
+     */
+    @NonNull
+    byte[][] encode(@NonNull Map<String, String> values, boolean escapeHtml) throws UnsupportedEncodingException {
+        byte[][] encoded = new byte[slots.length][];
+        for (int i = 0; i < slots.length; i++) {
+            String value = values.get(slots[i]);
+            if (value == null)
+                value = "";
+
+            encoded[i] = (escapeHtml ? escapeHtml(value) : value).getBytes("UTF-8");
+        }
+
+        return encoded;
+    }
+
+    /**
+     * @return rendered size in bytes with the values returned by encode() .
+     */
+    long length(@NonNull byte[][] encoded) {
+        long length = 0;
+        for (int i = 0; i < literalStarts.length; i++)
+            length += literalEnds[i] - literalStarts[i];
+
+        for (byte[] value : encoded)
+            length += value.length;
+
+        return length;
+    }
+
+    void write(@NonNull OutputStream outputStream, @NonNull byte[][] encoded) throws IOException {
+        for (int i = 0; i < literalStarts.length; i++) {
+            if (literalEnds[i] > literalStarts[i])
+                outputStream.write(source, literalStarts[i], literalEnds[i] - literalStarts[i]);
+
+            if (i < encoded.length)
+                outputStream.write(encoded[i]);
+        }
+    }
+
+    int getSlotCount() {
+        return slots.length;
+    }
+
+    @NonNull
+    static String escapeHtml(@NonNull String value) {
+        StringBuilder escaped = null;
+
+        for (int i = 0; i < value.length(); i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    if (escaped != null)
+                        escaped.append(value.charAt(i));
+                    continue;
+            }
+
+            if (escaped == null)
+                escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+
+            escaped.append(replacement);
+        }
+
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    private static boolean regionMatches(byte[] source, int start, byte[] pattern) {
+        if (start + pattern.length > source.length)
+            return false;
+
+        for (int i = 0; i < pattern.length; i++) {
+            if (source[start + i] != pattern[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = values.get(i);
+
+        return array;
+    }
+}
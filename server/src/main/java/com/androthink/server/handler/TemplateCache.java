@@ -0,0 +1,77 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiled templates per page and placeholder key set , least recently used ones are dropped above MAX_TEMPLATES ..
+class TemplateCache {
+
+    private static final int MAX_TEMPLATES = 64;
+
+    private static TemplateCache templateCache = null;
+
+    private final LinkedHashMap<String, Compiled> templates = new LinkedHashMap<String, Compiled>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    static synchronized TemplateCache getInstance() {
+        if (templateCache == null)
+            templateCache = new TemplateCache();
+
+        return templateCache;
+    }
+
+    private TemplateCache() {
+    }
+
+    /**
+     * @param version changes when the page changes ( file modification time ) , a stale template is never returned .
+     */
+    @Nullable
+    synchronized Template get(@NonNull String path, long version, @NonNull Collection<String> keys) {
+        Compiled compiled = templates.get(key(path, keys));
+        return compiled != null && compiled.version == version ? compiled.template : null;
+    }
+
+    @NonNull
+    synchronized Template put(@NonNull String path, long version, @NonNull Collection<String> keys, @NonNull Template template) {
+        templates.put(key(path, keys), new Compiled(version, template));
+        return template;
+    }
+
+    synchronized void clear() {
+        templates.clear();
+    }
+
+    // The same page rendered with another key set has other slots ..
+    private static String key(String path, Collection<String> keys) {
+        List<String> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted);
+
+        StringBuilder key = new StringBuilder(path);
+        for (String name : sorted)
+            key.append('\u0000').append(name);
+
+        return key.toString();
+    }
+
+    private static class Compiled {
+        private final long version;
+        private final Template template;
+
+        Compiled(long version, Template template) {
+            this.version = version;
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.model.Request;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One upgraded connection ( see WebSocketRoute ) . Messages are queued and written by the transport without
+ * blocking the sender , a client that can not keep up has new messages dropped once maxQueuedBytes are waiting .
+ * Sockets subscribed to a topic receive every broadcast to it , the frame is encoded once for all of them .
+ */
+public abstract class WebSocket {
+
+    public class CLOSE_CODE {
+        public static final int NORMAL = 1000;
+        public static final int GOING_AWAY = 1001;
+        public static final int PROTOCOL_ERROR = 1002;
+        public static final int UNSUPPORTED_DATA = 1003;
+        public static final int NO_STATUS = 1005;
+        public static final int ABNORMAL = 1006;
+        public static final int INVALID_PAYLOAD = 1007;
+        public static final int POLICY_VIOLATION = 1008;
+        public static final int MESSAGE_TOO_BIG = 1009;
+        public static final int INTERNAL_ERROR = 1011;
+    }
+
+    // Time a client has to answer our close frame before the connection is dropped ..
+    private static final long CLOSE_TIMEOUT_MILLIS = 5 * 1000;
+    // Frames handed to a single gathering write ..
+    private static final int MAX_GATHER = 16;
+
+    private static final ConcurrentMap<String, Set<WebSocket>> topics = new ConcurrentHashMap<>();
+    private static final AtomicInteger openSockets = new AtomicInteger();
+
+    private final Request request;
+    private final WebSocketCallBack callBack;
+    private final WebSocketCodec.Decoder decoder;
+    private final long maxQueuedBytes;
+
+    // Encoded frames waiting for the transport , only the transport's writer removes them ..
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final Set<String> subscriptions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    private final AtomicBoolean opened = new AtomicBoolean();
+    private final AtomicBoolean closeSent = new AtomicBoolean();
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    private volatile long closeSentAt = 0;
+    // Set once the close handshake is over or failed , the connection ends when the queue drains ..
+    private volatile boolean closeAfterFlush = false;
+
+    private volatile int closeCode = CLOSE_CODE.ABNORMAL;
+    private volatile String closeReason = "";
+
+    /**
+     * @param request        upgrade request .
+     * @param callBack       receives the messages and events of this socket .
+     * @param maxMessageSize largest message accepted from the client , bigger ones close the socket with 1009 .
+     * @param maxQueuedBytes bytes allowed to wait for the client before new messages are dropped .
+     */
+    protected WebSocket(@NonNull Request request, @NonNull WebSocketCallBack callBack, long maxMessageSize, long maxQueuedBytes) {
+        this.request = request;
+        this.callBack = callBack;
+        this.decoder = new WebSocketCodec.Decoder(maxMessageSize);
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Sends a text message to every socket subscribed to the topic .
+     *
+     * @return sockets the message was queued for .
+     */
+    public static int broadcast(@NonNull String topic, @NonNull String text) {
+        byte[] payload = WebSocketCodec.toUtf8(text);
+        return broadcast(topic, WebSocketCodec.encode(WebSocketCodec.OPCODE_TEXT, payload, 0, payload.length));
+    }
+
+    /**
+     * Sends a binary message to every socket subscribed to the topic .
+     *
+     * @return sockets the message was queued for .
+     */
+    public static int broadcast(@NonNull String topic, @NonNull byte[] data) {
+        return broadcast(topic, WebSocketCodec.encode(WebSocketCodec.OPCODE_BINARY, data, 0, data.length));
+    }
+
+    private static int broadcast(String topic, ByteBuffer frame) {
+        Set<WebSocket> subscribers = topics.get(topic);
+        if (subscribers == null)
+            return 0;
+
+        int count = 0;
+        for (WebSocket webSocket : subscribers) {
+            if (webSocket.enqueue(frame.duplicate(), false))
+                count++;
+        }
+
+        return count;
+    }
+
+    public static int getSubscriberCount(@NonNull String topic) {
+        Set<WebSocket> subscribers = topics.get(topic);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    /**
+     * @return sockets opened and not yet closed , on both transports .
+     */
+    public static int getOpenCount() {
+        return openSockets.get();
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    @Nullable
+    public String getClientAddress() {
+        return request.getClientAddress();
+    }
+
+    /**
+     * @return true until a close frame is sent or the connection is lost .
+     */
+    public boolean isOpen() {
+        return !closeSent.get() && !terminated.get();
+    }
+
+    /**
+     * @return false when the message was dropped because the socket is closed or too much is waiting for the client .
+     */
+    public boolean send(@NonNull String text) {
+        byte[] payload = WebSocketCodec.toUtf8(text);
+        return enqueue(WebSocketCodec.encode(WebSocketCodec.OPCODE_TEXT, payload, 0, payload.length), false);
+    }
+
+    /**
+     * @return false when the message was dropped because the socket is closed or too much is waiting for the client .
+     */
+    public boolean send(@NonNull byte[] data) {
+        return enqueue(WebSocketCodec.encode(WebSocketCodec.OPCODE_BINARY, data, 0, data.length), false);
+    }
+
+    /**
+     * @param data up to 125 bytes echoed back by the client in a pong .
+     */
+    public boolean ping(@NonNull byte[] data) {
+        if (data.length > 125)
+            throw new IllegalArgumentException("Ping payload longer than 125 bytes");
+
+        return enqueue(WebSocketCodec.encode(WebSocketCodec.OPCODE_PING, data, 0, data.length), true);
+    }
+
+    public void close() {
+        close(CLOSE_CODE.NORMAL, "");
+    }
+
+    /**
+     * Starts the close handshake , the connection ends once the client answers or after a few seconds .
+     *
+     * @param code   close code sent to the client , see {@link CLOSE_CODE} .
+     * @param reason short reason , cut to 123 bytes .
+     */
+    public void close(int code, @NonNull String reason) {
+        sendClose(code, reason);
+    }
+
+    public void subscribe(@NonNull String topic) {
+        if (terminated.get())
+            return;
+
+        Set<WebSocket> subscribers = topics.get(topic);
+        if (subscribers == null) {
+            Set<WebSocket> created = new CopyOnWriteArraySet<>();
+            subscribers = topics.putIfAbsent(topic, created);
+            if (subscribers == null)
+                subscribers = created;
+        }
+
+        subscribers.add(this);
+        subscriptions.add(topic);
+
+        // Lost the connection while subscribing ..
+        if (terminated.get())
+            subscribers.remove(this);
+    }
+
+    public void unsubscribe(@NonNull String topic) {
+        subscriptions.remove(topic);
+
+        Set<WebSocket> subscribers = topics.get(topic);
+        if (subscribers != null)
+            subscribers.remove(this);
+    }
+
+    /**
+     * @return bytes queued and not written to the connection yet .
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @return messages dropped because the client did not read fast enough .
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    // Transport hooks ..
+
+    // A frame was queued , the transport schedules a write ..
+    protected abstract void onQueued();
+
+    // Closes the underlying connection , called once ..
+    protected abstract void closeConnection();
+
+    /**
+     * Runs a user callback , inline by default , transports reading on a shared thread hand it to another one .
+     */
+    protected void dispatch(@NonNull Runnable runnable) {
+        runnable.run();
+    }
+
+    // Called by the transport once it reads frames from the connection ..
+    protected void onOpen() {
+        if (opened.compareAndSet(false, true))
+            openSockets.incrementAndGet();
+
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callBack.onOpen(WebSocket.this);
+                } catch (RuntimeException e) {
+                    onCallBackError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes bytes received from the client .
+     *
+     * @return false when nothing more should be read , after a close frame or a protocol error .
+     */
+    protected boolean onReceived(@NonNull byte[] data, int offset, int length) {
+        if (closeAfterFlush || terminated.get())
+            return false;
+
+        try {
+            decoder.feed(data, offset, length, listener);
+        } catch (WebSocketCodec.CloseException e) {
+            closeCode = e.getCode();
+            closeReason = String.valueOf(e.getMessage());
+            sendClose(e.getCode(), closeReason);
+            finishAfterFlush();
+        }
+
+        return !closeAfterFlush;
+    }
+
+    protected boolean hasQueuedFrames() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Writes queued frames without blocking , a few at a time with gathering writes .
+     *
+     * @return true when the queue is empty , false when the channel can not take more now .
+     */
+    protected boolean writeTo(@NonNull GatheringByteChannel channel) throws IOException {
+        while (true) {
+            int count = 0;
+            Iterator<ByteBuffer> frames = queue.iterator();
+            while (count < MAX_GATHER && frames.hasNext())
+                gather[count++] = frames.next();
+
+            if (count == 0) {
+                onDrained();
+                return true;
+            }
+
+            channel.write(gather, 0, count);
+
+            for (int i = 0; i < count; i++) {
+                if (gather[i].hasRemaining())
+                    break;
+
+                queue.poll();
+                queuedBytes.addAndGet(-gather[i].limit());
+            }
+
+            boolean blocked = gather[count - 1].hasRemaining();
+            for (int i = 0; i < count; i++)
+                gather[i] = null;
+
+            if (blocked)
+                return false;
+        }
+    }
+
+    /**
+     * Writes queued frames blocking until all of them are sent , then flushes .
+     */
+    protected void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        ByteBuffer frame;
+        while ((frame = queue.peek()) != null) {
+            outputStream.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            queue.poll();
+            queuedBytes.addAndGet(-frame.limit());
+        }
+
+        outputStream.flush();
+        onDrained();
+    }
+
+    /**
+     * @return true when our close frame was not answered in time .
+     */
+    protected boolean isCloseTimedOut(long now) {
+        return closeSent.get() && now - closeSentAt > CLOSE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Called by the transport when the connection is lost or must end , runs once .
+     */
+    protected void onConnectionClosed() {
+        if (!terminated.compareAndSet(false, true))
+            return;
+
+        if (opened.get())
+            openSockets.decrementAndGet();
+
+        for (String topic : subscriptions)
+            unsubscribe(topic);
+
+        queue.clear();
+        queuedBytes.set(0);
+
+        closeConnection();
+
+        final int code = closeCode;
+        final String reason = closeReason;
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callBack.onClose(WebSocket.this, code, reason);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private boolean enqueue(ByteBuffer frame, boolean control) {
+        if (closeSent.get() || terminated.get())
+            return false;
+
+        return add(frame, control);
+    }
+
+    private boolean add(ByteBuffer frame, boolean control) {
+        int length = frame.remaining();
+
+        // Control frames are tiny and must not be lost ..
+        if (!control && queuedBytes.get() + length > maxQueuedBytes) {
+            droppedMessages.incrementAndGet();
+            return false;
+        }
+
+        queuedBytes.addAndGet(length);
+        queue.add(frame);
+        onQueued();
+        return true;
+    }
+
+    private void sendClose(int code, String reason) {
+        if (terminated.get() || !closeSent.compareAndSet(false, true))
+            return;
+
+        closeSentAt = System.currentTimeMillis();
+        add(WebSocketCodec.encodeClose(code, reason), true);
+    }
+
+    private void finishAfterFlush() {
+        closeAfterFlush = true;
+        onQueued();
+    }
+
+    private void onDrained() {
+        if (closeAfterFlush && queue.isEmpty())
+            onConnectionClosed();
+    }
+
+    private void onCallBackError(RuntimeException e) {
+        e.printStackTrace();
+
+        closeCode = CLOSE_CODE.INTERNAL_ERROR;
+        closeReason = String.valueOf(e.getMessage());
+        sendClose(CLOSE_CODE.INTERNAL_ERROR, "Internal Server Error");
+    }
+
+    // Decoded frames , runs on the reading thread ..
+    private final WebSocketCodec.Listener listener = new WebSocketCodec.Listener() {
+        @Override
+        public void onText(@NonNull final String text) {
+            // Frames behind a close frame are ignored ..
+            if (closeAfterFlush)
+                return;
+
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callBack.onMessage(WebSocket.this, text);
+                    } catch (RuntimeException e) {
+                        onCallBackError(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onBinary(@NonNull final byte[] data) {
+            if (closeAfterFlush)
+                return;
+
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callBack.onMessage(WebSocket.this, data);
+                    } catch (RuntimeException e) {
+                        onCallBackError(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onPing(@NonNull byte[] data) {
+            // Answered right away , even after our close frame the client may still ping ..
+            if (!closeSent.get() && !terminated.get())
+                add(WebSocketCodec.encode(WebSocketCodec.OPCODE_PONG, data, 0, data.length), true);
+        }
+
+        @Override
+        public void onPong(@NonNull byte[] data) {
+            // Nothing to do , any received frame proves the client is alive ..
+        }
+
+        @Override
+        public void onClose(int code, @NonNull String reason) {
+            closeCode = code;
+            closeReason = reason;
+
+            // Echo the close frame unless we started the handshake ..
+            sendClose(code == CLOSE_CODE.NO_STATUS ? CLOSE_CODE.NORMAL : code, "");
+            finishAfterFlush();
+        }
+    };
+}
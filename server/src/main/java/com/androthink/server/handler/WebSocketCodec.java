@@ -0,0 +1,322 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+// RFC 6455 framing , server frames are sent unmasked and in one piece , client frames must be masked and may be fragmented ..
+class WebSocketCodec {
+
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private WebSocketCodec() {
+    }
+
+    @NonNull
+    static ByteBuffer encode(int opcode, @NonNull byte[] payload, int offset, int length) {
+        int headerLength = length < 126 ? 2 : length <= 0xffff ? 4 : 10;
+        byte[] frame = new byte[headerLength + length];
+
+        frame[0] = (byte) (0x80 | opcode);
+        if (length < 126) {
+            frame[1] = (byte) length;
+        } else if (length <= 0xffff) {
+            frame[1] = 126;
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+        } else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++)
+                frame[2 + i] = (byte) ((long) length >>> (56 - 8 * i));
+        }
+
+        System.arraycopy(payload, offset, frame, headerLength, length);
+        return ByteBuffer.wrap(frame);
+    }
+
+    @NonNull
+    static ByteBuffer encodeClose(int code, @NonNull String reason) {
+        byte[] text = toUtf8(reason);
+        int length = Math.min(text.length, MAX_CONTROL_PAYLOAD - 2);
+
+        byte[] payload = new byte[2 + length];
+        payload[0] = (byte) (code >>> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(text, 0, payload, 2, length);
+
+        return encode(OPCODE_CLOSE, payload, 0, payload.length);
+    }
+
+    @NonNull
+    static byte[] toUtf8(@NonNull String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Text messages must be valid UTF-8 , a lenient decoder would hide broken clients ..
+    @NonNull
+    static String decodeUtf8(@NonNull byte[] data, int offset, int length) throws CloseException {
+        try {
+            CharBuffer text = UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data, offset, length));
+            return text.toString();
+        } catch (CharacterCodingException e) {
+            throw new CloseException(WebSocket.CLOSE_CODE.INVALID_PAYLOAD, "Invalid UTF-8");
+        }
+    }
+
+    // Protocol violation , the connection is closed with code ..
+    static class CloseException extends IOException {
+        private final int code;
+
+        CloseException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+
+        int getCode() {
+            return code;
+        }
+    }
+
+    interface Listener {
+        void onText(@NonNull String text);
+
+        void onBinary(@NonNull byte[] data);
+
+        void onPing(@NonNull byte[] data);
+
+        void onPong(@NonNull byte[] data);
+
+        void onClose(int code, @NonNull String reason);
+    }
+
+    /**
+     * Incremental decoder of the frames sent by one client , bytes are fed as they arrive and complete messages
+     * ( fragments joined , payload unmasked ) are handed to the listener .
+     */
+    static class Decoder {
+        private final long maxMessageSize;
+
+        // Received bytes not decoded yet are buffer[start , end) ..
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        private int start = 0;
+        private int end = 0;
+
+        // Fragmented message being joined , -1 when none ..
+        private int messageOpcode = -1;
+        private byte[] message = null;
+        private int messageLength = 0;
+
+        Decoder(long maxMessageSize) {
+            this.maxMessageSize = maxMessageSize;
+        }
+
+        void feed(@NonNull byte[] data, int offset, int length, @NonNull Listener listener) throws CloseException {
+            ensureCapacity(length);
+            System.arraycopy(data, offset, buffer, end, length);
+            end += length;
+
+            while (decodeFrame(listener)) {
+                // Next frame ..
+            }
+
+            if (start == end) {
+                start = 0;
+                end = 0;
+            }
+        }
+
+        private boolean decodeFrame(Listener listener) throws CloseException {
+            int available = end - start;
+            if (available < 2)
+                return false;
+
+            int b0 = buffer[start] & 0xff;
+            int b1 = buffer[start + 1] & 0xff;
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0f;
+            boolean control = (opcode & 0x08) != 0;
+
+            if ((b0 & 0x70) != 0)
+                throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Reserved bits set");
+            if ((b1 & 0x80) == 0)
+                throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Client frame not masked");
+
+            if (control) {
+                if (opcode != OPCODE_CLOSE && opcode != OPCODE_PING && opcode != OPCODE_PONG)
+                    throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Unknown opcode");
+            } else if (opcode != OPCODE_CONTINUATION && opcode != OPCODE_TEXT && opcode != OPCODE_BINARY) {
+                throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Unknown opcode");
+            }
+
+            long length = b1 & 0x7f;
+            int headerLength = 2;
+            if (length == 126) {
+                if (available < 4)
+                    return false;
+
+                length = ((buffer[start + 2] & 0xff) << 8) | (buffer[start + 3] & 0xff);
+                headerLength = 4;
+            } else if (length == 127) {
+                if (available < 10)
+                    return false;
+
+                length = 0;
+                for (int i = 0; i < 8; i++)
+                    length = (length << 8) | (buffer[start + 2 + i] & 0xff);
+
+                if (length < 0)
+                    throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Invalid frame length");
+                headerLength = 10;
+            }
+
+            if (control && (!fin || length > MAX_CONTROL_PAYLOAD))
+                throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Invalid control frame");
+
+            if (!control) {
+                if (opcode == OPCODE_CONTINUATION ? messageOpcode < 0 : messageOpcode >= 0)
+                    throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Unexpected fragment");
+                if (messageLength + length > maxMessageSize)
+                    throw new CloseException(WebSocket.CLOSE_CODE.MESSAGE_TOO_BIG, "Message too big");
+            }
+
+            int maskOffset = start + headerLength;
+            int frameLength = headerLength + 4 + (int) length;
+            if (available < frameLength) {
+                ensureCapacity(frameLength - available);
+                return false;
+            }
+
+            int payloadOffset = maskOffset + 4;
+            int payloadLength = (int) length;
+            unmask(buffer, maskOffset, payloadOffset, payloadLength);
+            start += frameLength;
+
+            if (control) {
+                onControlFrame(opcode, payloadOffset, payloadLength, listener);
+            } else if (fin && opcode != OPCODE_CONTINUATION) {
+                // Whole message in one frame , no joining copy ..
+                deliver(opcode, buffer, payloadOffset, payloadLength, listener);
+            } else {
+                if (opcode != OPCODE_CONTINUATION) {
+                    messageOpcode = opcode;
+                    messageLength = 0;
+                    message = new byte[Math.max(payloadLength, INITIAL_BUFFER_SIZE)];
+                }
+
+                appendFragment(payloadOffset, payloadLength);
+
+                if (fin) {
+                    int completedOpcode = messageOpcode;
+                    byte[] completed = message;
+                    int completedLength = messageLength;
+
+                    messageOpcode = -1;
+                    message = null;
+                    messageLength = 0;
+
+                    deliver(completedOpcode, completed, 0, completedLength, listener);
+                }
+            }
+
+            return true;
+        }
+
+        private void onControlFrame(int opcode, int offset, int length, Listener listener) throws CloseException {
+            switch (opcode) {
+                case OPCODE_PING:
+                    listener.onPing(copy(buffer, offset, length));
+                    break;
+                case OPCODE_PONG:
+                    listener.onPong(copy(buffer, offset, length));
+                    break;
+                default:
+                    if (length == 0) {
+                        listener.onClose(WebSocket.CLOSE_CODE.NO_STATUS, "");
+                    } else if (length == 1) {
+                        throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Invalid close frame");
+                    } else {
+                        int code = ((buffer[offset] & 0xff) << 8) | (buffer[offset + 1] & 0xff);
+                        if (!isValidCloseCode(code))
+                            throw new CloseException(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, "Invalid close code");
+
+                        listener.onClose(code, decodeUtf8(buffer, offset + 2, length - 2));
+                    }
+                    break;
+            }
+        }
+
+        private static void deliver(int opcode, byte[] data, int offset, int length, Listener listener) throws CloseException {
+            if (opcode == OPCODE_TEXT)
+                listener.onText(decodeUtf8(data, offset, length));
+            else
+                listener.onBinary(copy(data, offset, length));
+        }
+
+        private void appendFragment(int offset, int length) {
+            if (messageLength + length > message.length) {
+                byte[] grown = new byte[Math.max(message.length * 2, messageLength + length)];
+                System.arraycopy(message, 0, grown, 0, messageLength);
+                message = grown;
+            }
+
+            System.arraycopy(buffer, offset, message, messageLength, length);
+            messageLength += length;
+        }
+
+        // Room for extra more bytes after end , decoded bytes are dropped first ..
+        private void ensureCapacity(int extra) {
+            if (end + extra <= buffer.length)
+                return;
+
+            int pending = end - start;
+            if (pending + extra <= buffer.length) {
+                System.arraycopy(buffer, start, buffer, 0, pending);
+            } else {
+                byte[] grown = new byte[Math.max(buffer.length * 2, pending + extra)];
+                System.arraycopy(buffer, start, grown, 0, pending);
+                buffer = grown;
+            }
+
+            start = 0;
+            end = pending;
+        }
+
+        private static void unmask(byte[] data, int maskOffset, int offset, int length) {
+            for (int i = 0; i < length; i++)
+                data[offset + i] ^= data[maskOffset + (i & 3)];
+        }
+
+        private static byte[] copy(byte[] data, int offset, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return copy;
+        }
+
+        private static boolean isValidCloseCode(int code) {
+            return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1011) || (code >= 3000 && code <= 4999);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.androthink.server.helper;
+
+import androidx.annotation.NonNull;
+
+// Gives every accepted connection its id , called on the accept path so it must be cheap and thread safe ..
+public interface RequestIdGenerator {
+    /**
+     * @return an id not returned before by this generator .
+     */
+    @NonNull
+    String nextId();
+}
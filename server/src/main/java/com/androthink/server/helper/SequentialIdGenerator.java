@@ -0,0 +1,62 @@
+package com.androthink.server.helper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Default RequestIdGenerator , a prefix unique to this instance followed by a counter , both in base 36 ..
+// e.g. "kq3x9p2a-1b" , ids never repeat in the process but do not sort as strings ( "node-z" > "node-10" ) .
+public class SequentialIdGenerator implements RequestIdGenerator {
+
+    private static final char[] DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+    // Long.MAX_VALUE in base 36 ..
+    private static final int MAX_COUNTER_DIGITS = 13;
+
+    // Last default prefix handed out , shared by every instance of the process ..
+    private static final AtomicLong lastPrefix = new AtomicLong();
+
+    private final char[] prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * Prefixed with the creation time so ids of a restarted server do not repeat earlier ones ,
+     * moved past the prefix of the previous instance so two generators never share one .
+     */
+    public SequentialIdGenerator() {
+        this(Long.toString(nextPrefix(), 36));
+    }
+
+    /**
+     * @param prefix e.g. a device or node name , "-" is appended .
+     */
+    public SequentialIdGenerator(@NonNull String prefix) {
+        this.prefix = (prefix + "-").toCharArray();
+    }
+
+    private static long nextPrefix() {
+        while (true) {
+            long last = lastPrefix.get();
+            long next = Math.max(System.currentTimeMillis(), last + 1);
+            if (lastPrefix.compareAndSet(last, next))
+                return next;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String nextId() {
+        long value = counter.incrementAndGet();
+
+        // Digits written from the end straight into the result , no StringBuilder ..
+        char[] id = new char[prefix.length + MAX_COUNTER_DIGITS];
+        int position = id.length;
+        do {
+            id[--position] = DIGITS[(int) (value % 36)];
+            value /= 36;
+        } while (value != 0);
+
+        int start = position - prefix.length;
+        System.arraycopy(prefix, 0, id, start, prefix.length);
+        return new String(id, start, id.length - start);
+    }
+}
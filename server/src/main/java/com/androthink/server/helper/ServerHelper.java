@@ -9,6 +9,7 @@ import android.util.Base64;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RawRes;
 
 import java.io.BufferedInputStream;
@@ -18,6 +19,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 import java.util.UUID;
 
 public class ServerHelper {
@@ -32,9 +38,19 @@ public class ServerHelper {
         public static final String CONTENT_TYPE = "content-type";
         public static final String AUTHORIZATION = "authorization";
         public static final String CONTENT_LENGTH = "content-length";
+        public static final String CONNECTION = "connection";
+        public static final String UPGRADE = "upgrade";
+        public static final String TRANSFER_ENCODING = "transfer-encoding";
         public static final String SEC_WEB_SOCKET_KEY = "sec-websocket-key";
         public static final String SEC_WEB_SOCKET_ACCEPT = "Sec-WebSocket-Accept";
+        public static final String SEC_WEB_SOCKET_VERSION = "sec-websocket-version";
         public static final String CONTENT_FORM_DATA_BOUNDARY = "boundary";
+        public static final String RANGE = "range";
+        public static final String IF_RANGE = "if-range";
+        public static final String ACCEPT_ENCODING = "accept-encoding";
+        public static final String IF_NONE_MATCH = "if-none-match";
+        public static final String IF_MODIFIED_SINCE = "if-modified-since";
+        public static final String LAST_EVENT_ID = "last-event-id";
     }
 
     public class METHOD {
@@ -45,13 +61,21 @@ public class ServerHelper {
     }
 
     public class RESPONSE_CODE {
+        public static final int SWITCHING_PROTOCOLS = 101;
         public static final int OK = 200;
+        public static final int PARTIAL_CONTENT = 206;
+        public static final int NOT_MODIFIED = 304;
         public static final int BAD_REQUEST = 400;
         public static final int UNAUTHORIZED = 401;
         public static final int FORBIDDEN = 403;
         public static final int NOT_FOUND = 404;
         public static final int METHOD_NOT_ALLOWED = 405;
+        public static final int REQUEST_TIMEOUT = 408;
+        public static final int PAYLOAD_TOO_LARGE = 413;
+        public static final int RANGE_NOT_SATISFIABLE = 416;
+        public static final int UPGRADE_REQUIRED = 426;
         public static final int INTERNAL_SERVER_ERROR = 500;
+        public static final int SERVICE_UNAVAILABLE = 503;
     }
 
     public class CONTENT_TYPE {
@@ -60,10 +84,13 @@ public class ServerHelper {
 
         public static final String FORM_DATA = "multipart/form-data";
         public static final String FORM_URL_ENCODED_DATA = "application/x-www-form-urlencoded";
+        public static final String MJPEG = "multipart/x-mixed-replace";
+        public static final String MULTIPART_BYTE_RANGES = "multipart/byteranges";
 
         public static final String HTML = "text/html";
         public static final String CSS = "text/css";
         public static final String TEXT = "text/plain";
+        public static final String EVENT_STREAM = "text/event-stream";
 
         public static final String TEXT_JAVA_SCRIPT = "text/javascript";
         public static final String JAVA_SCRIPT = "application/javascript";
@@ -114,6 +141,39 @@ public class ServerHelper {
         return isUTF8 ? toUTF8Bytes(new FileInputStream(filename)) : toBytes(new FileInputStream(filename));
     }
 
+    /**
+     * @param millis time in milliseconds since the epoch .
+     * @return the time as an RFC 1123 date used by HTTP headers such as Last-Modified .
+     */
+    @NonNull
+    public static String formatHttpDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    /**
+     * @param date HTTP date in RFC 1123 , RFC 850 or asctime format .
+     * @return the date in milliseconds since the epoch or -1 if it can not be parsed .
+     */
+    public static long parseHttpDate(@Nullable String date) {
+        if (date == null)
+            return -1;
+
+        String[] patterns = {"EEE, dd MMM yyyy HH:mm:ss zzz", "EEEE, dd-MMM-yy HH:mm:ss zzz", "EEE MMM d HH:mm:ss yyyy"};
+        for (String pattern : patterns) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return format.parse(date.trim()).getTime();
+            } catch (ParseException e) {
+                // Try the next format ..
+            }
+        }
+
+        return -1;
+    }
+
     @NonNull
     public static byte[] convertBitmapToByte(@NonNull Bitmap bitmap, int quality) {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
@@ -1,8 +1,20 @@
 package com.androthink.server.model;
 
 import com.androthink.server.callback.RequestCallBack;
+import com.androthink.server.helper.ServerHelper;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Request {
@@ -12,14 +24,29 @@ public class Request {
     private String requestMethod;
     private String requestProtocol;
     private String requestRoutePath;
+    private String requestTarget;
+    private String requestMatchedRoute;
 
     private String requestClientAddress;
 
     private final RequestCallBack requestCallBack;
 
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    // The body is kept as received , decoded views are built on first access ..
+    private byte[] requestBody = EMPTY_BODY;
     private Object requestPayload;
+    private boolean payloadDecoded = false;
+    private String bodyString;
+    private JSONObject bodyJson;
+    private Map<String,String> bodyForm;
     private Map<String,String> requestHeaders;
     private Map<String,String> requestCookies;
+    private Map<String,String> requestPathParams;
+
+    // Text fields and file parts of a multipart/form-data body ..
+    private Map<String,String> requestFormFields;
+    private List<UploadedFile> requestFiles;
 
     public Request(String requestId,String clientAddress,RequestCallBack callBack){
         this.requestId = requestId;
@@ -27,6 +54,9 @@ public class Request {
         this.requestCallBack = callBack;
         this.requestHeaders = new HashMap<>();
         this.requestCookies = new HashMap<>();
+        this.requestPathParams = new HashMap<>();
+        this.requestFormFields = new HashMap<>();
+        this.requestFiles = new ArrayList<>();
     }
 
     public String getApiKey() {
@@ -65,14 +95,163 @@ public class Request {
         this.requestRoutePath = requestRoutePath;
     }
 
+    /**
+     * @return request target as received , case kept and query string included , getRoutePath() is its lowercase form .
+     */
+    public String getRequestTarget() {
+        return requestTarget != null ? requestTarget : requestRoutePath;
+    }
+
+    public void setRequestTarget(String requestTarget) {
+        this.requestTarget = requestTarget;
+    }
+
+    /**
+     * @return path of the route that answered the request as declared ( "/api/v1/devices/{id}/readings" ) ,
+     * null when no route matched .
+     */
+    public String getMatchedRoute() {
+        return requestMatchedRoute;
+    }
+
+    public void setMatchedRoute(String requestMatchedRoute) {
+        this.requestMatchedRoute = requestMatchedRoute;
+    }
+
     public String getClientAddress() { return requestClientAddress; }
 
+    /**
+     * Decoded on first call from the Content-Type : String for text/plain , JSONObject for
+     * application/json , x-www-form-urlencoded and multipart/form-data fields .
+     *
+     * @return the decoded body , null for other types .
+     * @throws IllegalArgumentException if the body is declared as JSON but is not valid JSON , left to the route
+     *                                  it is answered with 500 as before decoding became lazy , use getJson()
+     *                                  to handle it yourself .
+     */
     public Object getPayload() {
+        if (!payloadDecoded) {
+            String mediaType = getMediaType();
+            if (mediaType != null) {
+                switch (mediaType) {
+                    case ServerHelper.CONTENT_TYPE.TEXT:
+                        requestPayload = getBodyAsString();
+                        break;
+                    case ServerHelper.CONTENT_TYPE.JSON:
+                        try {
+                            requestPayload = getJson();
+                        } catch (JSONException e) {
+                            throw new IllegalArgumentException("Invalid JSON body : " + e.getMessage(), e);
+                        }
+                        break;
+                    case ServerHelper.CONTENT_TYPE.FORM_URL_ENCODED_DATA:
+                    case ServerHelper.CONTENT_TYPE.FORM_DATA:
+                        requestPayload = new JSONObject(getForm());
+                        break;
+                }
+            }
+
+            payloadDecoded = true;
+        }
+
         return requestPayload;
     }
 
     public void setPayload(Object requestPayload) {
         this.requestPayload = requestPayload;
+        this.payloadDecoded = true;
+    }
+
+    /**
+     * @return raw request body bytes exactly as received , empty when the request has no body
+     * or when it was a multipart/form-data body ( see getFormFields and getFiles ) .
+     */
+    public byte[] getBodyBytes() {
+        return requestBody;
+    }
+
+    public void setBodyBytes(byte[] requestBody) {
+        this.requestBody = requestBody != null ? requestBody : EMPTY_BODY;
+        this.payloadDecoded = false;
+        this.requestPayload = null;
+        this.bodyString = null;
+        this.bodyJson = null;
+        this.bodyForm = null;
+    }
+
+    /**
+     * @return a new stream over the raw body bytes .
+     */
+    public InputStream getBodyStream() {
+        return new ByteArrayInputStream(requestBody);
+    }
+
+    /**
+     * @return the body decoded as UTF-8 , computed once .
+     */
+    public String getBodyAsString() {
+        if (bodyString == null) {
+            try {
+                bodyString = new String(requestBody, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported ..
+                throw new IllegalStateException(e);
+            }
+        }
+        return bodyString;
+    }
+
+    /**
+     * @return the body parsed as a JSON object , computed once .
+     * @throws JSONException when the body is not a JSON object .
+     */
+    public JSONObject getJson() throws JSONException {
+        if (bodyJson == null)
+            bodyJson = new JSONObject(getBodyAsString());
+        return bodyJson;
+    }
+
+    /**
+     * @return fields of an x-www-form-urlencoded body , or the text fields of a multipart/form-data body ,
+     * computed once .
+     */
+    public Map<String, String> getForm() {
+        if (bodyForm == null) {
+            if (ServerHelper.CONTENT_TYPE.FORM_DATA.equals(getMediaType())) {
+                bodyForm = requestFormFields;
+            } else {
+                Map<String, String> form = new LinkedHashMap<>();
+                String body = getBodyAsString();
+                if (!body.isEmpty()) {
+                    for (String formParam : body.split("&")) {
+                        int equals = formParam.indexOf('=');
+                        if (equals > 0)
+                            form.put(decodeFormValue(formParam.substring(0, equals)), decodeFormValue(formParam.substring(equals + 1)));
+                    }
+                }
+                bodyForm = Collections.unmodifiableMap(form);
+            }
+        }
+        return bodyForm;
+    }
+
+    private static String decodeFormValue(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            // Malformed escapes are kept as sent ..
+            return value;
+        }
+    }
+
+    // Content-Type without parameters , e.g. application/json for "application/json; charset=utf-8" ..
+    private String getMediaType() {
+        String contentType = requestHeaders.get(ServerHelper.MAIN_HEADERS.CONTENT_TYPE);
+        if (contentType == null)
+            return null;
+
+        int separator = contentType.indexOf(';');
+        return (separator < 0 ? contentType : contentType.substring(0, separator)).trim().toLowerCase();
     }
 
     public Map<String, String> getHeaders() {
@@ -91,6 +270,66 @@ public class Request {
         return requestCookies;
     }
 
+    /**
+     * @return values captured by the route template , e.g. {"id" : "42"} for /devices/{id} ,
+     * the part matched by a trailing * is stored under "*" .
+     */
+    public Map<String, String> getPathParams() {
+        return requestPathParams;
+    }
+
+    public String getPathParam(String name) {
+        return requestPathParams.get(name);
+    }
+
+    public void setPathParams(Map<String, String> requestPathParams) {
+        this.requestPathParams = requestPathParams;
+    }
+
+    /**
+     * @return text fields of a multipart/form-data body .
+     */
+    public Map<String, String> getFormFields() {
+        return requestFormFields;
+    }
+
+    public String getFormField(String name) {
+        return requestFormFields.get(name);
+    }
+
+    public void setFormFields(Map<String, String> requestFormFields) {
+        this.requestFormFields = requestFormFields;
+        this.bodyForm = null;
+    }
+
+    /**
+     * @return file parts of a multipart/form-data body , in the order they were sent .
+     */
+    public List<UploadedFile> getFiles() {
+        return requestFiles;
+    }
+
+    /**
+     * @return first file sent in the field , or null .
+     */
+    public UploadedFile getFile(String fieldName) {
+        for (UploadedFile file : requestFiles) {
+            if (file.getFieldName().equals(fieldName))
+                return file;
+        }
+        return null;
+    }
+
+    public void setFiles(List<UploadedFile> requestFiles) {
+        this.requestFiles = requestFiles;
+    }
+
+    // Called once the response is sent , uploads not moved by the route are removed ..
+    public void deleteTempFiles() {
+        for (UploadedFile file : requestFiles)
+            file.deleteTempFile();
+    }
+
     public void onError(){
         if(this.requestCallBack != null)
             this.requestCallBack.onError(this.requestId);
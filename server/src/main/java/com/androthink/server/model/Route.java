@@ -11,7 +11,7 @@ public class Route {
     private RouteCallBack callBack;
 
     /**
-     * @param path     route path
+     * @param path     route path , may hold {name} segments or end with * ( see Request.getPathParam )
      * @param method   request method
      * @param callBack response callback
      */
@@ -24,7 +24,7 @@ public class Route {
     }
 
     /**
-     * @param path     route path
+     * @param path     route path , may hold {name} segments or end with * ( see Request.getPathParam )
      * @param method   request method
      * @param isAuth   is authenticated
      * @param callBack response callback
@@ -38,7 +38,7 @@ public class Route {
     }
 
     /**
-     * @param path             route path
+     * @param path             route path , may hold {name} segments or end with * ( see Request.getPathParam )
      * @param method           request method
      * @param isAuth           is authenticated
      * @param isRouteStartWith is route paths is a start with
@@ -0,0 +1,125 @@
+package com.androthink.server.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// File part of a multipart/form-data request , stored in a temp file unless an UploadCallBack took it ..
+public class UploadedFile {
+    private final String fieldName;
+    private final String fileName;
+    private final String contentType;
+
+    private long size = 0;
+    // Null when the bytes went to a stream returned by UploadCallBack ..
+    private File file;
+    private boolean temporary = false;
+
+    public UploadedFile(String fieldName, String fileName, String contentType) {
+        this.fieldName = fieldName;
+        this.fileName = fileName;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return name of the form field .
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return file name sent by the client , it must not be used as a path as is .
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return where the bytes are stored , null when an UploadCallBack received them .
+     */
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param file      where the bytes are stored .
+     * @param temporary true when the file is deleted once the response is sent unless moved with moveTo .
+     */
+    public void setFile(@Nullable File file, boolean temporary) {
+        this.file = file;
+        this.temporary = temporary;
+    }
+
+    @NonNull
+    public InputStream openStream() throws IOException {
+        if (file == null)
+            throw new FileNotFoundException("Upload " + fileName + " was handed to an UploadCallBack");
+
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Keeps the upload , temp files are otherwise deleted once the response is sent .
+     *
+     * @param destination new location , replaced if it exists .
+     */
+    public void moveTo(@NonNull File destination) throws IOException {
+        if (file == null)
+            throw new FileNotFoundException("Upload " + fileName + " was handed to an UploadCallBack");
+
+        if (destination.exists() && !destination.delete())
+            throw new IOException("Can not replace " + destination);
+
+        // Rename fails across file systems , copy instead ..
+        if (!file.renameTo(destination)) {
+            InputStream inputStream = new FileInputStream(file);
+            OutputStream outputStream = new FileOutputStream(destination);
+            try {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = inputStream.read(buffer)) > 0)
+                    outputStream.write(buffer, 0, read);
+            } finally {
+                inputStream.close();
+                outputStream.close();
+            }
+
+            if (temporary)
+                file.delete();
+        }
+
+        file = destination;
+        temporary = false;
+    }
+
+    /**
+     * Deletes the temp file , files moved with moveTo are kept .
+     */
+    public void deleteTempFile() {
+        if (file != null && temporary) {
+            file.delete();
+            file = null;
+        }
+    }
+}
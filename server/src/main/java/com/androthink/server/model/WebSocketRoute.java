@@ -0,0 +1,38 @@
+package com.androthink.server.model;
+
+import com.androthink.server.callback.RouteCallBack;
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.ResponseHandler;
+import com.androthink.server.helper.ServerHelper;
+
+import java.io.IOException;
+
+// GET route upgrading the connection to a WebSocket handled by the callback ..
+public class WebSocketRoute extends Route {
+
+    /**
+     * @param path     route path , may hold {name} segments ( see Request.getPathParam )
+     * @param callBack socket callback
+     */
+    public WebSocketRoute(String path, WebSocketCallBack callBack) {
+        super(path, ServerHelper.METHOD.GET, upgrade(callBack));
+    }
+
+    /**
+     * @param path     route path , may hold {name} segments ( see Request.getPathParam )
+     * @param isAuth   is authenticated
+     * @param callBack socket callback
+     */
+    public WebSocketRoute(String path, boolean isAuth, WebSocketCallBack callBack) {
+        super(path, ServerHelper.METHOD.GET, isAuth, upgrade(callBack));
+    }
+
+    private static RouteCallBack upgrade(final WebSocketCallBack callBack) {
+        return new RouteCallBack() {
+            @Override
+            public void onRequested(Request request, ResponseHandler responseHandler) throws IOException {
+                responseHandler.upgradeToWebSocket(callBack);
+            }
+        };
+    }
+}
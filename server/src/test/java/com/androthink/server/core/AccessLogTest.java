@@ -0,0 +1,133 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AccessLogTest {
+
+    // Keeps a copy of every record , records are reused once write() returns ..
+    private static class CapturingWriter implements AccessLog.Writer {
+        private final List<String> lines = new ArrayList<>();
+        private int flushes = 0;
+        private boolean closed = false;
+
+        @Override
+        public synchronized void write(@NonNull AccessLog.Record record) {
+            lines.add(record.getMethod() + " " + record.getPath() + " " + record.getStatus());
+        }
+
+        @Override
+        public synchronized void flush() {
+            flushes++;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void ring_dropsWhenFullAndReusesReleasedSlots() {
+        AccessLog.Ring ring = new AccessLog.Ring(4);
+        assertEquals(4, ring.capacity());
+
+        for (int i = 0; i < 4; i++)
+            ring.offer(i, "id", "127.0.0.1", "get", "/" + i, 200, 0, 0, 0);
+        assertFalse(ring.offer(4, "id", "127.0.0.1", "get", "/4", 200, 0, 0, 0));
+        assertEquals(1, ring.getDropped());
+
+        assertEquals("/0", ring.peek().getPath());
+        ring.release();
+        ring.offer(5, "id", "127.0.0.1", "get", "/5", 200, 0, 0, 0);
+
+        List<String> paths = new ArrayList<>();
+        AccessLog.Record record;
+        while ((record = ring.peek()) != null) {
+            paths.add(record.getPath());
+            ring.release();
+        }
+
+        assertEquals("[/1, /2, /3, /5]", paths.toString());
+        assertEquals(1, ring.getDropped());
+    }
+
+    @Test
+    public void ring_keepsEveryRecordOfConcurrentProducers() throws InterruptedException {
+        final AccessLog.Ring ring = new AccessLog.Ring(64 * 1024);
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            final String path = "/" + t;
+            producers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++)
+                        ring.offer(i, null, null, "get", path, 200, 0, 0, i);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers)
+            producer.join();
+
+        int[] counts = new int[producers.length];
+        AccessLog.Record record;
+        while ((record = ring.peek()) != null) {
+            counts[record.getPath().charAt(1) - '0']++;
+            ring.release();
+        }
+
+        for (int count : counts)
+            assertEquals(10000, count);
+        assertEquals(0, ring.getDropped());
+    }
+
+    @Test
+    public void levelAndSampling_selectRecords() {
+        AccessLog accessLog = new AccessLog();
+        CapturingWriter writer = new CapturingWriter();
+        accessLog.setWriter(writer);
+        accessLog.start();
+
+        accessLog.setLevel(AccessLog.LEVEL.OFF);
+        accessLog.log("1", null, "get", "/off", 500, 0, 0, 0);
+
+        accessLog.setLevel(AccessLog.LEVEL.ERRORS);
+        accessLog.log("2", null, "get", "/ok", 200, 0, 0, 0);
+        accessLog.log("3", null, "get", "/missing", 404, 0, 0, 0);
+
+        accessLog.setLevel(AccessLog.LEVEL.ALL);
+        accessLog.setSampling(2);
+        for (int i = 0; i < 4; i++)
+            accessLog.log("4", null, "get", "/sampled", 200, 0, 0, 0);
+        accessLog.log("5", null, "post", "/failed", 500, 0, 0, 0);
+
+        accessLog.stop(2000);
+
+        assertEquals("[get /missing 404, get /sampled 200, get /sampled 200, post /failed 500]", writer.lines.toString());
+        assertTrue(writer.flushes >= 1);
+        assertTrue(writer.closed);
+    }
+
+    @Test
+    public void record_isFormattedOnOneLine() {
+        AccessLog.Ring ring = new AccessLog.Ring(2);
+        ring.offer(0, "ab-1", "10.0.0.2", "get", "/api/v1/devices", 200, 120, 512, 1500);
+        ring.offer(0, null, null, null, null, 0, 0, 0, -1);
+
+        StringBuilder line = new StringBuilder();
+        ring.peek().appendTo(line, AccessLog.newDateFormat());
+        ring.release();
+        assertEquals("1970-01-01T00:00:00.000Z 10.0.0.2 GET /api/v1/devices 200 120 512 1500us ab-1", line.toString());
+
+        line.setLength(0);
+        ring.peek().appendTo(line, AccessLog.newDateFormat());
+        assertEquals("1970-01-01T00:00:00.000Z - - - 0 0 0 - -", line.toString());
+    }
+}
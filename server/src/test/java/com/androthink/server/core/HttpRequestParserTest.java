@@ -0,0 +1,185 @@
+package com.androthink.server.core;
+
+import com.androthink.server.model.Request;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HttpRequestParserTest {
+
+    private final HttpRequestParser parser = new HttpRequestParser();
+
+    private static byte[] bytes(String value) {
+        byte[] data = new byte[value.length()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) value.charAt(i);
+        return data;
+    }
+
+    private Request parseRequestLine(String line) throws IOException {
+        Request request = new Request("id", "127.0.0.1", null);
+        byte[] data = bytes(line);
+        parser.parseRequestLine(data, 0, data.length, request);
+        return request;
+    }
+
+    private Map<String, String> parseHeaders(String... lines) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        for (String line : lines) {
+            byte[] data = bytes(line);
+            parser.parseHeaderLine(data, 0, data.length, headers);
+        }
+        return headers;
+    }
+
+    @Test
+    public void requestLine_isParsed() throws IOException {
+        Request request = parseRequestLine("POST /Api/V1/Devices HTTP/1.1");
+
+        assertEquals("post", request.getMethod());
+        assertEquals("/api/v1/devices", request.getRoutePath());
+        assertEquals("/Api/V1/Devices", request.getRequestTarget());
+        assertEquals("HTTP/1.1", request.getProtocol());
+    }
+
+    @Test
+    public void requestLine_toleratesRepeatedSpaces() throws IOException {
+        Request request = parseRequestLine("GET  /  HTTP/1.0");
+
+        assertEquals("get", request.getMethod());
+        assertEquals("/", request.getRoutePath());
+        assertEquals("HTTP/1.0", request.getProtocol());
+    }
+
+    @Test
+    public void requestLine_keepsUnknownMethod() throws IOException {
+        assertEquals("propfind", parseRequestLine("PROPFIND / HTTP/1.1").getMethod());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void requestLine_withoutProtocol_isRejected() throws IOException {
+        parseRequestLine("GET /");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void requestLine_withoutPath_isRejected() throws IOException {
+        parseRequestLine("GET HTTP/1.1");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void requestLine_withInvalidProtocol_isRejected() throws IOException {
+        parseRequestLine("GET / FTP/1.1");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void requestLine_empty_isRejected() throws IOException {
+        parseRequestLine("");
+    }
+
+    @Test
+    public void header_nameIsLowercasedAndValueTrimmed() throws IOException {
+        Map<String, String> headers = parseHeaders("Content-Type: \t application/json \t");
+
+        assertEquals("application/json", headers.get("content-type"));
+    }
+
+    @Test
+    public void header_valueKeepsInnerSpaces() throws IOException {
+        Map<String, String> headers = parseHeaders(
+                "User-Agent: Mozilla/5.0 (Linux; Android 10)",
+                "Date: Tue, 15 Nov 1994 08:12:31 GMT");
+
+        assertEquals("Mozilla/5.0 (Linux; Android 10)", headers.get("user-agent"));
+        assertEquals("Tue, 15 Nov 1994 08:12:31 GMT", headers.get("date"));
+    }
+
+    @Test
+    public void header_isSplitOnFirstColon() throws IOException {
+        assertEquals("localhost:8080", parseHeaders("Host: localhost:8080").get("host"));
+    }
+
+    @Test
+    public void header_emptyValueIsAllowed() throws IOException {
+        assertEquals("", parseHeaders("X-Empty:").get("x-empty"));
+    }
+
+    @Test
+    public void header_repeatedValuesAreJoined() throws IOException {
+        Map<String, String> headers = parseHeaders("Accept: text/html", "Accept: application/json",
+                "Cookie: a=1", "Cookie: b=2");
+
+        assertEquals("text/html, application/json", headers.get("accept"));
+        assertEquals("a=1; b=2", headers.get("cookie"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void header_withoutColon_isRejected() throws IOException {
+        parseHeaders("Content-Type application/json");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void header_withEmptyName_isRejected() throws IOException {
+        parseHeaders(": value");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void header_withSpaceBeforeColon_isRejected() throws IOException {
+        parseHeaders("Content-Type : application/json");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void header_folded_isRejected() throws IOException {
+        parseHeaders(" continued value");
+    }
+
+    @Test
+    public void stream_findsCrlfAndLfLines() throws IOException {
+        RequestStream stream = new RequestStream(new ByteArrayInputStream(bytes("GET / HTTP/1.1\r\nHost: a\n\r\n")));
+
+        assertEquals("GET / HTTP/1.1", stream.readLine());
+        assertEquals("Host: a", stream.readLine());
+        assertEquals("", stream.readLine());
+        assertNull(stream.readLine());
+    }
+
+    @Test
+    public void stream_findsLineAcrossBufferRefill() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 6000; i++)
+            value.append('v');
+
+        String filler = "X-Filler: " + value;
+        String data = filler + "\r\n" + "X-Second: " + value + "\r\n";
+
+        RequestStream stream = new RequestStream(new ByteArrayInputStream(bytes(data)));
+
+        assertEquals(filler, stream.readLine());
+        assertEquals("X-Second: " + value, stream.readLine());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void stream_lineLongerThanBuffer_isRejected() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 9000; i++)
+            value.append('v');
+
+        new RequestStream(new ByteArrayInputStream(bytes(value + "\r\n"))).readLine();
+    }
+
+    @Test
+    public void cookies_areTrimmedAndSplitOnFirstEquals() {
+        Map<String, String> cookies = HttpRequestParser.parseCookies("a=1; token=eHl6Cg==;  lang = ar ;flag; =empty");
+
+        assertEquals("1", cookies.get("a"));
+        assertEquals("eHl6Cg==", cookies.get("token"));
+        assertEquals("ar", cookies.get("lang"));
+        assertFalse(cookies.containsKey("flag"));
+        assertEquals(3, cookies.size());
+    }
+}
@@ -0,0 +1,119 @@
+package com.androthink.server.core;
+
+import com.androthink.server.callback.RouteCallBack;
+import com.androthink.server.handler.ResponseHandler;
+import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Request;
+import com.androthink.server.model.Route;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IdleConnectionWatcherTest {
+
+    private static final int WORKERS = 2;
+    private static final int CLIENTS = 6;
+
+    private ServerSocket serverSocket;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private ServerConfig config;
+    private TimeoutCounters counters;
+    private WorkerPool pool;
+    private IdleConnectionWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+
+        config = new ServerConfig();
+        config.setWorkerCoreSize(WORKERS);
+        config.setWorkerMaxSize(WORKERS);
+        config.setWorkerQueueSize(CLIENTS);
+        config.setKeepAliveTimeoutMillis(15 * 1000);
+        counters = new TimeoutCounters();
+        pool = new WorkerPool(config);
+        watcher = new IdleConnectionWatcher(pool);
+        watcher.start();
+
+        List<Route> routes = new ArrayList<>();
+        routes.add(new Route("/ping", ServerHelper.METHOD.GET, new RouteCallBack() {
+            @Override
+            public void onRequested(Request request, ResponseHandler responseHandler) throws IOException {
+                responseHandler.sendJsonResponse("{\"status\":true}");
+            }
+        }));
+        RoutesHandler.getInstance().applyRoutes(routes);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        watcher.stop();
+        pool.shutdown();
+        for (Socket socket : sockets)
+            socket.close();
+        serverSocket.close();
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        // Far below the idle timeout , a worker held by an idle connection fails the test ..
+        client.setSoTimeout(2000);
+        Socket accepted = serverSocket.accept();
+        sockets.add(client);
+        sockets.add(accepted);
+
+        SocketConnection connection = new SocketConnection(accepted, config.getKeepAliveTimeoutMillis(), config, counters, watcher);
+        pool.execute(new ServerRequestTask(null, config, connection, "id", null));
+        return client;
+    }
+
+    // Sends one kept-alive request and reads its response up to the end of the JSON body ..
+    private static String ping(Socket client) throws IOException {
+        client.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1"));
+
+        InputStream inputStream = client.getInputStream();
+        StringBuilder response = new StringBuilder();
+        int read;
+        while (response.indexOf("}") < 0 && (read = inputStream.read()) >= 0)
+            response.append((char) read);
+
+        return response.toString();
+    }
+
+    @Test
+    public void idleKeptAliveConnections_doNotHoldWorkers() throws IOException {
+        List<Socket> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++)
+            clients.add(connect());
+
+        // Every connection answered while the earlier ones sit idle and kept alive ..
+        for (Socket client : clients)
+            assertTrue(ping(client).startsWith("HTTP/1.1 200"));
+
+        // And each one served again once it sends its next request ..
+        for (Socket client : clients)
+            assertTrue(ping(client).startsWith("HTTP/1.1 200"));
+
+        assertEquals(0, pool.getRejectedConnections());
+    }
+
+    @Test
+    public void idleConnection_isClosedAfterItsTimeout() throws IOException {
+        config.setKeepAliveTimeoutMillis(200);
+        Socket client = connect();
+
+        assertTrue(ping(client).startsWith("HTTP/1.1 200"));
+        assertEquals(-1, client.getInputStream().read());
+    }
+}
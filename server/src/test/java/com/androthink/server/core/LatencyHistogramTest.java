@@ -0,0 +1,53 @@
+package com.androthink.server.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBounds_coverEveryValue() {
+        long previous = -1;
+        for (int index = 0; index < 40 * 32; index++) {
+            long highest = LatencyHistogram.highestValueAt(index);
+            if (highest >= (1L << 37))
+                break;
+
+            assertEquals(index, LatencyHistogram.indexOf(previous + 1));
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            previous = highest;
+        }
+    }
+
+    @Test
+    public void percentiles_stayWithinThreePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100000; micros++)
+            histogram.record(micros);
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertTrue(Math.abs(histogram.getValueAtPercentile(50) - 50000) <= 50000 * 0.03);
+        assertTrue(Math.abs(histogram.getValueAtPercentile(99) - 99000) <= 99000 * 0.03);
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void countAtOrBelow_onlyCountsWholeBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(1000);
+        histogram.record(5000000);
+        histogram.record(-1);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(1, histogram.getCountAtOrBelow(999));
+        assertEquals(2, histogram.getCountAtOrBelow(1100));
+        assertEquals(3, histogram.getCountAtOrBelow(Long.MAX_VALUE));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,128 @@
+package com.androthink.server.core;
+
+import com.androthink.server.model.Request;
+import com.androthink.server.model.UploadedFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MultipartParserTest {
+
+    private static final String BOUNDARY = "----XyZ";
+
+    private File directory;
+    private ServerConfig config;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("uploads", "");
+        assertTrue(directory.delete() && directory.mkdir());
+
+        config = new ServerConfig();
+        config.setUploadDirectory(directory);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void parse_readsFieldsAndFiles() throws IOException {
+        byte[] content = new byte[200 * 1024];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        // Bytes that look like the start of a delimiter inside the file ..
+        byte[] lookalike = ("\r\n--" + BOUNDARY.substring(0, 4)).getBytes("ISO-8859-1");
+        System.arraycopy(lookalike, 0, content, 1000, lookalike.length);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "hello\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"doc\"; filename=\"a;b.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes("ISO-8859-1"));
+        body.write(content);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
+
+        MultipartParser parser = parse(body.toByteArray());
+
+        assertEquals("hello", parser.getFields().get("title"));
+        assertEquals(1, parser.getFiles().size());
+
+        UploadedFile file = parser.getFiles().get(0);
+        assertEquals("doc", file.getFieldName());
+        assertEquals("a;b.bin", file.getFileName());
+        assertEquals("application/octet-stream", file.getContentType());
+        assertEquals(content.length, file.getSize());
+        assertEquals(directory, file.getFile().getParentFile());
+        assertTrue(Arrays.equals(content, readAll(file.getFile())));
+
+        file.deleteTempFile();
+        assertNull(file.getFile());
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test(expected = PayloadTooLargeException.class)
+    public void parse_fieldOverLimit() throws IOException {
+        config.setMultipartMaxFieldSize(4);
+        parse(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "too long\r\n--" + BOUNDARY + "--").getBytes("ISO-8859-1"));
+    }
+
+    @Test
+    public void parse_truncatedBodyDeletesTempFiles() throws IOException {
+        try {
+            parse(("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"doc\"; filename=\"a.txt\"\r\n\r\n"
+                    + "partial").getBytes("ISO-8859-1"));
+            fail("Truncated body was accepted");
+        } catch (BadRequestException e) {
+            assertEquals(0, directory.list().length);
+        }
+    }
+
+    @Test
+    public void getParameter_handlesQuotes() {
+        String header = "form-data; name=\"a;b\"; filename=\"x \\\"y\\\".txt\"";
+        assertEquals("a;b", MultipartParser.getParameter(header, "name"));
+        assertEquals("x \"y\".txt", MultipartParser.getParameter(header, "filename"));
+        assertEquals("abc", MultipartParser.getParameter("multipart/form-data; boundary=abc", "boundary"));
+        assertNull(MultipartParser.getParameter("form-data", "name"));
+    }
+
+    private MultipartParser parse(byte[] body) throws IOException {
+        Request request = new Request("1", "127.0.0.1", null);
+        MultipartParser parser = new MultipartParser(new ByteArrayInputStream(body), BOUNDARY, config, request);
+        parser.parse();
+        return parser;
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0)
+                outputStream.write(buffer, 0, read);
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+}
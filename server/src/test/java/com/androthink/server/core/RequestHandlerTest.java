@@ -0,0 +1,121 @@
+package com.androthink.server.core;
+
+import androidx.annotation.NonNull;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.handler.PushStream;
+import com.androthink.server.handler.ResponseOutputStream;
+import com.androthink.server.model.Request;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class RequestHandlerTest {
+
+    // Connection over fixed request bytes ..
+    private static class BytesConnection extends ClientConnection {
+        private final InputStream inputStream;
+
+        BytesConnection(@NonNull String data) throws IOException {
+            this.inputStream = new ByteArrayInputStream(data.getBytes("ISO-8859-1"));
+        }
+
+        @Override
+        String getClientAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        boolean isPersistentStream() {
+            return true;
+        }
+
+        @Override
+        void keepAlive(@NonNull ServerRequestTask task) {
+        }
+
+        @Override
+        void close() {
+        }
+
+        @Override
+        int rejectWith(@NonNull byte[] response) {
+            return 0;
+        }
+
+        @Override
+        boolean startWebSocket(@NonNull RequestStream requestStream, @NonNull ResponseOutputStream outputStream,
+                               @NonNull Request request, @NonNull WebSocketCallBack callBack, @NonNull ServerConfig config) {
+            return false;
+        }
+
+        @Override
+        boolean startPush(@NonNull PushStream stream, @NonNull ResponseOutputStream outputStream, @NonNull ServerRequestTask task) {
+            return false;
+        }
+    }
+
+    private static Request extract(String data) throws IOException {
+        BytesConnection connection = new BytesConnection(data);
+        return RequestHandler.getInstance(new Request("1", "127.0.0.1", null), new RequestStream(connection.getInputStream()),
+                new HttpRequestParser(), new ServerConfig(), connection).extract();
+    }
+
+    @Test
+    public void cookieHeaders_giveTrimmedCookies() throws IOException {
+        Request request = extract("GET / HTTP/1.1\r\nCookie: lang=ar; token=abc==\r\nCookie: theme=dark\r\n\r\n");
+
+        assertEquals("ar", request.getRequestCookies().get("lang"));
+        assertEquals("abc==", request.getRequestCookies().get("token"));
+        assertEquals("dark", request.getRequestCookies().get("theme"));
+        assertNull(request.getHeaders().get("cookie"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void invalidContentLength_isBadRequest() throws IOException {
+        extract("POST / HTTP/1.1\r\nContent-Length: 12a\r\n\r\nbody");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void negativeContentLength_isBadRequest() throws IOException {
+        extract("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void truncatedBody_isBadRequest() throws IOException {
+        extract("POST / HTTP/1.1\r\nContent-Length: 10\r\n\r\nshort");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void invalidChunkSize_isBadRequest() throws IOException {
+        extract("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\nbody\r\n0\r\n\r\n");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void truncatedChunkedBody_isBadRequest() throws IOException {
+        extract("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nbody\r\n");
+    }
+
+    @Test
+    public void chunkedBody_isDecoded() throws IOException {
+        Request request = extract("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nbody\r\n3;ext=1\r\n123\r\n0\r\n\r\n");
+        assertEquals("body123", new String(request.getBodyBytes(), "ISO-8859-1"));
+    }
+}
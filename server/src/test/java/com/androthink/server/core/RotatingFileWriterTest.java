@@ -0,0 +1,50 @@
+package com.androthink.server.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class RotatingFileWriterTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("access", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void fullFile_isRotatedAndOldestDeleted() throws IOException {
+        File log = new File(directory, "access.log");
+        RotatingFileWriter writer = new RotatingFileWriter(log, 200, 2);
+
+        AccessLog.Ring ring = new AccessLog.Ring(16);
+        for (int i = 0; i < 12; i++) {
+            ring.offer(i, "id-" + i, "127.0.0.1", "get", "/path", 200, 0, 0, 10);
+            writer.write(ring.peek());
+            ring.release();
+        }
+        writer.close();
+
+        assertTrue(log.length() <= 200);
+        assertTrue(new File(directory, "access.log.1").length() <= 200);
+        assertTrue(new File(directory, "access.log.2").exists());
+        assertFalse(new File(directory, "access.log.3").exists());
+    }
+}
@@ -0,0 +1,180 @@
+package com.androthink.server.core;
+
+import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Route;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RouteTableTest {
+
+    private static Route exact(String path, String method) {
+        return new Route(path, method, null);
+    }
+
+    private static Route startWith(String path, String method) {
+        return new Route(path, method, false, true, null);
+    }
+
+    @Test
+    public void exactRoute_isMatchedPerMethod() {
+        List<Route> routes = new ArrayList<>();
+        Route get = exact("/api/v1/status", ServerHelper.METHOD.GET);
+        Route post = exact("/api/v1/status", ServerHelper.METHOD.POST);
+        routes.add(get);
+        routes.add(post);
+
+        RouteTable table = new RouteTable(routes);
+
+        assertSame(get, table.getRoute(ServerHelper.METHOD.GET, "/api/v1/status"));
+        assertSame(post, table.getRoute(ServerHelper.METHOD.POST, "/api/v1/status"));
+        assertNull(table.getRoute(ServerHelper.METHOD.PUT, "/api/v1/status"));
+        assertNull(table.getRoute(ServerHelper.METHOD.GET, "/api/v1/status/1"));
+    }
+
+    @Test
+    public void startWithRoute_longestPrefixWins() {
+        List<Route> routes = new ArrayList<>();
+        Route api = startWith("/api", ServerHelper.METHOD.GET);
+        Route files = startWith("/api/v1/files/", ServerHelper.METHOD.GET);
+        routes.add(api);
+        routes.add(files);
+
+        RouteTable table = new RouteTable(routes);
+
+        assertSame(files, table.getRouteWithStartWith(ServerHelper.METHOD.GET, "/api/v1/files/logs/today.txt"));
+        assertSame(files, table.getRouteWithStartWith(ServerHelper.METHOD.GET, "/api/v1/files"));
+        assertSame(api, table.getRouteWithStartWith(ServerHelper.METHOD.GET, "/api/v1/devices"));
+        assertNull(table.getRouteWithStartWith(ServerHelper.METHOD.GET, "/static/app.js"));
+        assertNull(table.getRouteWithStartWith(ServerHelper.METHOD.POST, "/api/v1/files/a"));
+    }
+
+    @Test
+    public void startWithRoute_matchesWholeSegmentsOnly() {
+        List<Route> routes = new ArrayList<>();
+        routes.add(startWith("/img", ServerHelper.METHOD.GET));
+
+        RouteTable table = new RouteTable(routes);
+
+        assertNull(table.getRouteWithStartWith(ServerHelper.METHOD.GET, "/images/a.png"));
+        assertNotNull(table.getRouteWithStartWith(ServerHelper.METHOD.GET, "/img/a.png"));
+    }
+
+    @Test
+    public void allowedMethods_distinguish405From404() {
+        List<Route> routes = new ArrayList<>();
+        routes.add(exact("/login", ServerHelper.METHOD.POST));
+        routes.add(startWith("/files", ServerHelper.METHOD.PUT));
+
+        RouteTable table = new RouteTable(routes);
+
+        Set<String> login = table.getAllowedMethods("/login");
+        assertEquals(1, login.size());
+        assertTrue(login.contains(ServerHelper.METHOD.POST));
+
+        assertTrue(table.getAllowedMethods("/files/report.pdf").contains(ServerHelper.METHOD.PUT));
+        assertTrue(table.getAllowedMethods("/unknown").isEmpty());
+    }
+
+    @Test
+    public void template_capturesPathParams() {
+        List<Route> routes = new ArrayList<>();
+        Route readings = exact("/api/v1/devices/{id}/readings/{day}", ServerHelper.METHOD.GET);
+        routes.add(readings);
+
+        RouteTable table = new RouteTable(routes);
+        Map<String, String> params = new HashMap<>();
+
+        assertSame(readings, table.getTemplateRoute(ServerHelper.METHOD.GET, "/api/v1/devices/42/readings/today", params));
+        assertEquals("42", params.get("id"));
+        assertEquals("today", params.get("day"));
+
+        assertNull(table.getTemplateRoute(ServerHelper.METHOD.GET, "/api/v1/devices/42/readings", new HashMap<String, String>()));
+        assertNull(table.getTemplateRoute(ServerHelper.METHOD.POST, "/api/v1/devices/42/readings/today", new HashMap<String, String>()));
+    }
+
+    @Test
+    public void template_literalSegmentWinsOverParam() {
+        List<Route> routes = new ArrayList<>();
+        Route byId = exact("/devices/{id}", ServerHelper.METHOD.GET);
+        Route latest = exact("/devices/latest", ServerHelper.METHOD.GET);
+        routes.add(byId);
+        routes.add(latest);
+
+        RouteTable table = new RouteTable(routes);
+
+        assertSame(latest, table.getRoute(ServerHelper.METHOD.GET, "/devices/latest"));
+        assertSame(byId, table.getTemplateRoute(ServerHelper.METHOD.GET, "/devices/7", new HashMap<String, String>()));
+    }
+
+    @Test
+    public void template_wildcardCapturesRemainingPath() {
+        List<Route> routes = new ArrayList<>();
+        Route statics = exact("/static/*", ServerHelper.METHOD.GET);
+        routes.add(statics);
+
+        RouteTable table = new RouteTable(routes);
+        Map<String, String> params = new HashMap<>();
+
+        assertSame(statics, table.getTemplateRoute(ServerHelper.METHOD.GET, "/static/css/app.css", params));
+        assertEquals("css/app.css", params.get(RouteTable.WILDCARD));
+        assertTrue(table.getAllowedMethods("/static/js/app.js").contains(ServerHelper.METHOD.GET));
+    }
+
+    @Test
+    public void template_capturesKeepCaseFromTarget() {
+        List<Route> routes = new ArrayList<>();
+        Route readings = exact("/api/v1/devices/{id}/readings", ServerHelper.METHOD.GET);
+        routes.add(readings);
+
+        RouteTable table = new RouteTable(routes);
+        Map<String, String> params = new HashMap<>();
+
+        assertSame(readings, table.getTemplateRoute(ServerHelper.METHOD.GET,
+                "/api/v1/devices/abc42/readings", "/API/v1/devices/AbC42/readings", params));
+        assertEquals("AbC42", params.get("id"));
+    }
+
+    @Test
+    public void template_capturesArePercentDecoded() {
+        List<Route> routes = new ArrayList<>();
+        Route byName = exact("/files/{name}", ServerHelper.METHOD.GET);
+        Route statics = exact("/static/*", ServerHelper.METHOD.GET);
+        routes.add(byName);
+        routes.add(statics);
+
+        RouteTable table = new RouteTable(routes);
+        Map<String, String> params = new HashMap<>();
+
+        assertSame(byName, table.getTemplateRoute(ServerHelper.METHOD.GET, "/files/my%20notes+1.txt", params));
+        assertEquals("my notes+1.txt", params.get("name"));
+
+        assertSame(statics, table.getTemplateRoute(ServerHelper.METHOD.GET, "/static/caf%c3%a9/a%2fb%zz", params));
+        assertEquals("caf\u00e9/a/b%zz", params.get(RouteTable.WILDCARD));
+    }
+
+    @Test
+    public void template_ignoresQueryString() {
+        List<Route> routes = new ArrayList<>();
+        Route byId = exact("/devices/{id}", ServerHelper.METHOD.GET);
+        Route statics = exact("/static/*", ServerHelper.METHOD.GET);
+        routes.add(byId);
+        routes.add(statics);
+
+        RouteTable table = new RouteTable(routes);
+        Map<String, String> params = new HashMap<>();
+
+        assertSame(byId, table.getTemplateRoute(ServerHelper.METHOD.GET, "/devices/42?x=1", params));
+        assertEquals("42", params.get("id"));
+
+        assertSame(statics, table.getTemplateRoute(ServerHelper.METHOD.GET, "/static/app.js?v=3", params));
+        assertEquals("app.js", params.get(RouteTable.WILDCARD));
+    }
+}
@@ -0,0 +1,95 @@
+package com.androthink.server.core;
+
+import com.androthink.server.helper.ServerHelper;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ServerMetricsTest {
+
+    @Test
+    public void requests_areCountedPerRouteMethodAndStatus() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.recordRequest("/api/v1/devices/{id}", ServerHelper.METHOD.GET, 200, 1500, 100, 400);
+        metrics.recordRequest("/api/v1/devices/{id}", ServerHelper.METHOD.GET, 404, 500, 100, 200);
+        metrics.recordRequest(null, "propfind", 405, 100, 50, 80);
+
+        ServerMetrics.Snapshot snapshot = metrics.snapshot();
+        ServerMetrics.RouteSnapshot devices = snapshot.getRoute("/api/v1/devices/{id}", "GET");
+
+        assertNotNull(devices);
+        assertEquals(2, devices.getRequestCount());
+        assertEquals(1, devices.getStatusCount(404));
+        assertEquals(1000, devices.getMeanMicros());
+        assertEquals(1500, devices.getMaxMicros());
+
+        assertEquals(1, snapshot.getRoute(ServerMetrics.UNMATCHED_ROUTE, "OTHER").getRequestCount());
+        assertEquals(3, snapshot.getRequestCount());
+        assertEquals(250, snapshot.getBytesReceived());
+        assertEquals(680, snapshot.getBytesSent());
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.setEnabled(false);
+        metrics.recordRequest("/", ServerHelper.METHOD.GET, 200, 10, 10, 10);
+
+        assertEquals(0, metrics.snapshot().getRequestCount());
+    }
+
+    @Test
+    public void prometheusText_hasFamiliesOnceAndEscapedLabels() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.recordRequest("/say/\"hi\"", ServerHelper.METHOD.POST, 201, 2000, 0, 0);
+        metrics.registerCounter("server_timeouts_total{kind=\"header\"}", "Timeouts .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return 3;
+            }
+        });
+        metrics.registerCounter("server_timeouts_total{kind=\"write\"}", "Timeouts .", new ServerMetrics.Gauge() {
+            @Override
+            public double getValue() {
+                return 1;
+            }
+        });
+
+        String text = metrics.toPrometheus();
+
+        assertTrue(text.contains("server_requests_total{route=\"/say/\\\"hi\\\"\",method=\"POST\",status=\"201\"} 1\n"));
+        assertTrue(text.contains("server_request_duration_seconds_bucket{route=\"/say/\\\"hi\\\"\",method=\"POST\",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("server_request_duration_seconds_bucket{route=\"/say/\\\"hi\\\"\",method=\"POST\",le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains("server_request_duration_seconds_count{route=\"/say/\\\"hi\\\"\",method=\"POST\"} 1\n"));
+        assertTrue(text.contains("server_timeouts_total{kind=\"header\"} 3\n"));
+        assertEquals(text.indexOf("# TYPE server_timeouts_total counter"), text.lastIndexOf("# TYPE server_timeouts_total"));
+    }
+
+    @Test
+    public void gaugeFamily_writesOneSamplePerLabelValue() {
+        ServerMetrics metrics = new ServerMetrics();
+        final Map<String, Integer> subscribers = new HashMap<>();
+        subscribers.put("status", 2);
+        subscribers.put("a\"b", 1);
+        metrics.registerGaugeFamily("server_sse_subscribers", "stream", "Subscribers .", new ServerMetrics.GaugeFamily() {
+            @Override
+            public Map<String, Integer> getValues() {
+                return subscribers;
+            }
+        });
+
+        String text = metrics.toPrometheus();
+
+        assertTrue(text.contains("# TYPE server_sse_subscribers gauge\n"
+                + "server_sse_subscribers{stream=\"a\\\"b\"} 1\n"
+                + "server_sse_subscribers{stream=\"status\"} 2\n"));
+        assertEquals(Double.valueOf(2), metrics.snapshot().getGauges().get("server_sse_subscribers{stream=\"status\"}"));
+
+        subscribers.clear();
+        assertFalse(metrics.toPrometheus().contains("server_sse_subscribers{"));
+    }
+}
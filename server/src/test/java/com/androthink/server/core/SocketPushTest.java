@@ -0,0 +1,114 @@
+package com.androthink.server.core;
+
+import com.androthink.server.callback.RouteCallBack;
+import com.androthink.server.handler.EventStream;
+import com.androthink.server.handler.ResponseHandler;
+import com.androthink.server.helper.ServerHelper;
+import com.androthink.server.model.Request;
+import com.androthink.server.model.Route;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SocketPushTest {
+
+    private static final int WORKERS = 1;
+    private static final int CLIENTS = 4;
+
+    private ServerSocket serverSocket;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private ServerConfig config;
+    private TimeoutCounters counters;
+    private WorkerPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+
+        config = new ServerConfig();
+        config.setWorkerCoreSize(WORKERS);
+        config.setWorkerMaxSize(WORKERS);
+        config.setWorkerQueueSize(1);
+        counters = new TimeoutCounters();
+        pool = new WorkerPool(config);
+
+        List<Route> routes = new ArrayList<>();
+        routes.add(new Route("/events", ServerHelper.METHOD.GET, new RouteCallBack() {
+            @Override
+            public void onRequested(Request request, ResponseHandler responseHandler) throws IOException {
+                responseHandler.sendEventStream(EventStream.register("status"));
+            }
+        }));
+        RoutesHandler.getInstance().applyRoutes(routes);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        EventStream.unregister("status");
+        pool.shutdown();
+        for (Socket socket : sockets)
+            socket.close();
+        serverSocket.close();
+    }
+
+    private Socket subscribe() throws IOException {
+        Socket client = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        client.setSoTimeout(2000);
+        Socket accepted = serverSocket.accept();
+        sockets.add(client);
+        sockets.add(accepted);
+
+        pool.execute(new ServerRequestTask(null, config, new SocketConnection(accepted, 0, config, counters), "id", null));
+        client.getOutputStream().write("GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1"));
+        return client;
+    }
+
+    // Reads up to and including the first occurrence of end ..
+    private static String readUntil(Socket client, String end) throws IOException {
+        InputStream inputStream = client.getInputStream();
+        StringBuilder received = new StringBuilder();
+        int read;
+        while (received.indexOf(end) < 0 && (read = inputStream.read()) >= 0)
+            received.append((char) read);
+
+        return received.toString();
+    }
+
+    @Test
+    public void subscribers_doNotHoldWorkers() throws IOException {
+        List<Socket> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Socket client = subscribe();
+            assertTrue(readUntil(client, "\r\n\r\n").startsWith("HTTP/1.1 200"));
+            clients.add(client);
+        }
+
+        assertEquals(CLIENTS, EventStream.register("status").getSubscriberCount());
+        EventStream.register("status").send("ready");
+
+        for (Socket client : clients)
+            assertTrue(readUntil(client, "\n\n").endsWith("data: ready\n\n"));
+
+        assertEquals(0, pool.getRejectedConnections());
+    }
+
+    @Test
+    public void closedStream_endsTheResponse() throws IOException {
+        Socket client = subscribe();
+        readUntil(client, "\r\n\r\n");
+
+        EventStream.unregister("status");
+        assertEquals(-1, client.getInputStream().read());
+    }
+}
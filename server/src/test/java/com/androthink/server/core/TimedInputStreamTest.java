@@ -0,0 +1,100 @@
+package com.androthink.server.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+
+public class TimedInputStreamTest {
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket accepted;
+
+    private ServerConfig config;
+    private TimeoutCounters counters;
+    private TimedInputStream inputStream;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        client = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        accepted = serverSocket.accept();
+
+        config = new ServerConfig();
+        config.setHeaderReadTimeoutMillis(300);
+        config.setBodyReadTimeoutMillis(200);
+        counters = new TimeoutCounters();
+        inputStream = new TimedInputStream(accepted, accepted.getInputStream(), config, counters);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        accepted.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void trickledHeaders_hitTheHeaderDeadline() throws IOException {
+        inputStream.awaitRequest(0);
+        client.getOutputStream().write("GET / HTTP/1.1\r\n".getBytes());
+
+        byte[] buffer = new byte[64];
+        assertTrue(inputStream.read(buffer, 0, buffer.length) > 0);
+
+        long start = System.currentTimeMillis();
+        try {
+            inputStream.read(buffer, 0, buffer.length);
+            fail("Headers read past the deadline");
+        } catch (RequestTimeoutException e) {
+            assertEquals(TimeoutCounters.KIND.HEADER, e.getKind());
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, counters.getHeaderTimeouts());
+    }
+
+    @Test
+    public void stalledBody_hitsTheBodyTimeout() throws IOException {
+        inputStream.startBody();
+        try {
+            inputStream.read(new byte[16], 0, 16);
+            fail("Body read past the timeout");
+        } catch (RequestTimeoutException e) {
+            assertEquals(TimeoutCounters.KIND.BODY, e.getKind());
+        }
+
+        assertEquals(1, counters.getBodyTimeouts());
+        assertEquals(0, counters.getHeaderTimeouts());
+    }
+
+    @Test
+    public void idleKeptAliveConnection_isNotCounted() throws IOException {
+        inputStream.awaitRequest(100);
+        try {
+            inputStream.read(new byte[16], 0, 16);
+            fail("Idle read did not time out");
+        } catch (RequestTimeoutException e) {
+            fail("Idle timeout counted as a request timeout");
+        } catch (SocketTimeoutException e) {
+            // Expected ..
+        }
+
+        assertEquals(0, counters.getHeaderTimeouts());
+    }
+
+    @Test
+    public void isTooSlow_appliesAfterGracePeriod() {
+        assertFalse(TimedInputStream.isTooSlow(10, 1000, 1024));
+        assertTrue(TimedInputStream.isTooSlow(10 * 1024, 20 * 1000, 1024));
+        assertFalse(TimedInputStream.isTooSlow(30 * 1024, 20 * 1000, 1024));
+        assertFalse(TimedInputStream.isTooSlow(0, 60 * 1000, 0));
+    }
+}
@@ -0,0 +1,88 @@
+package com.androthink.server.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WorkerPoolTest {
+
+    private ServerSocket serverSocket;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private ServerConfig config;
+    private TimeoutCounters counters;
+    private WorkerPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+
+        config = new ServerConfig();
+        config.setWorkerCoreSize(1);
+        config.setWorkerMaxSize(1);
+        config.setWorkerQueueSize(1);
+        counters = new TimeoutCounters();
+        pool = new WorkerPool(config);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        for (Socket socket : sockets)
+            socket.close();
+        serverSocket.close();
+    }
+
+    // Client socket , its accepted side is handed to the pool as a task that waits for a request ..
+    private Socket connect() throws IOException {
+        Socket client = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        client.setSoTimeout(5000);
+        Socket accepted = serverSocket.accept();
+        sockets.add(client);
+        sockets.add(accepted);
+
+        pool.execute(new ServerRequestTask(null, config, new SocketConnection(accepted, 0, config, counters), "id", null));
+        return client;
+    }
+
+    private static String readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0)
+            bytes.write(buffer, 0, read);
+
+        return bytes.toString("ISO-8859-1");
+    }
+
+    @Test
+    public void saturatedPool_answers503() throws IOException {
+        // One on the worker , one in the queue ..
+        connect();
+        connect();
+
+        String response = readAll(connect().getInputStream());
+
+        assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+        assertTrue(response.contains("Retry-After: 1\r\n"));
+        assertEquals(1, pool.getRejectedConnections());
+    }
+
+    @Test
+    public void stoppedPool_closesWithoutCounting() throws IOException {
+        pool.shutdown();
+
+        assertEquals("", readAll(connect().getInputStream()));
+        assertEquals(0, pool.getRejectedConnections());
+    }
+}
@@ -0,0 +1,80 @@
+package com.androthink.server.handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AssetCacheTest {
+
+    private final AssetCache cache = AssetCache.getInstance();
+
+    @Before
+    public void setUp() {
+        cache.setEnabled(true);
+        cache.setMaxBytes(400);
+        cache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        cache.setMaxBytes(AssetCache.DEFAULT_MAX_BYTES);
+        cache.clear();
+    }
+
+    private void put(String path, int length) {
+        cache.put(path, false, "image/png", new byte[length]);
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedAboveBudget() {
+        long evictions = cache.getEvictionCount();
+
+        put("a.png", 100);
+        put("b.png", 100);
+        put("c.png", 100);
+        assertNotNull(cache.get("a.png", false));
+
+        put("d.png", 100);
+        put("e.png", 100);
+
+        assertEquals(400, cache.getSize());
+        assertEquals(evictions + 1, cache.getEvictionCount());
+        assertNull(cache.get("b.png", false));
+        assertNotNull(cache.get("a.png", false));
+    }
+
+    @Test
+    public void hitsAndMisses_areCounted() {
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        assertNull(cache.get("a.png", false));
+        put("a.png", 10);
+        assertNotNull(cache.get("a.png", false));
+        assertNull(cache.get("a.png", true));
+
+        assertEquals(hits + 1, cache.getHitCount());
+        assertEquals(misses + 2, cache.getMissCount());
+    }
+
+    @Test
+    public void largeBody_isNotCached() {
+        put("big.png", 101);
+
+        assertEquals(0, cache.getEntryCount());
+        assertFalse(cache.isCacheable(101));
+    }
+
+    @Test
+    public void disabledCache_dropsAndBypassesEntries() {
+        put("a.png", 10);
+        cache.setEnabled(false);
+
+        assertEquals(0, cache.getSize());
+        put("a.png", 10);
+        assertNull(cache.get("a.png", false));
+        assertEquals(0, cache.getEntryCount());
+    }
+}
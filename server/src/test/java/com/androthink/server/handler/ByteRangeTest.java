@@ -0,0 +1,68 @@
+package com.androthink.server.handler;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteRangeTest {
+
+    private static void assertRange(ByteRange range, long start, long end) {
+        assertEquals(start, range.start);
+        assertEquals(end, range.end);
+    }
+
+    @Test
+    public void singleRange_isParsed() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-499", 1000);
+
+        assertEquals(1, ranges.size());
+        assertRange(ranges.get(0), 0, 499);
+        assertEquals(500, ranges.get(0).length());
+        assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(1000));
+    }
+
+    @Test
+    public void openAndSuffixRanges_areResolvedAgainstLength() {
+        assertRange(ByteRange.parse("bytes=900-", 1000).get(0), 900, 999);
+        assertRange(ByteRange.parse("bytes=-100", 1000).get(0), 900, 999);
+        assertRange(ByteRange.parse("bytes=-5000", 1000).get(0), 0, 999);
+        assertRange(ByteRange.parse("bytes=990-5000", 1000).get(0), 990, 999);
+    }
+
+    @Test
+    public void multipleRanges_areSortedAndMerged() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-599, 0-99, 50-149, 150-199", 1000);
+
+        assertEquals(2, ranges.size());
+        assertRange(ranges.get(0), 0, 199);
+        assertRange(ranges.get(1), 500, 599);
+    }
+
+    @Test
+    public void unsatisfiableRanges_giveEmptyList() {
+        assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+    }
+
+    @Test
+    public void invalidHeaders_areIgnored() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-10", 1000));
+        assertNull(ByteRange.parse("bytes=", 1000));
+        assertNull(ByteRange.parse("bytes=10-5", 1000));
+        assertNull(ByteRange.parse("bytes=a-5", 1000));
+        assertNull(ByteRange.parse("bytes=5", 1000));
+    }
+
+    @Test
+    public void tooManyRanges_areIgnored() {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int i = 0; i <= ByteRange.MAX_RANGES; i++)
+            header.append(i * 10).append('-').append(i * 10 + 1).append(',');
+
+        assertNull(ByteRange.parse(header.toString(), 1000));
+    }
+}
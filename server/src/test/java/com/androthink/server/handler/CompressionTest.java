@@ -0,0 +1,69 @@
+package com.androthink.server.handler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest {
+
+    @Test
+    public void negotiate_prefersGzip() {
+        assertEquals(Compression.ENCODING.GZIP, Compression.negotiate("gzip, deflate, br"));
+        assertEquals(Compression.ENCODING.GZIP, Compression.negotiate("deflate;q=0.5, GZIP"));
+        assertEquals(Compression.ENCODING.GZIP, Compression.negotiate("*"));
+    }
+
+    @Test
+    public void negotiate_honoursZeroQuality() {
+        assertEquals(Compression.ENCODING.DEFLATE, Compression.negotiate("gzip;q=0, deflate"));
+        assertNull(Compression.negotiate("gzip;q=0.0, deflate; q=0"));
+        assertNull(Compression.negotiate("gzip;q=0, *"));
+    }
+
+    @Test
+    public void negotiate_withoutSupportedCoding_returnsNull() {
+        assertNull(Compression.negotiate(null));
+        assertNull(Compression.negotiate("identity"));
+        assertNull(Compression.negotiate("br"));
+    }
+
+    @Test
+    public void compressible_checksTypeAndSize() {
+        Compression compression = new Compression();
+        compression.setMinSize(100);
+
+        assertTrue(compression.isCompressible("application/json", 100));
+        assertTrue(compression.isCompressible("text/html; charset=utf-8", 500));
+        assertFalse(compression.isCompressible("application/json", 99));
+        assertFalse(compression.isCompressible("image/jpeg", 5000));
+
+        compression.addContentType("Application/Wasm");
+        assertTrue(compression.isCompressible("application/wasm", 5000));
+    }
+
+    @Test
+    public void compressedBody_roundTrips() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++)
+            json.append("{\"id\":").append(i).append(",\"name\":\"sensor\"},");
+        json.append("{}]");
+
+        byte[] data = json.toString().getBytes("UTF-8");
+        byte[] compressed = Compression.compress(data, 0, data.length, Compression.ENCODING.GZIP);
+        assertTrue(compressed.length < data.length / 4);
+
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) > 0)
+            decompressed.write(buffer, 0, read);
+
+        assertArrayEquals(data, decompressed.toByteArray());
+    }
+}
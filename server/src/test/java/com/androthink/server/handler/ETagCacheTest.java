@@ -0,0 +1,49 @@
+package com.androthink.server.handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ETagCacheTest {
+
+    @After
+    public void tearDown() {
+        ETagCache.getInstance().clear();
+    }
+
+    @Test
+    public void get_sameVersion_reusesCachedTag() throws Exception {
+        ETagCache cache = ETagCache.getInstance();
+        String etag = cache.get("index.html", 1, "first".getBytes("UTF-8"));
+
+        assertTrue(etag.matches("\"[0-9a-f]{32}\""));
+        assertEquals(etag, cache.get("index.html", 1, "changed".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void get_newVersion_rehashesContent() throws Exception {
+        ETagCache cache = ETagCache.getInstance();
+        String etag = cache.get("index.html", 1, "first".getBytes("UTF-8"));
+
+        assertNotEquals(etag, cache.get("index.html", 2, "changed".getBytes("UTF-8")));
+        assertEquals(etag, cache.get("other.html", 1, "first".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void matches_usesWeakComparison() {
+        String etag = "\"abc\"";
+
+        assertTrue(ETagCache.matches("\"abc\"", etag));
+        assertTrue(ETagCache.matches("W/\"abc\"", etag));
+        assertTrue(ETagCache.matches("\"xyz\", \"abc-gzip\"", etag));
+        assertTrue(ETagCache.matches(" * ", etag));
+        assertFalse(ETagCache.matches("\"abcd\"", etag));
+        assertFalse(ETagCache.matches("abc", etag));
+    }
+
+    @Test
+    public void withEncoding_keepsQuotes() {
+        assertEquals("\"abc-deflate\"", ETagCache.withEncoding("\"abc\"", Compression.ENCODING.DEFLATE));
+    }
+}
@@ -0,0 +1,128 @@
+package com.androthink.server.handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class EventStreamTest {
+
+    @After
+    public void tearDown() {
+        EventStream.unregister("status");
+    }
+
+    private static String text(ByteBuffer buffer) throws UnsupportedEncodingException {
+        return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), "UTF-8");
+    }
+
+    @Test
+    public void serialize_splitsDataLines() throws Exception {
+        assertEquals("id: 7\nevent: status\ndata: a\ndata: b\ndata: c\n\n",
+                new String(EventStream.serialize(7, "status", "a\nb\r\nc"), "UTF-8"));
+        assertEquals("id: 1\ndata: \n\n", new String(EventStream.serialize(1, null, ""), "UTF-8"));
+    }
+
+    @Test
+    public void event_isSerializedOnceForAllSubscribers() {
+        EventStream stream = EventStream.register("status");
+        EventStream.Subscriber first = stream.open(null);
+        EventStream.Subscriber second = stream.open(null);
+
+        assertEquals(1, stream.send("ready"));
+        assertSame(first.next().array(), second.next().array());
+        assertEquals(2, stream.getSubscriberCount());
+    }
+
+    @Test
+    public void lastEventId_replaysMissedEvents() throws Exception {
+        EventStream stream = EventStream.register("status");
+        stream.setReplaySize(3);
+        for (int i = 1; i <= 5; i++)
+            stream.send("event " + i);
+
+        EventStream.Subscriber subscriber = stream.open("3");
+        String missed = text(subscriber.next());
+        assertTrue(missed.startsWith("id: 4\n"));
+        assertTrue(missed.contains("\n\nid: 5\n"));
+        assertNull(subscriber.next());
+
+        // Older than the buffer , only what is kept ..
+        EventStream.Subscriber late = stream.open("0");
+        assertTrue(text(late.next()).startsWith("id: 3\n"));
+
+        assertNull(stream.open("5").next());
+        assertNull(stream.open(null).next());
+    }
+
+    @Test
+    public void heartbeat_isACommentAtTheStreamInterval() throws Exception {
+        EventStream stream = EventStream.register("status");
+        stream.setHeartbeatMillis(10);
+        EventStream.Subscriber subscriber = stream.open(null);
+
+        assertEquals(10, subscriber.getHeartbeatMillis());
+        assertEquals(":\n\n", text(subscriber.heartbeat()));
+    }
+
+    @Test
+    public void queuedEvent_notifiesTheTransport() {
+        EventStream stream = EventStream.register("status");
+        EventStream.Subscriber subscriber = stream.open(null);
+        final int[] notified = {0};
+        subscriber.attach(new PushStream.Listener() {
+            @Override
+            public void onQueued() {
+                notified[0]++;
+            }
+        });
+
+        stream.send("1");
+        stream.close();
+
+        // Once on attach , once for the event and once for the close ..
+        assertEquals(3, notified[0]);
+        assertTrue(subscriber.isClosed());
+    }
+
+    @Test
+    public void slowSubscriber_isDisconnected() {
+        EventStream stream = EventStream.register("status");
+        stream.setMaxQueuedEvents(2);
+        EventStream.Subscriber slow = stream.open(null);
+
+        stream.send("1");
+        stream.send("2");
+        stream.send("3");
+
+        assertTrue(slow.isClosed());
+        assertNull(slow.next());
+        assertEquals(0, stream.getSubscriberCount());
+        assertEquals(1, stream.getDroppedSubscribers());
+    }
+
+    @Test
+    public void close_endsSubscribersAndUnregisters() {
+        EventStream stream = EventStream.register("status");
+        EventStream.Subscriber subscriber = stream.open(null);
+
+        EventStream.unregister("status");
+        assertTrue(subscriber.isClosed());
+        assertNull(EventStream.get("status"));
+        assertEquals(0, stream.send("late"));
+    }
+
+    @Test
+    public void subscriberCounts_listOpenStreams() {
+        EventStream stream = EventStream.register("status");
+        stream.open(null);
+
+        assertEquals(Integer.valueOf(1), EventStream.getSubscriberCounts().get("status"));
+
+        EventStream.unregister("status");
+        assertFalse(EventStream.getSubscriberCounts().containsKey("status"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.androthink.server.handler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class HeaderWriterTest {
+
+    @Test
+    public void head_isSerializedAsAscii() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HeaderWriter.obtain()
+                .status(404)
+                .header("content-type", "text/html")
+                .header("content-length", 12)
+                .end()
+                .writeTo(out);
+
+        assertEquals("HTTP/1.1 404 Not Found\r\ncontent-type: text/html\r\ncontent-length: 12\r\n\r\n", out.toString("ISO-8859-1"));
+    }
+
+    @Test
+    public void unknownStatusAndNonLatinValues_areStillWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HeaderWriter.obtain().status(299).header("X-Name", "\u0633a").end().writeTo(out);
+
+        assertEquals("HTTP/1.1 299 UnKnown\r\nX-Name: ?a\r\n\r\n", out.toString("ISO-8859-1"));
+    }
+
+    @Test
+    public void dateLine_isRfc1123AndCachedPerSecond() throws IOException {
+        byte[] line = HeaderWriter.getDateLine(784111777000L);
+
+        assertEquals("Date: Sun, 06 Nov 1994 08:49:37 GMT\r\n", new String(line, "ISO-8859-1"));
+        assertSame(line, HeaderWriter.getDateLine(784111777999L));
+    }
+
+    @Test
+    public void smallBody_leavesInOneWrite() throws IOException {
+        CountingStream out = new CountingStream();
+        byte[] body = new byte[100];
+        HeaderWriter.obtain().status(200).end().writeTo(out, body, 0, body.length);
+
+        assertEquals(1, out.writes);
+        assertEquals("HTTP/1.1 200 OK\r\n\r\n".length() + body.length, out.bytes);
+
+        out = new CountingStream();
+        body = new byte[HeaderWriter.MAX_INLINE_BODY + 1];
+        HeaderWriter.obtain().status(200).end().writeTo(out, body, 0, body.length);
+
+        assertEquals(2, out.writes);
+    }
+
+    @Test
+    public void obtain_resetsThePooledWriter() throws IOException {
+        HeaderWriter.obtain().status(500).header("X-Old", "1");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HeaderWriter.obtain().status(200).end().writeTo(out);
+
+        assertEquals("HTTP/1.1 200 OK\r\n\r\n", out.toString("ISO-8859-1"));
+    }
+
+    private static class CountingStream extends OutputStream {
+        private int writes = 0;
+        private int bytes = 0;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes += len;
+        }
+    }
+}
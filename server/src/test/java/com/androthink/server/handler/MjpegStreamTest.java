@@ -0,0 +1,102 @@
+package com.androthink.server.handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MjpegStreamTest {
+
+    @After
+    public void tearDown() {
+        MjpegStream.unregister("camera");
+    }
+
+    // Part header then the frame , the frame is returned as published ..
+    private static byte[] takeFrame(MjpegStream.Viewer viewer) throws UnsupportedEncodingException {
+        ByteBuffer header = viewer.next();
+        if (header == null)
+            return null;
+
+        String head = new String(header.array(), "ISO-8859-1");
+        assertTrue(head.startsWith("\r\n--boundary\r\n"));
+        assertTrue(head.endsWith("\r\n\r\n"));
+        return viewer.next().array();
+    }
+
+    @Test
+    public void slowViewer_keepsOnlyTheLatestFrame() throws UnsupportedEncodingException {
+        MjpegStream stream = MjpegStream.register("camera");
+        MjpegStream.Viewer slow = stream.open("10.0.0.2", "boundary");
+        MjpegStream.Viewer fast = stream.open("10.0.0.3", "boundary");
+
+        byte[] first = {1};
+        stream.publish(first);
+        assertSame(first, takeFrame(fast));
+
+        byte[] second = {2};
+        byte[] third = {3};
+        stream.publish(second);
+        stream.publish(third);
+
+        assertSame(third, takeFrame(slow));
+        assertEquals(2, slow.getDroppedFrames());
+        assertSame(third, takeFrame(fast));
+        assertEquals(1, fast.getDroppedFrames());
+        assertEquals(3, stream.getPublishedFrames());
+    }
+
+    @Test
+    public void newViewer_startsWithTheLastFrame() throws UnsupportedEncodingException {
+        MjpegStream stream = MjpegStream.register("camera");
+        byte[] frame = {1};
+        stream.publish(frame);
+
+        MjpegStream.Viewer viewer = stream.open(null, "boundary");
+        assertSame(frame, takeFrame(viewer));
+        assertEquals(1, stream.getViewerCount());
+
+        stream.remove(viewer);
+        assertEquals(0, stream.getViewerCount());
+    }
+
+    @Test
+    public void close_endsViewersAndUnregisters() throws UnsupportedEncodingException {
+        MjpegStream stream = MjpegStream.register("camera");
+        assertSame(stream, MjpegStream.get("camera"));
+
+        MjpegStream.Viewer viewer = stream.open(null, "boundary");
+        stream.publish(new byte[]{1});
+        stream.close();
+
+        assertNull(takeFrame(viewer));
+        assertNull(MjpegStream.get("camera"));
+        assertNotSame(stream, MjpegStream.register("camera"));
+    }
+
+    @Test
+    public void nextFrame_comesWithItsPartHeader() throws Exception {
+        MjpegStream stream = MjpegStream.register("camera");
+        MjpegStream.Viewer viewer = stream.open(null, "boundary");
+        stream.publish(new byte[]{1, 2, 3});
+
+        assertEquals("\r\n--boundary\r\ncontent-type: image/jpeg\r\ncontent-length: 3\r\n\r\n",
+                new String(viewer.next().array(), "ISO-8859-1"));
+        assertEquals(3, viewer.next().remaining());
+        assertNull(viewer.next());
+        assertEquals(1, viewer.getSentFrames());
+    }
+
+    @Test
+    public void sentFrames_areCounted() {
+        MjpegStream.Viewer viewer = MjpegStream.register("camera").open(null, "boundary");
+        viewer.onSent();
+        viewer.onSent();
+
+        assertEquals(2, viewer.getSentFrames());
+        assertEquals(0, viewer.getDroppedFrames());
+    }
+}
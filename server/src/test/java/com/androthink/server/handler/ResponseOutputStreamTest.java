@@ -0,0 +1,78 @@
+package com.androthink.server.handler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ResponseOutputStreamTest {
+
+    @Test
+    public void smallWrites_leaveInOneWriteOnFlush() throws IOException {
+        CountingStream connection = new CountingStream();
+        ResponseOutputStream outputStream = new ResponseOutputStream(connection, 1024);
+
+        outputStream.write("--boundary\r\n".getBytes("ISO-8859-1"));
+        outputStream.write(new byte[300]);
+        outputStream.write('\r');
+        outputStream.write('\n');
+        assertEquals(0, connection.writes);
+
+        outputStream.flush();
+        assertEquals(1, connection.writes);
+        assertEquals(314, connection.size());
+        assertEquals(1, outputStream.getWriteCount());
+        assertEquals(314, outputStream.getBytesWritten());
+    }
+
+    @Test
+    public void largeWrite_bypassesTheBuffer() throws IOException {
+        CountingStream connection = new CountingStream();
+        ResponseOutputStream outputStream = new ResponseOutputStream(connection, 1024);
+
+        outputStream.write(new byte[100]);
+        outputStream.write(new byte[5000]);
+        assertEquals(2, connection.writes);
+        assertEquals(5100, connection.size());
+
+        outputStream.flush();
+        assertEquals(2, outputStream.getWriteCount());
+    }
+
+    @Test
+    public void bufferFull_isWrittenBeforeMoreBytes() throws IOException {
+        CountingStream connection = new CountingStream();
+        ResponseOutputStream outputStream = new ResponseOutputStream(connection, 1024);
+
+        byte[] data = new byte[700];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        outputStream.write(data);
+        outputStream.write(data);
+        outputStream.flush();
+
+        byte[] sent = connection.toByteArray();
+        assertEquals(1400, sent.length);
+        assertEquals(data[699], sent[1399]);
+        assertEquals(2, connection.writes);
+    }
+
+    private static class CountingStream extends ByteArrayOutputStream {
+        private int writes = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+    }
+}
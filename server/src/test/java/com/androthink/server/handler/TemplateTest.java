@@ -0,0 +1,76 @@
+package com.androthink.server.handler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TemplateTest {
+
+    private static String render(String page, Map<String, String> values, boolean escapeHtml) throws IOException {
+        Template template = Template.compile(page.getBytes("UTF-8"), values.keySet());
+        byte[][] encoded = template.encode(values, escapeHtml);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        template.write(outputStream, encoded);
+
+        assertEquals(outputStream.size(), template.length(encoded));
+        return outputStream.toString("UTF-8");
+    }
+
+    @Test
+    public void placeholders_areReplacedEverywhere() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("name_place_holder", "Eslam");
+        values.put("code_place_holder", "404");
+
+        assertEquals("<h1>404</h1><p>Hi Eslam , error 404</p>",
+                render("<h1>code_place_holder</h1><p>Hi name_place_holder , error code_place_holder</p>", values, false));
+    }
+
+    @Test
+    public void longestKey_winsAtSamePosition() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("{user}", "a");
+        values.put("{user}_id", "b");
+
+        assertEquals("a b", render("{user} {user}_id", values, false));
+    }
+
+    @Test
+    public void nullValue_isRenderedEmpty() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("$x", null);
+
+        assertEquals("[]", render("[$x]", values, false));
+    }
+
+    @Test
+    public void multiByteText_isKeptIntact() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("$name", "\u0645\u062d\u0645\u062f");
+
+        assertEquals("\u0645\u0631\u062d\u0628\u0627 \u0645\u062d\u0645\u062f !", render("\u0645\u0631\u062d\u0628\u0627 $name !", values, false));
+    }
+
+    @Test
+    public void htmlEscaping_isOptional() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("$v", "<b>\"Tom\" & 'Jerry'</b>");
+
+        assertEquals("<p><b>\"Tom\" & 'Jerry'</b></p>", render("<p>$v</p>", values, false));
+        assertEquals("<p>&lt;b&gt;&quot;Tom&quot; &amp; &#39;Jerry&#39;&lt;/b&gt;</p>", render("<p>$v</p>", values, true));
+    }
+
+    @Test
+    public void pageWithoutPlaceholders_isWrittenAsIs() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("missing", "x");
+
+        assertEquals("<html></html>", render("<html></html>", values, false));
+    }
+}
@@ -0,0 +1,143 @@
+package com.androthink.server.handler;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WebSocketCodecTest {
+
+    private static final byte[] MASK = {0x12, 0x34, 0x56, 0x78};
+
+    @Test
+    public void encode_usesTheShortestLength() {
+        assertEquals(2 + 125, WebSocketCodec.encode(WebSocketCodec.OPCODE_TEXT, new byte[125], 0, 125).remaining());
+
+        ByteBuffer medium = WebSocketCodec.encode(WebSocketCodec.OPCODE_BINARY, new byte[300], 0, 300);
+        assertEquals(4 + 300, medium.remaining());
+        assertEquals((byte) 0x82, medium.get(0));
+        assertEquals(126, medium.get(1));
+        assertEquals(300, ((medium.get(2) & 0xff) << 8) | (medium.get(3) & 0xff));
+
+        ByteBuffer large = WebSocketCodec.encode(WebSocketCodec.OPCODE_BINARY, new byte[70000], 0, 70000);
+        assertEquals(10 + 70000, large.remaining());
+        assertEquals(127, large.get(1));
+    }
+
+    @Test
+    public void decode_joinsFragmentsFedByteByByte() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(clientFrame(false, WebSocketCodec.OPCODE_TEXT, "Hel".getBytes("UTF-8")));
+        frames.write(clientFrame(true, WebSocketCodec.OPCODE_PING, new byte[]{7}));
+        frames.write(clientFrame(true, WebSocketCodec.OPCODE_CONTINUATION, "lo \u0633".getBytes("UTF-8")));
+
+        RecordingListener listener = new RecordingListener();
+        WebSocketCodec.Decoder decoder = new WebSocketCodec.Decoder(1024);
+
+        byte[] data = frames.toByteArray();
+        for (int i = 0; i < data.length; i++)
+            decoder.feed(data, i, 1, listener);
+
+        assertEquals(2, listener.events.size());
+        assertEquals("ping:1", listener.events.get(0));
+        assertEquals("text:Hello \u0633", listener.events.get(1));
+    }
+
+    @Test
+    public void decode_closeFrame() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        byte[] close = clientFrame(true, WebSocketCodec.OPCODE_CLOSE, new byte[]{0x03, (byte) 0xe8, 'b', 'y', 'e'});
+
+        new WebSocketCodec.Decoder(1024).feed(close, 0, close.length, listener);
+        assertEquals("close:1000:bye", listener.events.get(0));
+
+        byte[] empty = clientFrame(true, WebSocketCodec.OPCODE_CLOSE, new byte[0]);
+        new WebSocketCodec.Decoder(1024).feed(empty, 0, empty.length, listener);
+        assertEquals("close:1005:", listener.events.get(1));
+    }
+
+    @Test
+    public void decode_rejectsProtocolErrors() throws Exception {
+        assertCloseCode(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, new byte[]{(byte) 0x81, 0x01, 'a'});
+        assertCloseCode(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, clientFrame(true, WebSocketCodec.OPCODE_CONTINUATION, new byte[1]));
+        assertCloseCode(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, clientFrame(false, WebSocketCodec.OPCODE_PING, new byte[1]));
+        assertCloseCode(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, clientFrame(true, 0x3, new byte[1]));
+        assertCloseCode(WebSocket.CLOSE_CODE.PROTOCOL_ERROR, clientFrame(true, WebSocketCodec.OPCODE_CLOSE, new byte[]{0x03, (byte) 0xed}));
+        assertCloseCode(WebSocket.CLOSE_CODE.INVALID_PAYLOAD, clientFrame(true, WebSocketCodec.OPCODE_TEXT, new byte[]{(byte) 0xc3, 0x28}));
+        assertCloseCode(WebSocket.CLOSE_CODE.MESSAGE_TOO_BIG, clientFrame(true, WebSocketCodec.OPCODE_BINARY, new byte[2000]));
+    }
+
+    @Test
+    public void encodeClose_cutsLongReasons() {
+        StringBuilder reason = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            reason.append('x');
+
+        ByteBuffer close = WebSocketCodec.encodeClose(WebSocket.CLOSE_CODE.GOING_AWAY, reason.toString());
+        assertEquals(2 + 125, close.remaining());
+        assertEquals((byte) 0x88, close.get(0));
+        assertEquals(1001, ((close.get(2) & 0xff) << 8) | (close.get(3) & 0xff));
+    }
+
+    private static void assertCloseCode(int code, byte[] frame) {
+        try {
+            new WebSocketCodec.Decoder(1024).feed(frame, 0, frame.length, new RecordingListener());
+            fail("Frame accepted");
+        } catch (WebSocketCodec.CloseException e) {
+            assertEquals(code, e.getCode());
+        }
+    }
+
+    // Masked frame as a browser sends it ..
+    static byte[] clientFrame(boolean fin, int opcode, byte[] payload) {
+        ByteBuffer frame = WebSocketCodec.encode(opcode, payload, 0, payload.length);
+        int headerLength = frame.remaining() - payload.length;
+
+        byte[] masked = new byte[frame.remaining() + 4];
+        frame.get(masked, 0, headerLength);
+        if (!fin)
+            masked[0] &= 0x7f;
+        masked[1] |= (byte) 0x80;
+
+        System.arraycopy(MASK, 0, masked, headerLength, 4);
+        for (int i = 0; i < payload.length; i++)
+            masked[headerLength + 4 + i] = (byte) (payload[i] ^ MASK[i & 3]);
+
+        return masked;
+    }
+
+    static class RecordingListener implements WebSocketCodec.Listener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onText(@NonNull String text) {
+            events.add("text:" + text);
+        }
+
+        @Override
+        public void onBinary(@NonNull byte[] data) {
+            events.add("binary:" + data.length);
+        }
+
+        @Override
+        public void onPing(@NonNull byte[] data) {
+            events.add("ping:" + data.length);
+        }
+
+        @Override
+        public void onPong(@NonNull byte[] data) {
+            events.add("pong:" + data.length);
+        }
+
+        @Override
+        public void onClose(int code, @NonNull String reason) {
+            events.add("close:" + code + ":" + reason);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.androthink.server.handler;
+
+import com.androthink.server.callback.WebSocketCallBack;
+import com.androthink.server.model.Request;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WebSocketTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    private final WebSocketCallBack callBack = new WebSocketCallBack() {
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            events.add("open");
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            events.add("text:" + text);
+            webSocket.send(text);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, byte[] data) {
+            events.add("binary:" + data.length);
+        }
+
+        @Override
+        public void onClose(WebSocket webSocket, int code, String reason) {
+            events.add("close:" + code);
+        }
+    };
+
+    private final List<TestSocket> sockets = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (TestSocket socket : sockets)
+            socket.onConnectionClosed();
+    }
+
+    @Test
+    public void slowClient_dropsMessagesOverTheQueueLimit() throws IOException {
+        TestSocket socket = open(100);
+
+        assertTrue(socket.send(new byte[60]));
+        assertFalse(socket.send(new byte[60]));
+        assertEquals(1, socket.getDroppedMessages());
+        assertEquals(62, socket.getQueuedBytes());
+
+        // Control frames are never dropped ..
+        assertTrue(socket.ping(new byte[4]));
+
+        socket.writeTo(socket.output);
+        assertEquals(0, socket.getQueuedBytes());
+        assertEquals(62 + 6, socket.output.size());
+        assertTrue(socket.send(new byte[60]));
+    }
+
+    @Test
+    public void broadcast_reachesSubscribersOnly() throws IOException {
+        TestSocket first = open(1024);
+        TestSocket second = open(1024);
+        TestSocket other = open(1024);
+
+        first.subscribe("sensors");
+        second.subscribe("sensors");
+        assertEquals(2, WebSocket.getSubscriberCount("sensors"));
+
+        assertEquals(2, WebSocket.broadcast("sensors", "{\"t\":21}"));
+        first.writeTo(first.output);
+        second.writeTo(second.output);
+        other.writeTo(other.output);
+
+        assertEquals(10, first.output.size());
+        assertArrayEquals(first.output.toByteArray(), second.output.toByteArray());
+        assertEquals(0, other.output.size());
+
+        second.onConnectionClosed();
+        assertEquals(1, WebSocket.getSubscriberCount("sensors"));
+        first.unsubscribe("sensors");
+        assertEquals(0, WebSocket.broadcast("sensors", "{}"));
+    }
+
+    @Test
+    public void clientMessages_reachTheCallBack() throws IOException {
+        TestSocket socket = open(1024);
+        socket.onOpen();
+
+        byte[] text = WebSocketCodecTest.clientFrame(true, WebSocketCodec.OPCODE_TEXT, "hi".getBytes("UTF-8"));
+        assertTrue(socket.onReceived(text, 0, text.length));
+        assertEquals("text:hi", events.get(1));
+
+        // Echoed back by the callback ..
+        socket.writeTo(socket.output);
+        assertArrayEquals(new byte[]{(byte) 0x81, 2, 'h', 'i'}, socket.output.toByteArray());
+    }
+
+    @Test
+    public void closeFrame_isEchoedThenTheConnectionEnds() throws IOException {
+        TestSocket socket = open(1024);
+
+        byte[] close = WebSocketCodecTest.clientFrame(true, WebSocketCodec.OPCODE_CLOSE, new byte[]{0x03, (byte) 0xe9});
+        assertFalse(socket.onReceived(close, 0, close.length));
+        assertFalse(socket.isOpen());
+        assertFalse(socket.connectionClosed);
+
+        socket.writeTo(socket.output);
+        assertArrayEquals(new byte[]{(byte) 0x88, 2, 0x03, (byte) 0xe9}, socket.output.toByteArray());
+        assertTrue(socket.connectionClosed);
+        assertEquals("close:1001", events.get(0));
+    }
+
+    @Test
+    public void protocolError_closesWithItsCode() throws IOException {
+        TestSocket socket = open(1024);
+
+        // Unmasked client frame ..
+        byte[] frame = {(byte) 0x81, 1, 'a'};
+        assertFalse(socket.onReceived(frame, 0, frame.length));
+
+        socket.writeTo(socket.output);
+        byte[] sent = socket.output.toByteArray();
+        assertEquals(1002, ((sent[2] & 0xff) << 8) | (sent[3] & 0xff));
+        assertEquals("close:1002", events.get(0));
+    }
+
+    private TestSocket open(long maxQueuedBytes) {
+        TestSocket socket = new TestSocket(new Request("1", "127.0.0.1", null), callBack, maxQueuedBytes);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static class TestSocket extends WebSocket {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean connectionClosed = false;
+
+        TestSocket(Request request, WebSocketCallBack callBack, long maxQueuedBytes) {
+            super(request, callBack, 1024, maxQueuedBytes);
+        }
+
+        @Override
+        protected void onQueued() {
+            // Written by the test ..
+        }
+
+        @Override
+        protected void closeConnection() {
+            connectionClosed = true;
+        }
+    }
+}
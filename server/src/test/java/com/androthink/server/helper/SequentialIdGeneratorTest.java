@@ -0,0 +1,69 @@
+package com.androthink.server.helper;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SequentialIdGeneratorTest {
+
+    @Test
+    public void nextId_countsInBase36AfterPrefix() {
+        SequentialIdGenerator generator = new SequentialIdGenerator("node");
+
+        assertEquals("node-1", generator.nextId());
+        for (int i = 2; i < 36; i++)
+            generator.nextId();
+        assertEquals("node-10", generator.nextId());
+    }
+
+    @Test
+    public void defaultPrefix_differsBetweenInstancesOverTime() throws InterruptedException {
+        String first = new SequentialIdGenerator().nextId();
+        Thread.sleep(5);
+        String second = new SequentialIdGenerator().nextId();
+
+        assertTrue(first.endsWith("-1"));
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void defaultPrefix_differsBetweenInstancesCreatedTogether() {
+        SequentialIdGenerator first = new SequentialIdGenerator();
+        SequentialIdGenerator second = new SequentialIdGenerator();
+
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(first.nextId());
+            ids.add(second.nextId());
+        }
+
+        assertEquals(2000, ids.size());
+    }
+
+    @Test
+    public void nextId_isUniqueAcrossThreads() throws InterruptedException {
+        final SequentialIdGenerator generator = new SequentialIdGenerator();
+        final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++)
+                        ids.add(generator.nextId());
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(40000, ids.size());
+    }
+}
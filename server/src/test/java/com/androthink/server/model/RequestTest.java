@@ -0,0 +1,85 @@
+package com.androthink.server.model;
+
+import com.androthink.server.helper.ServerHelper;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RequestTest {
+
+    private static Request request(String contentType, String body) throws IOException {
+        Request request = new Request("1", "127.0.0.1", null);
+        Map<String, String> headers = new HashMap<>();
+        if (contentType != null)
+            headers.put(ServerHelper.MAIN_HEADERS.CONTENT_TYPE, contentType);
+        request.setHeaders(headers);
+        request.setBodyBytes(body.getBytes("UTF-8"));
+        return request;
+    }
+
+    @Test
+    public void body_isDecodedOnceOnDemand() throws Exception {
+        Request request = request("application/json; charset=utf-8", "{\"a\":1}");
+
+        assertSame(request.getBodyAsString(), request.getBodyAsString());
+        assertSame(request.getJson(), request.getJson());
+        assertSame(request.getJson(), request.getPayload());
+    }
+
+    @Test
+    public void invalidJson_isOnlyReportedWhenAsked() throws IOException {
+        Request request = request(ServerHelper.CONTENT_TYPE.JSON, "not json");
+
+        try {
+            request.getJson();
+            fail("Invalid JSON was parsed");
+        } catch (JSONException e) {
+            // Expected ..
+        }
+
+        try {
+            request.getPayload();
+            fail("Invalid JSON payload was returned");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getCause() instanceof JSONException);
+        }
+    }
+
+    @Test
+    public void form_isUrlDecoded() throws IOException {
+        Map<String, String> form = request(ServerHelper.CONTENT_TYPE.FORM_URL_ENCODED_DATA, "name=a+b&city=%D8%B3&empty=&bad").getForm();
+
+        assertEquals("a b", form.get("name"));
+        assertEquals("\u0633", form.get("city"));
+        assertEquals("", form.get("empty"));
+        assertFalse(form.containsKey("bad"));
+    }
+
+    @Test
+    public void multipartForm_returnsFormFields() throws IOException {
+        Request request = request(ServerHelper.CONTENT_TYPE.FORM_DATA, "");
+        Map<String, String> fields = new HashMap<>();
+        fields.put("title", "hello");
+        request.setFormFields(fields);
+
+        assertEquals("hello", request.getForm().get("title"));
+    }
+
+    @Test
+    public void bodyStream_readsRawBytes() throws IOException {
+        Request request = request(null, "raw");
+        assertNull(request.getPayload());
+
+        InputStream body = request.getBodyStream();
+        assertEquals('r', body.read());
+        assertEquals(2, body.skip(5));
+        assertEquals(-1, body.read());
+    }
+}